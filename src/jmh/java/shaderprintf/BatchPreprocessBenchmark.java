@@ -0,0 +1,86 @@
+package shaderprintf;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup preprocessing of a set of shader permutations, one by one as glShaderSourcePrint does, against
+ * {@link ShaderPrintf#addPrintToSources(Map, PrintfOptions, java.util.concurrent.Executor)} on all cores.<br/>
+ * The source cache is disabled, as on a cold start. Run with <code>gradle jmh -PjmhArgs=BatchPreprocess</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BatchPreprocessBenchmark {
+
+    @Param({"1000"})
+    public int permutations;
+
+    @Param({"false", "true"})
+    public boolean formatTable;
+
+    private Map<String, String> sources;
+    private PrintfOptions options;
+    private ShaderSourceCache cache;
+
+    @Setup
+    public void setup() {
+        options = PrintfOptions.DEFAULT.withFormatTable(formatTable);
+        cache = ShaderPrintf.getSourceCache();
+        ShaderPrintf.setSourceCache(null);
+        sources = new LinkedHashMap<>();
+        for (int i = 0; i < permutations; ++i)
+            sources.put("permutation" + i, permutation(i));
+    }
+
+    @TearDown
+    public void tearDown() {
+        ShaderPrintf.setSourceCache(cache);
+    }
+
+    /**
+     * A fragment shader of a few hundred lines with printf calls, made different by the defines of the permutation
+     */
+    static String permutation(int index) {
+        StringBuilder source = new StringBuilder("#version 450\n");
+        for (int bit = 0; bit < 10; ++bit)
+            if ((index >> bit & 1) != 0)
+                source.append("#define FEATURE_").append(bit).append('\n');
+        source.append("uniform ivec2 mouse;\nout vec4 color;\n");
+        for (int function = 0; function < 40; ++function) {
+            source.append("// shading term ").append(function).append(", see the notes above\n")
+                    .append("float term").append(function).append("(vec3 p, vec3 n) {\n")
+                    .append("    /* attenuated by distance */\n")
+                    .append("    float d = length(p - vec3(").append(function).append(".0, 1.0, 2.0));\n")
+                    .append("    if (ivec2(gl_FragCoord.xy) == mouse)\n")
+                    .append("        printf(\"term ").append(function).append(": d=%f n=%^3f at %^2d\\n\", d, n, ivec2(gl_FragCoord.xy));\n")
+                    .append("    return max(dot(n, normalize(p)), 0.0) / (1.0 + d * d);\n")
+                    .append("}\n");
+        }
+        source.append("void main() {\n    vec3 p = vec3(gl_FragCoord.xy, 1.0), n = vec3(0.0, 0.0, 1.0);\n    float sum = 0.0;\n");
+        for (int function = 0; function < 40; ++function)
+            source.append("    sum += term").append(function).append("(p, n);\n");
+        source.append("    color = vec4(sum);\n}\n");
+        return source.toString();
+    }
+
+    @Benchmark
+    public Object sequential() {
+        Map<String, String> processed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> source : sources.entrySet())
+            processed.put(source.getKey(), ShaderPrintf.addPrintToSource(source.getValue(), options));
+        return processed;
+    }
+
+    @Benchmark
+    public Object parallel() {
+        return ShaderPrintf.addPrintToSources(sources, options, ForkJoinPool.commonPool()).join();
+    }
+}
@@ -0,0 +1,132 @@
+package shaderprintf;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a print buffer filled by typical printf calls, compared with the decoder as it was before format plans.<br/>
+ * Run with <code>gradle jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecoderBenchmark {
+
+    static final String[] FORMATS = {
+            "hello from \"pixel\" %^2u! starting raymarch with position %^3g and direction %^3g...\n",
+            "iteration %d, distance %g\n",
+            "%5.2f %% %x %-6d|%+.3e\n",
+            "color=%.3^4f\n"
+    };
+
+    @Param({"1000", "100000"})
+    public int records;
+
+    private int[] data;
+    private int size;
+
+    @Setup
+    public void setup() {
+        data = inlineRecords(FORMATS, records, new Random(42));
+        size = data.length;
+    }
+
+    /**
+     * A print buffer, first value excluded, holding <code>records</code> records of the given formats written without
+     * a format table, with random values
+     */
+    static int[] inlineRecords(String[] formats, int records, Random random) {
+        int[] buffer = new int[records * 128];
+        int size = 0;
+        for (int record = 0; record < records; ++record) {
+            String format = formats[random.nextInt(formats.length)];
+            for (int j = 0; j < format.length(); ++j) {
+                char c = format.charAt(j);
+                buffer[size++] = c;
+                if (c != '%')
+                    continue;
+                if (format.charAt(j + 1) == '%') {
+                    buffer[size++] = format.charAt(++j);
+                    continue;
+                }
+                int vecSize = 1;
+                while (!PrintfChars.isConversion(format.charAt(j))) {
+                    if (format.charAt(j) == '^')
+                        vecSize = format.charAt(j + 1) - '0';
+                    buffer[size++] = format.charAt(++j);
+                }
+                boolean floatType = "diuoxX".indexOf(format.charAt(j)) == -1;
+                for (int k = 0; k < vecSize; ++k)
+                    buffer[size++] = floatType ? Float.floatToIntBits((float) random.nextGaussian() * 100) : random.nextInt(1000);
+            }
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Benchmark
+    public String plans() {
+        return PrintBufferDecoder.decode(data, size, new PrintfSiteTable());
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return decodeWithStringFormat(data, size);
+    }
+
+    /**
+     * The decoding loop as it was, with a String.format call per value
+     */
+    static String decodeWithStringFormat(int[] printfData, int printedSize) {
+        StringBuilder result = new StringBuilder();
+        StringBuilder format = new StringBuilder();
+        for (int i = 0; i < printedSize; i++) {
+            if ((char)printfData[i] == '%') {
+                if ((char)printfData[i + 1] == '%') {
+                    result.append("%");
+                    i++;
+                }
+                else {
+                    int vecSize = 1;
+                    format.setLength(0);
+                    while (!"eEfFgGdiuoxXaA".contains(String.valueOf((char)printfData[i]))) {
+                        if ((char)printfData[i] == '^') {
+                            vecSize = (char)printfData[i + 1] - '0';
+                            i += 2;
+                        }
+                        else {
+                            format.append(String.valueOf((char)printfData[i]));
+                            i++;
+                        }
+                    }
+                    char formatChar = (char)printfData[i];
+                    if (formatChar == 'u')
+                        formatChar = 'd';
+                    format.append(formatChar);
+                    boolean isFloatType = !"diuoxX".contains(String.valueOf((char)printfData[i]));
+                    if (vecSize > 1)
+                        result.append("(");
+                    for (int j = 0; j < vecSize; ++j) {
+                        i++;
+                        if (isFloatType)
+                            result.append(String.format(format.toString(), Float.intBitsToFloat(printfData[i])));
+                        else
+                            result.append(String.format(format.toString(), printfData[i]));
+                        if (vecSize > 1 && j < vecSize - 1)
+                            result.append(", ");
+                    }
+                    if (vecSize > 1)
+                        result.append(")");
+                }
+            }
+            else
+                result.append((char)printfData[i]);
+        }
+        return result.toString();
+    }
+}
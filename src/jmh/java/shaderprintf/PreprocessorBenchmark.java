@@ -0,0 +1,82 @@
+package shaderprintf;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preprocessing of synthetic shaders of increasing size and printf density with
+ * {@link ShaderPrintf#addPrintToSource(String, PrintfOptions)}, and searches of
+ * {@link ShaderPrintf#findCall(String, String)} through them.<br/>
+ * A shader is made of <code>functions</code> functions of 6 to 8 lines, <code>printfPercent</code> of them calling
+ * printf; the comment before each call mentions printf, so the search rejects an occurrence before every call.<br/>
+ * Run with <code>gradle jmh -PjmhArgs=Preprocessor</code>, which also reports the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PreprocessorBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int functions;
+
+    @Param({"0", "10", "100"})
+    public int printfPercent;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = shader(functions, printfPercent);
+    }
+
+    /**
+     * A fragment shader of <code>functions</code> functions, <code>printfPercent</code> of them, spread evenly,
+     * calling printf
+     */
+    static String shader(int functions, int printfPercent) {
+        StringBuilder source = new StringBuilder("#version 450\nuniform ivec2 mouse;\nout vec4 color;\n");
+        for (int function = 0; function < functions; ++function) {
+            boolean print = (function * printfPercent) % 100 < printfPercent;
+            source.append("// shading term ").append(function).append(print ? ", its printf only runs for the pixel under the mouse\n" : "\n")
+                    .append("float term").append(function).append("(vec3 p, vec3 n) {\n")
+                    .append("    /* attenuated by distance */\n")
+                    .append("    float d = length(p - vec3(").append(function).append(".0, 1.0, 2.0));\n");
+            if (print)
+                source.append("    if (ivec2(gl_FragCoord.xy) == mouse)\n")
+                        .append("        printf(\"term ").append(function).append(": d=%f n=%^3f at %^2d\\n\", d, n, ivec2(gl_FragCoord.xy));\n");
+            source.append("    return max(dot(n, normalize(p)), 0.0) / (1.0 + d * d);\n")
+                    .append("}\n");
+        }
+        source.append("void main() {\n    vec3 p = vec3(gl_FragCoord.xy, 1.0), n = vec3(0.0, 0.0, 1.0);\n    float sum = 0.0;\n");
+        for (int function = 0; function < functions; ++function)
+            source.append("    sum += term").append(function).append("(p, n);\n");
+        source.append("    color = vec4(sum);\n}\n");
+        return source.toString();
+    }
+
+    @Benchmark
+    public String addPrintToSource() {
+        return ShaderPrintf.addPrintToSource(source, PrintfOptions.DEFAULT);
+    }
+
+    /**
+     * The first printf call, found after rejecting the occurrence in the comment above it; without printf, a search of
+     * the whole source
+     */
+    @Benchmark
+    public int findCallPrintf() {
+        return ShaderPrintf.findCall(source, "printf");
+    }
+
+    /**
+     * The main function, after a comment and every other function: a search of the whole source
+     */
+    @Benchmark
+    public int findCallMain() {
+        return ShaderPrintf.findCall(source, "main");
+    }
+}
@@ -0,0 +1,69 @@
+package shaderprintf;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding done by {@link ShaderPrintf#getPrintBufferString(int, PrintfSiteTable)} once the buffer is read back, on
+ * synthetic buffers written with and without a format table; needs no GL context.<br/>
+ * Run with <code>gradle jmh -PjmhArgs=PrintBufferString</code>, which also reports the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrintBufferStringBenchmark {
+
+    @Param({"1000", "100000"})
+    public int records;
+
+    @Param({"false", "true"})
+    public boolean formatTable;
+
+    private int[] data;
+    private PrintfSiteTable table;
+
+    @Setup
+    public void setup() {
+        table = new PrintfSiteTable();
+        data = formatTable ? tableRecords(table, DecoderBenchmark.FORMATS, records, new Random(42))
+                : DecoderBenchmark.inlineRecords(DecoderBenchmark.FORMATS, records, new Random(42));
+    }
+
+    /**
+     * A print buffer, first value excluded, holding <code>records</code> records of the given formats written with a
+     * format table, with random values; the call sites and the layout are registered in <code>table</code>
+     */
+    static int[] tableRecords(PrintfSiteTable table, String[] formats, int records, Random random) {
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        PrintfCallSite[] sites = new PrintfCallSite[formats.length];
+        int[] ids = new int[formats.length];
+        for (int i = 0; i < formats.length; ++i) {
+            sites[i] = new PrintfCallSite(i + 1, formats[i]);
+            ids[i] = table.register(sites[i]);
+        }
+        int[] buffer = new int[records * 16];
+        int size = 0;
+        for (int record = 0; record < records; ++record) {
+            int i = random.nextInt(formats.length);
+            CompiledFormat format = sites[i].compiledFormat();
+            if (size + 1 + sites[i].headerSize() + format.valueCount > buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            buffer[size++] = PreprocessedSource.SITE_TAG | ids[i];
+            size += sites[i].headerSize();
+            for (int value = 0; value < format.valueCount; ++value)
+                buffer[size++] = format.isFloat(value) ? Float.floatToIntBits((float) random.nextGaussian() * 100) : random.nextInt(1000);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @Benchmark
+    public String getPrintBufferString() {
+        return ShaderPrintf.decodePrintBuffer(data, data.length, table);
+    }
+}
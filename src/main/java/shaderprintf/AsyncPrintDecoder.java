@@ -0,0 +1,257 @@
+package shaderprintf;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Decodes print buffers on a thread of its own and hands the records to {@link PrintRecordListener}s.<br/>
+ * {@link #submit(int[], int, int)} only copies the printed values into an array of the decoder; at most
+ * <code>capacity</code> copies wait to be decoded, and the {@link OverflowPolicy} says what happens to more.<br/>
+ * An error on the decoder thread, or an exception thrown by the error handler, stops the decoder: submit and flush then
+ * throw an IllegalStateException caused by it.
+ */
+public class AsyncPrintDecoder implements AutoCloseable {
+
+    /**
+     * What {@link #submit(int[], int, int)} does when <code>capacity</code> buffers already wait to be decoded
+     */
+    public enum OverflowPolicy {
+        /** Waits for the decoder to catch up */
+        BLOCK,
+        /** Drops the submitted buffer */
+        DROP_NEWEST,
+        /** Drops the oldest buffer waiting */
+        DROP_OLDEST
+    }
+
+    private final PrintBufferDecoder decoder;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final List<PrintRecordListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Consumer<Throwable> errorHandler = Throwable::printStackTrace;
+    private final Thread thread;
+
+    // guarded by this
+    private final ArrayDeque<Batch> queue = new ArrayDeque<>();
+    private final ArrayDeque<int[]> freeArrays = new ArrayDeque<>();
+    private long nextBatch;
+    private long droppedCount;
+    private boolean decoding;
+    private boolean closed;
+    private Throwable failure;
+
+    /**
+     * Decodes with the table of {@link ShaderPrintf}
+     */
+    public AsyncPrintDecoder(int capacity, OverflowPolicy policy) {
+        this(ShaderPrintf.getSiteTable(), capacity, policy);
+    }
+
+    public AsyncPrintDecoder(PrintfSiteTable table, int capacity, OverflowPolicy policy) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.decoder = new PrintBufferDecoder(table);
+        this.capacity = capacity;
+        this.policy = policy;
+        this.thread = new Thread(this::run, "printf decoder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void addListener(PrintRecordListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PrintRecordListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Receives what listeners throw, instead of printing it; the decoder carries on with the next listener. What the
+     * handler throws is printed, and stops the decoder.
+     */
+    public void setErrorHandler(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Queues a copy of <code>size</code> printed values starting at <code>data[from]</code>
+     *
+     * @return the sequence number given to the buffer, -1 if it was dropped
+     */
+    public long submit(int[] data, int from, int size) {
+        return submit(size, array -> System.arraycopy(data, from, array, 0, size));
+    }
+
+    /**
+     * Queues a copy of the remaining values of <code>data</code>, leaving its position unchanged
+     *
+     * @return the sequence number given to the buffer, -1 if it was dropped
+     */
+    public long submit(IntBuffer data) {
+        return submit(data.remaining(), array -> data.duplicate().get(array, 0, data.remaining()));
+    }
+
+    private synchronized long submit(int size, Consumer<int[]> copy) {
+        checkRunning();
+        while (queue.size() >= capacity) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                droppedCount++;
+                return -1;
+            }
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                droppedCount++;
+                freeArrays.add(queue.poll().values);
+            }
+            else {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount++;
+                    return -1;
+                }
+                checkRunning();
+            }
+        }
+        int[] array = freeArrays.poll();
+        if (array == null || array.length < size)
+            array = new int[size];
+        copy.accept(array);
+        long batch = nextBatch++;
+        queue.add(new Batch(array, size, batch));
+        notifyAll();
+        return batch;
+    }
+
+    /**
+     * Waits until every buffer submitted so far has been decoded and handed to the listeners
+     */
+    public synchronized void flush() throws InterruptedException {
+        while ((!queue.isEmpty() || decoding) && failure == null)
+            wait();
+        if (failure != null)
+            throw new IllegalStateException("Decoder stopped", failure);
+    }
+
+    private void checkRunning() {
+        if (failure != null)
+            throw new IllegalStateException("Decoder stopped", failure);
+        if (closed)
+            throw new IllegalStateException("Decoder closed");
+    }
+
+    /**
+     * Number of buffers dropped by the overflow policy
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Decodes what was submitted, then stops the decoder thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Batch batch;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed && failure == null)
+                    waitUninterruptibly();
+                if (queue.isEmpty() || failure != null)
+                    return;
+                batch = queue.poll();
+                decoding = true;
+                notifyAll();
+            }
+            try {
+                decoder.decodeRecords(batch.values, batch.size, batch.sequence, this::dispatch);
+                for (PrintRecordListener listener : listeners) {
+                    try {
+                        listener.onBatchEnd(batch.sequence);
+                    } catch (RuntimeException e) {
+                        report(e);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // unknown call sites end the records with a marker: a bug of the decoder, the next buffers may decode
+                report(e);
+            } catch (Throwable e) {
+                // the batches left are never decoded: submit and flush throw instead of waiting for them
+                synchronized (this) {
+                    if (failure == null)
+                        failure = e;
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    decoding = false;
+                    if (freeArrays.size() <= capacity)
+                        freeArrays.add(batch.values);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands an exception to the error handler; what the handler throws stops the decoder after the current buffer
+     */
+    private void report(RuntimeException e) {
+        try {
+            errorHandler.accept(e);
+        } catch (Throwable handlerException) {
+            handlerException.addSuppressed(e);
+            handlerException.printStackTrace();
+            synchronized (this) {
+                if (failure == null)
+                    failure = handlerException;
+            }
+        }
+    }
+
+    private void dispatch(PrintRecord record) {
+        for (PrintRecordListener listener : listeners) {
+            try {
+                listener.onRecord(record);
+            } catch (RuntimeException e) {
+                report(e);
+            }
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            // only close() stops the decoder
+        }
+    }
+
+    private static final class Batch {
+        final int[] values;
+        final int size;
+        final long sequence;
+
+        Batch(int[] values, int size, long sequence) {
+            this.values = values;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+}
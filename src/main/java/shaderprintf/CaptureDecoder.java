@@ -0,0 +1,135 @@
+package shaderprintf;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Command line decoder of capture files written by {@link PrintCaptureWriter}; the text of the frames goes to the
+ * standard output.
+ * <pre>
+ * usage: CaptureDecoder [options] capture-file
+ *   --frames first[-last]  decodes only these frames, numbered from 0
+ *   --sites id[,id...]     prints only the records of these call sites
+ *   --format regex         prints only the records whose format contains a match
+ *   --headers              starts the text of each frame with a "# frame n" line
+ *   --dedup mode           collapses repeated records of each frame, mode being consecutive or global
+ *   --list-sites           lists the call sites instead of decoding
+ * </pre>
+ * With a site or format filter, frames are decoded record by record; text printed without a format table then forms
+ * one record per line, see {@link PrintRecord}. Filters and deduplication do not combine.
+ */
+public final class CaptureDecoder {
+
+    private CaptureDecoder() {
+    }
+
+    public static void main(String[] args) {
+        int firstFrame = 0, lastFrame = Integer.MAX_VALUE;
+        Set<Integer> siteIds = null;
+        Pattern format = null;
+        PrintDeduplication deduplication = null;
+        boolean headers = false, listSites = false;
+        String file = null;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--frames": {
+                        String[] range = args[++i].split("-", 2);
+                        firstFrame = Integer.parseInt(range[0]);
+                        lastFrame = range.length > 1 ? Integer.parseInt(range[1]) : firstFrame;
+                        break;
+                    }
+                    case "--sites":
+                        siteIds = new HashSet<>();
+                        for (String id : args[++i].split(","))
+                            siteIds.add(Integer.parseInt(id.trim()));
+                        break;
+                    case "--format":
+                        format = Pattern.compile(args[++i]);
+                        break;
+                    case "--dedup":
+                        deduplication = PrintDeduplication.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                        break;
+                    case "--headers":
+                        headers = true;
+                        break;
+                    case "--list-sites":
+                        listSites = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || file != null)
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        file = args[i];
+                }
+            }
+            if (file == null)
+                throw new IllegalArgumentException("No capture file");
+            if (deduplication != null && (siteIds != null || format != null))
+                throw new IllegalArgumentException("--dedup does not combine with --sites or --format");
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            System.err.println("usage: CaptureDecoder [--frames first[-last]] [--sites id[,id...]] [--format regex] [--dedup consecutive|global] [--headers] [--list-sites] capture-file");
+            System.exit(2);
+            return;
+        }
+
+        try (PrintCaptureReader reader = new PrintCaptureReader(Paths.get(file));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            if (listSites) {
+                PrintfSiteTable table = reader.getSiteTable();
+                for (int id = 0; id < table.size(); ++id)
+                    out.append(Integer.toString(id)).append('\t').append(table.get(id).toString().replace("\n", "\\n")).append('\n');
+                return;
+            }
+
+            // the sites to print, null for every record
+            Set<PrintfCallSite> sites = null;
+            if (siteIds != null) {
+                sites = new HashSet<>();
+                for (int id : siteIds)
+                    if (reader.getSiteTable().get(id) != null)
+                        sites.add(reader.getSiteTable().get(id));
+            }
+            for (int frame = Math.max(0, firstFrame); frame <= lastFrame && frame < reader.getFrameCount(); ++frame) {
+                if (headers)
+                    out.append("# frame ").append(Integer.toString(frame)).append('\n');
+                if (deduplication != null)
+                    reader.decodeFrame(frame, deduplication, out);
+                else if (sites == null && format == null)
+                    reader.decodeFrame(frame, out);
+                else
+                    decodeFiltered(reader, frame, sites, format, out);
+            }
+        } catch (IOException e) {
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+    }
+
+    private static void decodeFiltered(PrintCaptureReader reader, int frame, Set<PrintfCallSite> sites, Pattern format, Writer out) throws IOException {
+        try {
+            reader.decodeFrame(frame, record -> {
+                if (sites != null && !sites.contains(record.getSite()))
+                    return;
+                if (format != null && !format.matcher(record.getFormat()).find())
+                    return;
+                try {
+                    out.append(record.getText());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package shaderprintf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A whole format string split once into literal text and {@link FormatPlan}s, used for records written through a
+ * {@link PrintfSiteTable}
+ */
+final class CompiledFormat {
+
+    /** Text before each specifier, and after the last one; one more than {@link #plans} */
+    final String[] literals;
+    final FormatPlan[] plans;
+    /** Number of values following the call site id in a record */
+    final int valueCount;
+    /** Whether each value is printed as a float */
+    private final boolean[] floatValues;
+
+    private CompiledFormat(String[] literals, FormatPlan[] plans) {
+        this.literals = literals;
+        this.plans = plans;
+        int valueCount = 0;
+        for (FormatPlan plan : plans)
+            valueCount += plan.vecSize;
+        this.valueCount = valueCount;
+        this.floatValues = new boolean[valueCount];
+        int value = 0;
+        for (FormatPlan plan : plans)
+            for (int j = 0; j < plan.vecSize; ++j)
+                floatValues[value++] = plan.floatType;
+    }
+
+    boolean isFloat(int value) {
+        return floatValues[value];
+    }
+
+    /**
+     * Splits a format string the way the decoder reads it from the print buffer
+     */
+    static CompiledFormat compile(String format) {
+        List<String> literals = new ArrayList<>();
+        List<FormatPlan> plans = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int j = 0; j < format.length(); j++) {
+            if (format.charAt(j) == '%') {
+                // if followed by another %, we're actually supposed to print '%'
+                if (format.charAt(j + 1) == '%') {
+                    literal.append('%');
+                    j++;
+                }
+                else {
+                    int end = j;
+                    while (!PrintfChars.isConversion(format.charAt(end)))
+                        end += format.charAt(end) == '^' ? 2 : 1;
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    plans.add(FormatPlan.compile(format, j, end));
+                    j = end;
+                }
+            }
+            else
+                literal.append(format.charAt(j));
+        }
+        literals.add(literal.toString());
+        return new CompiledFormat(literals.toArray(new String[0]), plans.toArray(new FormatPlan[0]));
+    }
+
+    /**
+     * Formats a record whose values start at <code>data[from]</code>
+     *
+     * @return the index after the last value read
+     */
+    int append(StringBuilder out, int[] data, int from, boolean plainLocale, char[] scratch) {
+        int index = from;
+        for (int i = 0; i < plans.length; ++i) {
+            out.append(literals[i]);
+            plans[i].append(out, data, index, plainLocale, scratch);
+            index += plans[i].vecSize;
+        }
+        out.append(literals[plans.length]);
+        return index;
+    }
+}
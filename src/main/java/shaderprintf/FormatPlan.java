@@ -0,0 +1,402 @@
+package shaderprintf;
+
+/**
+ * A format specifier (<code>%[flags][width][.precision][^dimensions]specifier</code>) parsed once and reused for every
+ * value it formats.<br/>
+ * The common conversions (d, u, o, x, X, f, e, E, g, G with the flags '-', '+', ' ', '0' and '#' where Java accepts
+ * them) are written digit by digit without allocating. Their output is the one of {@link String#format(String,
+ * Object...)}; whenever that cannot be guaranteed (other flags, non finite values, values too close to a rounding
+ * boundary or too large for exact integer arithmetic, unusual locales) the plan falls back to String.format itself.
+ */
+final class FormatPlan {
+
+    /** Bound under which all the intermediate values of the exact float rounding are kept */
+    private static final long LIMIT = 1L << 61;
+    private static final long[] POW5 = new long[27];
+    private static final long[] POW10 = new long[19];
+    static {
+        POW5[0] = 1;
+        for (int i = 1; i < POW5.length; ++i)
+            POW5[i] = POW5[i - 1] * 5;
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    /** Number of components printed, the [^dimensions] part */
+    final int vecSize;
+    /** The conversion character as written in the shader */
+    final char conversion;
+    /** Whether the values are floats (written with floatBitsToUint) rather than integers */
+    final boolean floatType;
+    /** The equivalent Java format string, used by the fallback */
+    final String javaFormat;
+
+    private final boolean fast;
+    private final boolean leftAlign;
+    private final boolean plus;
+    private final boolean space;
+    private final boolean zeroPad;
+    private final boolean alternate;
+    private final int width;
+    private final int precision;
+
+    private FormatPlan(int vecSize, char conversion, String javaFormat) {
+        this.vecSize = vecSize;
+        this.conversion = conversion;
+        this.floatType = "diuoxX".indexOf(conversion) == -1;
+        this.javaFormat = javaFormat;
+
+        // parse what the fast path supports: %[flags][width][.precision]conversion
+        boolean leftAlign = false, plus = false, space = false, zeroPad = false, alternate = false, valid = true;
+        int i = 1;
+        flags:
+        for (; i < javaFormat.length(); ++i) {
+            boolean duplicate;
+            switch (javaFormat.charAt(i)) {
+                case '-': duplicate = leftAlign; leftAlign = true; break;
+                case '+': duplicate = plus; plus = true; break;
+                case ' ': duplicate = space; space = true; break;
+                case '0': duplicate = zeroPad; zeroPad = true; break;
+                case '#': duplicate = alternate; alternate = true; break;
+                default: break flags;
+            }
+            valid &= !duplicate;
+        }
+        int width = -1;
+        if (i < javaFormat.length() && javaFormat.charAt(i) >= '1' && javaFormat.charAt(i) <= '9') {
+            width = 0;
+            for (; i < javaFormat.length() && Character.isDigit(javaFormat.charAt(i)) && width < 1000; ++i)
+                width = width * 10 + javaFormat.charAt(i) - '0';
+        }
+        int precision = -1;
+        if (i < javaFormat.length() && javaFormat.charAt(i) == '.') {
+            precision = 0;
+            ++i;
+            valid &= i < javaFormat.length() && Character.isDigit(javaFormat.charAt(i));
+            for (; i < javaFormat.length() && Character.isDigit(javaFormat.charAt(i)) && precision < 1000; ++i)
+                precision = precision * 10 + javaFormat.charAt(i) - '0';
+        }
+        valid &= i == javaFormat.length() - 1;
+
+        // combinations Java rejects are left to String.format so that it throws as it always did
+        valid &= !(leftAlign && zeroPad) && !(plus && space) && !((leftAlign || zeroPad) && width == -1);
+        switch (conversion) {
+            case 'd': case 'u':
+                valid &= !alternate && precision == -1;
+                break;
+            case 'o': case 'x': case 'X':
+                valid &= !plus && !space && precision == -1;
+                break;
+            case 'f': case 'e': case 'E': case 'g': case 'G':
+                valid &= !alternate && precision <= 15;
+                break;
+            default:
+                valid = false;
+        }
+
+        this.fast = valid;
+        this.leftAlign = leftAlign;
+        this.plus = plus;
+        this.space = space;
+        this.zeroPad = zeroPad;
+        this.alternate = alternate;
+        this.width = width;
+        this.precision = precision;
+    }
+
+    /**
+     * Parses the specifier <code>spec[start, end]</code>, from the '%' to the conversion character included
+     */
+    static FormatPlan compile(CharSequence spec, int start, int end) {
+        int vecSize = 1;
+        StringBuilder format = new StringBuilder();
+        for (int i = start; i < end; ++i) {
+            if (spec.charAt(i) == '^') {
+                vecSize = spec.charAt(i + 1) - '0';
+                ++i;
+            }
+            else
+                format.append(spec.charAt(i));
+        }
+        char conversion = spec.charAt(end);
+        // Java does not support unsigned integers
+        format.append(conversion == 'u' ? 'd' : conversion);
+        return new FormatPlan(vecSize, conversion, format.toString());
+    }
+
+    /**
+     * Formats the <code>vecSize</code> values starting at <code>data[from]</code>, as in "(a, b, c)" for vectors
+     *
+     * @param plainLocale whether the default format locale uses '.' and '0' like {@link java.util.Locale#ROOT}
+     * @param scratch a buffer of at least 64 chars
+     */
+    void append(StringBuilder out, int[] data, int from, boolean plainLocale, char[] scratch) {
+        if (vecSize > 1) out.append('(');
+        for (int j = 0; j < vecSize; ++j) {
+            append(out, data[from + j], plainLocale, scratch);
+            if (vecSize > 1 && j < vecSize - 1) out.append(", ");
+        }
+        if (vecSize > 1) out.append(')');
+    }
+
+    /**
+     * Formats one value, given as the bits written in the buffer
+     */
+    void append(StringBuilder out, int bits, boolean plainLocale, char[] scratch) {
+        if (fast && plainLocale && (floatType ? appendFloat(out, bits, scratch) : appendInteger(out, bits, scratch)))
+            return;
+        if (floatType)
+            out.append(String.format(javaFormat, Float.intBitsToFloat(bits)));
+        else
+            out.append(String.format(javaFormat, bits));
+    }
+
+    private boolean appendInteger(StringBuilder out, int value, char[] scratch) {
+        int end = scratch.length;
+        int pos = end;
+        char sign = 0;
+        String prefix = "";
+        switch (conversion) {
+            case 'o': {
+                int v = value;
+                do { scratch[--pos] = (char) ('0' + (v & 7)); v >>>= 3; } while (v != 0);
+                if (alternate) prefix = "0";
+                break;
+            }
+            case 'x': case 'X': {
+                String digits = conversion == 'x' ? "0123456789abcdef" : "0123456789ABCDEF";
+                int v = value;
+                do { scratch[--pos] = digits.charAt(v & 15); v >>>= 4; } while (v != 0);
+                if (alternate) prefix = conversion == 'x' ? "0x" : "0X";
+                break;
+            }
+            default: {
+                long v = value;
+                if (v < 0) { sign = '-'; v = -v; }
+                else if (plus) sign = '+';
+                else if (space) sign = ' ';
+                do { scratch[--pos] = (char) ('0' + v % 10); v /= 10; } while (v != 0);
+                break;
+            }
+        }
+        appendPadded(out, sign, prefix, scratch, pos, end, null, 0, 0);
+        return true;
+    }
+
+    private boolean appendFloat(StringBuilder out, int bits, char[] scratch) {
+        float value = Float.intBitsToFloat(bits);
+        if (Float.isNaN(value) || Float.isInfinite(value))
+            return false;
+
+        char sign = 0;
+        if (bits < 0) sign = '-';
+        else if (plus) sign = '+';
+        else if (space) sign = ' ';
+
+        // value = m * 2^e exactly
+        int exponentBits = (bits >>> 23) & 0xFF;
+        long m = bits & 0x7FFFFF;
+        int e;
+        if (exponentBits == 0)
+            e = -149;
+        else {
+            m |= 0x800000;
+            e = exponentBits - 150;
+        }
+
+        // the digits go to scratch[0, length), the exponent to exponent[0, exponentLength)
+        int length;
+        char[] exponent = null;
+        int exponentLength = 0;
+        switch (conversion) {
+            case 'f': {
+                int p = precision == -1 ? 6 : precision;
+                long q;
+                if (m == 0 || Math.abs((double) value) * POW10[p] < 0.25)
+                    q = 0;
+                else
+                    q = roundScaled(m, e, p);
+                if (q < 0)
+                    return false;
+                length = writeFixed(scratch, q, p, Math.max(p + 1, digitCount(q)));
+                break;
+            }
+            case 'e': case 'E': {
+                int p = precision == -1 ? 6 : precision;
+                int k = 0;
+                long q = 0;
+                if (m != 0) {
+                    long rounded = roundSignificant(m, e, p, (int) Math.floor(Math.log10(Math.abs((double) value))));
+                    if (rounded < 0)
+                        return false;
+                    q = rounded >> 7;
+                    k = (int) (rounded & 0x7F) - 64;
+                }
+                length = writeFixed(scratch, q, p, p + 1);
+                exponent = scratch;
+                exponentLength = writeExponent(scratch, 40, conversion == 'E' ? 'E' : 'e', k);
+                break;
+            }
+            case 'g': case 'G': {
+                int p = precision == -1 ? 6 : precision == 0 ? 1 : precision;
+                if (m == 0) {
+                    length = writeFixed(scratch, 0, p - 1, p);
+                    break;
+                }
+                long rounded = roundSignificant(m, e, p - 1, (int) Math.floor(Math.log10(Math.abs((double) value))));
+                if (rounded < 0)
+                    return false;
+                long q = rounded >> 7;
+                int k = (int) (rounded & 0x7F) - 64;
+                if (k >= -4 && k < p) {
+                    // decimal notation with p significant digits
+                    int fraction = p - 1 - k;
+                    length = writeFixed(scratch, q, fraction, Math.max(fraction + 1, p));
+                }
+                else {
+                    length = writeFixed(scratch, q, p - 1, p);
+                    exponent = scratch;
+                    exponentLength = writeExponent(scratch, 40, conversion == 'G' ? 'E' : 'e', k);
+                }
+                break;
+            }
+            default:
+                return false;
+        }
+        appendPadded(out, sign, "", scratch, 0, length, exponent, 40, exponentLength);
+        return true;
+    }
+
+    /**
+     * Writes the sign, prefix, digits and exponent, padded to the width with spaces or zeros like Java does
+     */
+    private void appendPadded(StringBuilder out, char sign, String prefix, char[] digits, int from, int to, char[] exponent, int exponentFrom, int exponentLength) {
+        int length = (sign != 0 ? 1 : 0) + prefix.length() + (to - from) + exponentLength;
+        int zeros = zeroPad && width > length ? width - length : 0;
+        int spaces = !zeroPad && width > length ? width - length : 0;
+
+        if (!leftAlign)
+            for (int i = 0; i < spaces; ++i) out.append(' ');
+        if (sign != 0)
+            out.append(sign);
+        out.append(prefix);
+        for (int i = 0; i < zeros; ++i) out.append('0');
+        out.append(digits, from, to - from);
+        if (exponent != null)
+            out.append(exponent, exponentFrom, exponentLength);
+        if (leftAlign)
+            for (int i = 0; i < spaces; ++i) out.append(' ');
+    }
+
+    /**
+     * Writes q / 10^fraction with <code>fraction</code> decimals, using at least <code>digits</code> digits
+     *
+     * @return the number of characters written
+     */
+    private static int writeFixed(char[] out, long q, int fraction, int digits) {
+        int length = digits + (fraction > 0 ? 1 : 0);
+        int pos = length;
+        for (int i = 0; i < digits; ++i) {
+            if (fraction > 0 && i == fraction)
+                out[--pos] = '.';
+            out[--pos] = (char) ('0' + q % 10);
+            q /= 10;
+        }
+        return length;
+    }
+
+    /**
+     * Writes "e+XX" at <code>out[offset]</code>, with at least two digits like Java does
+     *
+     * @return the number of characters written
+     */
+    private static int writeExponent(char[] out, int offset, char e, int exponent) {
+        out[offset] = e;
+        out[offset + 1] = exponent < 0 ? '-' : '+';
+        int magnitude = Math.abs(exponent);
+        int digits = magnitude >= 100 ? 3 : 2;
+        for (int i = digits - 1; i >= 0; --i) {
+            out[offset + 2 + i] = (char) ('0' + magnitude % 10);
+            magnitude /= 10;
+        }
+        return 2 + digits;
+    }
+
+    private static int digitCount(long q) {
+        int digits = 1;
+        while (digits < POW10.length && q >= POW10[digits])
+            ++digits;
+        return digits;
+    }
+
+    /**
+     * Rounds m * 2^e to p + 1 significant digits, starting from the estimate k of its decimal exponent.
+     *
+     * @return the digits as an integer in [10^p, 10^(p+1)) shifted left by 7 bits, the low bits holding the decimal
+     * exponent plus 64; -1 when the result cannot be guaranteed to be the one of String.format
+     */
+    private static long roundSignificant(long m, int e, int p, int k) {
+        for (int attempt = 0; attempt < 3; ++attempt) {
+            long q = roundScaled(m, e, p - k);
+            if (q < 0)
+                return -1;
+            if (q < POW10[p])
+                --k;
+            else if (q > POW10[p + 1])
+                ++k;
+            else {
+                if (q == POW10[p + 1]) {
+                    // rounding carried into a new digit
+                    q = POW10[p];
+                    ++k;
+                }
+                return q << 7 | (k + 64);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rounds m * 2^e * 10^t half up to an integer, with exact integer arithmetic.<br/>
+     * Java formats the shortest decimal that converts back to the double rather than the exact binary value; both
+     * round the same way unless a rounding boundary lies within half an ulp of the value, which is checked here.
+     *
+     * @return the rounded value, or -1 when it cannot be computed exactly or might differ from String.format
+     */
+    static long roundScaled(long m, int e, int t) {
+        // m * 2^e * 10^t = m * 5^t * 2^(e+t) = num / den
+        long num = m, den = 1;
+        if (t >= 0) {
+            if (t >= POW5.length || num > LIMIT / POW5[t])
+                return -1;
+            num *= POW5[t];
+        }
+        else {
+            if (-t >= POW5.length)
+                return -1;
+            den = POW5[-t];
+        }
+        int shift = e + t;
+        if (shift >= 0) {
+            if (shift >= 62 || num > LIMIT >> shift)
+                return -1;
+            num <<= shift;
+        }
+        else {
+            if (-shift >= 62 || den > LIMIT >> -shift)
+                return -1;
+            den <<= -shift;
+        }
+
+        long q = num / den;
+        long twice = 2 * (num - q * den) - den;
+        if (twice == 0)
+            return -1;
+        // distance to the closest rounding boundary, against a generous bound of the half ulp of the double
+        double distance = Math.abs((double) twice) / (2.0 * den);
+        if (distance <= (q + 1) * 0x1p-50)
+            return -1;
+        return twice > 0 ? q + 1 : q;
+    }
+}
@@ -0,0 +1,80 @@
+package shaderprintf;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL43.*;
+import static org.lwjgl.opengl.GL45.*;
+
+/**
+ * {@link PrintBindingBackend} calling OpenGL 4.5 on the current context
+ */
+public class GLPrintBindingBackend implements PrintBindingBackend {
+
+    // reused by every call, which all happen on the thread owning the context
+    private final IntBuffer pattern = BufferUtils.createIntBuffer(4);
+    private final int[] bindingProperty = {GL_BUFFER_BINDING};
+    private final int[] propertyValue = new int[1];
+
+    @Override
+    public int getBlockIndex(int program, String block) {
+        return glGetProgramResourceIndex(program, GL_SHADER_STORAGE_BLOCK, block);
+    }
+
+    @Override
+    public int getBlockBinding(int program, int index) {
+        glGetProgramResourceiv(program, GL_SHADER_STORAGE_BLOCK, index, bindingProperty, null, propertyValue);
+        return propertyValue[0];
+    }
+
+    @Override
+    public void setBlockBinding(int program, int index, int binding) {
+        glShaderStorageBlockBinding(program, index, binding);
+    }
+
+    @Override
+    public void bindBuffer(int binding, int buffer) {
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, buffer);
+    }
+
+    @Override
+    public int createBuffer() {
+        return glCreateBuffers();
+    }
+
+    @Override
+    public void allocate(int buffer, long size) {
+        glNamedBufferData(buffer, size * 4, GL_DYNAMIC_COPY);
+    }
+
+    @Override
+    public void upload(int buffer, int[] values) {
+        glNamedBufferData(buffer, values, GL_DYNAMIC_DRAW);
+    }
+
+    @Override
+    public void clear(int buffer, long count, int[] pattern) {
+        this.pattern.clear();
+        this.pattern.put(pattern).flip();
+        if (pattern.length == 1)
+            glClearNamedBufferSubData(buffer, GL_R32UI, 0, count * 4, GL_RED_INTEGER, GL_UNSIGNED_INT, this.pattern);
+        else if (pattern.length == 4)
+            glClearNamedBufferSubData(buffer, GL_RGBA32UI, 0, count * 4, GL_RGBA_INTEGER, GL_UNSIGNED_INT, this.pattern);
+        else
+            throw new IllegalArgumentException("Patterns hold 1 or 4 uints: " + pattern.length);
+    }
+
+    @Override
+    public void read(int buffer, int[] values) {
+        glGetNamedBufferSubData(buffer, 0, values);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        glDeleteBuffers(buffer);
+    }
+}
@@ -0,0 +1,80 @@
+package shaderprintf;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL42.*;
+import static org.lwjgl.opengl.GL44.*;
+import static org.lwjgl.opengl.GL45.*;
+
+/**
+ * {@link PrintBufferBackend} calling OpenGL 4.5 on the current context
+ */
+public class GLPrintBufferBackend implements PrintBufferBackend {
+
+    private static final int MAP_FLAGS = GL_MAP_READ_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+    private static final long WAIT_STEP = 1_000_000_000L;
+
+    @Override
+    public int createBuffer(int size) {
+        int buffer = glCreateBuffers();
+        glNamedBufferStorage(buffer, size, MAP_FLAGS);
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer map(int buffer) {
+        return glMapNamedBufferRange(buffer, 0, glGetNamedBufferParameteri(buffer, GL_BUFFER_SIZE), MAP_FLAGS);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        glUnmapNamedBuffer(buffer);
+        // also deletes the record counters of the buffer
+        ShaderPrintf.deletePrintBuffer(buffer);
+    }
+
+    @Override
+    public void reset(int buffer) {
+        // also clears the record counters and statistics of the buffer, once per frame
+        ShaderPrintf.resetPrintBuffer(buffer);
+    }
+
+    @Override
+    public void bind(int program, int buffer) {
+        // with the binding points of the program cached by ShaderPrintf
+        ShaderPrintf.bindPrintBlocks(program, buffer);
+    }
+
+    @Override
+    public long fence() {
+        // shader storage writes reach a persistent mapping only after this barrier
+        glMemoryBarrier(GL_CLIENT_MAPPED_BUFFER_BARRIER_BIT);
+        return glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public boolean isSignaled(long fence) {
+        int status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+        if (status == GL_WAIT_FAILED)
+            throw new IllegalStateException("glClientWaitSync failed");
+        return status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED;
+    }
+
+    @Override
+    public void waitFence(long fence) {
+        int status;
+        do {
+            status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_STEP);
+            if (status == GL_WAIT_FAILED)
+                throw new IllegalStateException("glClientWaitSync failed");
+        } while (status == GL_TIMEOUT_EXPIRED);
+    }
+
+    @Override
+    public void deleteFence(long fence) {
+        glDeleteSync(fence);
+    }
+}
@@ -0,0 +1,142 @@
+package shaderprintf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parts of a shader source preprocessed one by one, for hot reloads: only the parts that are new since the last
+ * update are preprocessed again, the others are reused as they were linked. Parts are found by their content, so
+ * moving, duplicating or removing a part preprocesses nothing.<br/>
+ * Each part is preprocessed on its own, so a comment or a printf call may not span two parts. In the result, each part
+ * after the one holding the #version line starts with a <code>#line 1 n</code> directive, n being its index, on a line
+ * of its own: compiler messages and the lines of call sites count from the start of their part. Editing a part thus
+ * keeps the ids of the call sites of the others. As #version must come before any other directive, the parts up to
+ * the one holding it get none: the header restores the lines of that part after its #version line.<br/>
+ * The result is therefore not the preprocessed concatenation of the parts: besides these directives, a newline is
+ * added before a directive following a part that does not end with one. Compiled, it prints the same records, with
+ * the lines of each part.<br/>
+ * The header declaring the print buffer goes after the #version line of the first part having one, the start of the
+ * first part without one; it declares the statistics buffer if any part has printstat calls.<br/>
+ * Keep one instance per shader; instances are not thread-safe.
+ */
+public class IncrementalShaderSource {
+
+    private final PrintfSiteTable table;
+    // the options of the last update, and the results of its parts by content
+    private PrintfOptions options;
+    private Map<String, LinkedPart> results = new HashMap<>();
+    // the results of the parts of the last update, in order
+    private LinkedPart[] parts = new LinkedPart[0];
+    private int lastProcessedCount;
+    private long processedCount;
+
+    /**
+     * Registers call sites in the table of {@link ShaderPrintf}
+     */
+    public IncrementalShaderSource() {
+        this(ShaderPrintf.getSiteTable());
+    }
+
+    public IncrementalShaderSource(PrintfSiteTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Returns the whole preprocessed source of the given parts, preprocessing those that were not parts of the last
+     * update; a change of options preprocesses every part again
+     */
+    public String update(PrintfOptions options, String... parts) {
+        if (!options.equals(this.options)) {
+            this.options = options;
+            results.clear();
+        }
+
+        lastProcessedCount = 0;
+        Map<String, LinkedPart> current = new HashMap<>();
+        this.parts = new LinkedPart[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            LinkedPart part = current.get(parts[i]);
+            if (part == null)
+                part = results.get(parts[i]);
+            if (part == null) {
+                PreprocessedPart processed = PrintfPreprocessor.processPart(parts[i], options);
+                // ids only depend on the call sites, which the table keeps: the linked text stays valid
+                part = new LinkedPart(processed, processed.source.link(table));
+                // kept even if a later part fails
+                results.put(parts[i], part);
+                lastProcessedCount++;
+            }
+            current.put(parts[i], part);
+            this.parts[i] = part;
+        }
+        // the parts left out are forgotten
+        results = current;
+        processedCount += lastProcessedCount;
+        return stitch();
+    }
+
+    /**
+     * Joins the linked parts, with the header and the #line directives
+     */
+    private String stitch() {
+        int headerPart = 0;
+        boolean hasStats = false;
+        int length = 0;
+        for (int i = parts.length - 1; i >= 0; --i) {
+            if (parts[i].processed.headerOffset != -1)
+                headerPart = i;
+            hasStats |= parts[i].processed.hasStats;
+            length += parts[i].linked.length();
+        }
+        PreprocessedPart first = parts.length > 0 ? parts[headerPart].processed : null;
+        String header = PrintfPreprocessor.header(options, hasStats, first != null ? first.lineAfterVersion : 2, headerPart);
+
+        StringBuilder result = new StringBuilder(length + header.length() + 16 * parts.length);
+        for (int i = 0; i < parts.length; ++i) {
+            String linked = parts[i].linked;
+            // no directive may come before the #version line
+            if (i > headerPart) {
+                if (result.length() > 0 && result.charAt(result.length() - 1) != '\n')
+                    result.append('\n');
+                result.append("#line 1 ").append(i).append('\n');
+            }
+            if (i == headerPart) {
+                // nothing before the #version line is rewritten, so the offset is the same in the linked text
+                int offset = Math.min(Math.max(0, parts[i].processed.headerOffset), linked.length());
+                result.append(linked, 0, offset).append(header).append(linked, offset, linked.length());
+            }
+            else
+                result.append(linked);
+        }
+        if (parts.length == 0)
+            result.append(header);
+        return result.toString();
+    }
+
+    /**
+     * Number of parts preprocessed by the last update
+     */
+    public int getLastProcessedCount() {
+        return lastProcessedCount;
+    }
+
+    /**
+     * Number of parts preprocessed by all updates
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * A preprocessed part and its text linked to the table
+     */
+    private static final class LinkedPart {
+        final PreprocessedPart processed;
+        final String linked;
+
+        LinkedPart(PreprocessedPart processed, String linked) {
+            this.processed = processed;
+            this.linked = linked;
+        }
+    }
+}
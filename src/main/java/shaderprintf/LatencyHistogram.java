@@ -0,0 +1,94 @@
+package shaderprintf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, with one bucket per power of two; see {@link PrintMetrics}.<br/>
+ * Recording is lock-free and can happen from several threads.
+ */
+public final class LatencyHistogram {
+
+    /** Number of buckets; bucket i counts the durations from 2^i to 2^(i+1)-1 nanoseconds, bucket 0 also counts 0 */
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucket(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    /**
+     * Mean duration, 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+        long n = count.sum();
+        return n > 0 ? total.sum() / n : 0;
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Upper bound of the duration below which the given fraction (0 to 1) of the recorded durations fall, within a
+     * factor 2; 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        long n = count.sum();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Number of durations in each bucket
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            buckets.set(i, 0);
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count " + getCount() + ", mean " + getMeanNanos() + "ns, p50 " + getPercentileNanos(0.5) + "ns, p99 "
+                + getPercentileNanos(0.99) + "ns, max " + getMaxNanos() + "ns";
+    }
+}
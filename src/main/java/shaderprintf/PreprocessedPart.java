@@ -0,0 +1,23 @@
+package shaderprintf;
+
+/**
+ * Result of the printf preprocessor for one part of a shader source, without the header declaring the print buffer;
+ * see {@link IncrementalShaderSource}
+ */
+final class PreprocessedPart {
+
+    final PreprocessedSource source;
+    /** Offset of the header in the text, after the #version line; -1 if the part has no #version line */
+    final int headerOffset;
+    /** Line following the #version line, which the header restores with a #line directive */
+    final int lineAfterVersion;
+    /** Whether the part has printstat calls, which need the statistics buffer */
+    final boolean hasStats;
+
+    PreprocessedPart(PreprocessedSource source, int headerOffset, int lineAfterVersion, boolean hasStats) {
+        this.source = source;
+        this.headerOffset = headerOffset;
+        this.lineAfterVersion = lineAfterVersion;
+        this.hasStats = hasStats;
+    }
+}
@@ -0,0 +1,226 @@
+package shaderprintf;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the printf preprocessor, before call site ids are assigned.<br/>
+ * The text refers to its call sites through placeholders, so the same result can be cached and then linked against any
+ * {@link PrintfSiteTable} with {@link #link(PrintfSiteTable)}.
+ */
+public final class PreprocessedSource {
+
+    /** Marks the beginning and the end of a call site placeholder; not a valid character in shader sources */
+    static final char PLACEHOLDER = '\uFFFF';
+    /** Placeholder kind replaced by the tagged id that starts a record in the print buffer */
+    static final char RECORD_TAG = 'r';
+    /** Placeholder kind replaced by the condition testing the bit of the call site in the site mask */
+    static final char MASK_TEST = 'm';
+    /** Placeholder kind replaced by the id of the call site, as an index in the record counters and statistics */
+    static final char SITE_ID = 'c';
+    /** Name of the buffer the printf calls write to */
+    static final String PRINT_BLOCK = "printBuffer";
+    /** Name of the buffer holding the site mask, one bit per call site id, set when the call site is disabled */
+    static final String MASK_BLOCK = "printMaskBuffer";
+    /** Name of the buffer holding the number of records each call site tried to write, indexed by call site id */
+    static final String COUNTER_BLOCK = "printCountBuffer";
+    /** Name of the buffer holding the statistics of printstat calls, {@link PrintStat#SLOT_SIZE} uints per call site id */
+    static final String STAT_BLOCK = "printStatBuffer";
+
+    /** Set on the first uint of a record written by a call site, to tell it apart from a character */
+    static final int SITE_TAG = 0x80000000;
+    /** Bits of the first uint of a record holding the id of the call site */
+    static final int SITE_ID_MASK = 0x7FFFFFFF;
+    /** Set on the length written before a record, with the 30 bits below holding it; see {@link #isLength(int)} */
+    static final int LENGTH_TAG = 0x40000000;
+    /** Bits of a length word holding the number of uints of the record, the length word included */
+    static final int LENGTH_MASK = 0x3FFFFFFF;
+    /** Set on the marker of a run of packed characters, with the 29 bits below holding the number of characters */
+    static final int PACKED_TAG = 0x20000000;
+    /** Bits of a packed text marker holding the number of characters; four of them follow per uint, first one lowest */
+    static final int PACKED_COUNT_MASK = 0x1FFFFFFF;
+    /** Largest character that can be packed in a byte */
+    static final char PACKED_CHAR_MAX = '\u00FF';
+    /** Number of uints of the invocation key following the call site id, when the call site has a stage */
+    static final int INVOCATION_KEY_SIZE = 3;
+
+    /**
+     * Whether a uint starting a record is its length rather than a character or a call site id
+     */
+    static boolean isLength(int value) {
+        return (value & ~LENGTH_MASK) == LENGTH_TAG;
+    }
+
+    /**
+     * Whether a uint starts a record from a call site, in a buffer printed with the given layout tags
+     */
+    static boolean isSiteRecord(int value, int layout) {
+        return (value & layout & SITE_TAG) != 0;
+    }
+
+    /**
+     * Whether a uint is the length of a record, in a buffer printed with the given layout tags
+     */
+    static boolean isLength(int value, int layout) {
+        return (layout & LENGTH_TAG) != 0 && isLength(value);
+    }
+
+    /**
+     * Whether a uint is the marker of a run of packed characters, in a buffer printed with the given layout tags
+     */
+    static boolean isPackedText(int value, int layout) {
+        return (layout & PACKED_TAG) != 0 && isPackedText(value);
+    }
+
+    /**
+     * Whether a uint is the marker of a run of packed characters
+     */
+    static boolean isPackedText(int value) {
+        return (value & ~PACKED_COUNT_MASK) == PACKED_TAG;
+    }
+
+    /**
+     * A character of a run of packed characters, the run starting at <code>data[from]</code> after its marker
+     */
+    static char packedChar(int[] data, int from, int index) {
+        return (char) (data[from + (index >> 2)] >>> ((index & 3) << 3) & 0xFF);
+    }
+
+    private final String text;
+    private final List<PrintfCallSite> sites;
+    // tags the values printed by the source may carry, see PrintfOptions.layoutTags
+    private final int layout;
+
+    PreprocessedSource(String text, List<PrintfCallSite> sites, int layout) {
+        this.text = text;
+        this.sites = Collections.unmodifiableList(sites);
+        this.layout = layout;
+    }
+
+    /**
+     * The call sites referred to by the source, in order of appearance
+     */
+    public List<PrintfCallSite> getSites() {
+        return sites;
+    }
+
+    /**
+     * Registers the call sites and the layout of the records in the given table and returns the final shader source
+     */
+    public String link(PrintfSiteTable table) {
+        table.addLayout(layout);
+        if (sites.isEmpty())
+            return text;
+
+        int[] ids = new int[sites.size()];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = table.register(sites.get(i));
+
+        StringBuilder result = new StringBuilder(text.length() + ids.length * 16);
+        int from = 0;
+        int start;
+        while ((start = text.indexOf(PLACEHOLDER, from)) != -1) {
+            int end = text.indexOf(PLACEHOLDER, start + 1);
+            char kind = text.charAt(start + 1);
+            int id = ids[Integer.parseInt(text.substring(start + 2, end))];
+            result.append(text, from, start);
+            switch (kind) {
+                case RECORD_TAG:
+                    result.append(Integer.toUnsignedString(SITE_TAG | id));
+                    break;
+                case MASK_TEST:
+                    result.append("(printMask[").append(id >>> 5).append("]&").append(Integer.toUnsignedString(1 << (id & 31))).append("u)==0u");
+                    break;
+                case SITE_ID:
+                    result.append(id);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown placeholder kind " + kind);
+            }
+            from = end + 1;
+        }
+        result.append(text, from, text.length());
+        return result.toString();
+    }
+
+    /**
+     * Appends a placeholder for the given call site to a source being generated
+     */
+    static void appendPlaceholder(StringBuilder out, char kind, int localSite) {
+        out.append(PLACEHOLDER).append(kind).append(localSite).append(PLACEHOLDER);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(layout);
+        out.writeInt(sites.size());
+        for (PrintfCallSite site : sites) {
+            out.writeInt(site.getLine());
+            writeString(out, site.getFormat());
+            out.writeInt(site.getStage() != null ? site.getStage().ordinal() : -1);
+            out.writeBoolean(site.getSourceName() != null);
+            if (site.getSourceName() != null)
+                writeString(out, site.getSourceName());
+            out.writeInt(site.getRecordLimit());
+            out.writeBoolean(site.isStat());
+        }
+        writeString(out, text);
+    }
+
+    /**
+     * Reads a result written by {@link #write(DataOutput)}; the input may be truncated or corrupt, which throws an
+     * IOException, never allocates after a length read from it
+     */
+    static PreprocessedSource read(DataInput in) throws IOException {
+        int layout = in.readInt();
+        int siteCount = readLength(in);
+        List<PrintfCallSite> sites = new ArrayList<>(Math.min(siteCount, 64));
+        for (int i = 0; i < siteCount; ++i) {
+            int line = in.readInt();
+            String format = readString(in);
+            int stage = in.readInt();
+            if (stage < -1 || stage >= ShaderStage.values().length)
+                throw new IOException("Invalid shader stage " + stage);
+            String sourceName = in.readBoolean() ? readString(in) : null;
+            int recordLimit = in.readInt();
+            boolean stat = in.readBoolean();
+            sites.add(new PrintfCallSite(line, format).withStage(stage >= 0 ? ShaderStage.values()[stage] : null).withSourceName(sourceName)
+                    .withRecordLimit(recordLimit).withStat(stat));
+        }
+        return new PreprocessedSource(readString(in), sites, layout);
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = readLength(in);
+        // grows with what is actually read, a truncated input ends with an EOFException
+        StringBuilder chars = new StringBuilder(Math.min(length, 4096));
+        for (int i = 0; i < length; ++i)
+            chars.append(in.readChar());
+        return chars.toString();
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Invalid length " + length);
+        return length;
+    }
+
+    /**
+     * Estimate of the memory held by this result, in bytes
+     */
+    long sizeInBytes() {
+        long size = 2L * text.length();
+        for (PrintfCallSite site : sites)
+            size += 32 + 2L * site.getFormat().length();
+        return size;
+    }
+}
@@ -0,0 +1,51 @@
+package shaderprintf;
+
+/**
+ * The OpenGL calls {@link ShaderPrintf} makes to bind print buffers, along with the mask, record counters and
+ * printstat statistics kept next to them.<br/>
+ * {@link GLPrintBindingBackend} issues them to the current context, the tests record them without a GPU; see
+ * {@link ShaderPrintf#setBindingBackend(PrintBindingBackend)}.
+ */
+public interface PrintBindingBackend {
+
+    /**
+     * Index of a shader storage block of a program, -1 (GL_INVALID_INDEX) if the program has no such block
+     */
+    int getBlockIndex(int program, String block);
+
+    /**
+     * Binding point of a shader storage block of a program
+     */
+    int getBlockBinding(int program, int index);
+
+    void setBlockBinding(int program, int index, int binding);
+
+    /**
+     * Binds a buffer to a shader storage binding point
+     */
+    void bindBuffer(int binding, int buffer);
+
+    int createBuffer();
+
+    /**
+     * Gives a buffer storage for <code>size</code> uints, with undefined contents
+     */
+    void allocate(int buffer, long size);
+
+    /**
+     * Gives a buffer storage holding the given values
+     */
+    void upload(int buffer, int[] values);
+
+    /**
+     * Fills the first <code>count</code> uints of a buffer with a pattern of 1 or 4 uints, repeated
+     */
+    void clear(int buffer, long count, int[] pattern);
+
+    /**
+     * Reads the first <code>values.length</code> uints of a buffer into <code>values</code>
+     */
+    void read(int buffer, int[] values);
+
+    void deleteBuffer(int buffer);
+}
@@ -0,0 +1,55 @@
+package shaderprintf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The graphics API calls used by {@link PrintBufferRing} and {@link PrintBufferPool}.<br/>
+ * {@link GLPrintBufferBackend} issues them to the current OpenGL context; the tests emulate them without a GPU.
+ */
+public interface PrintBufferBackend {
+
+    /**
+     * Creates a print buffer of <code>size</code> bytes that stays mapped for reading until deleted
+     *
+     * @return the name of the buffer
+     */
+    int createBuffer(int size);
+
+    /**
+     * The persistent mapping of a buffer created by {@link #createBuffer(int)}, in native byte order
+     */
+    ByteBuffer map(int buffer);
+
+    /**
+     * Unmaps and deletes a buffer created by {@link #createBuffer(int)}
+     */
+    void deleteBuffer(int buffer);
+
+    /**
+     * Sets the writing position of a buffer back to its first value
+     */
+    void reset(int buffer);
+
+    /**
+     * Binds a buffer to the print buffer block of a program
+     */
+    void bind(int program, int buffer);
+
+    /**
+     * Inserts a fence after the commands issued so far, making their writes visible through the mappings once it has
+     * signalled
+     */
+    long fence();
+
+    /**
+     * Whether the commands before a fence have completed, without waiting
+     */
+    boolean isSignaled(long fence);
+
+    /**
+     * Waits until the commands before a fence have completed
+     */
+    void waitFence(long fence);
+
+    void deleteFence(long fence);
+}
@@ -0,0 +1,758 @@
+package shaderprintf;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Turns the content of a print buffer into text; see {@link ShaderPrintf#getPrintBufferString(int)}.<br/>
+ * Works on a CPU copy of the buffer and has no dependency on OpenGL. Format specifiers are parsed once into
+ * {@link FormatPlan}s, kept by the decoder for the specifiers written in the buffer and by the call sites for the
+ * format table.<br/>
+ * A decoder is not thread-safe; use one per thread.
+ */
+final class PrintBufferDecoder {
+
+    private final PrintfSiteTable table;
+    private final boolean plainLocale = isPlainLocale();
+    private final char[] scratch = new char[64];
+
+    // plans of the specifiers written in the buffer, keyed by their characters packed 7 bits each; 0 is an empty slot
+    private long[] planKeys = new long[64];
+    private FormatPlan[] plans = new FormatPlan[64];
+    private int planCount;
+
+    // smallest number of values decoded by a task of decodeParallel
+    private static final int MIN_PARALLEL_GRAIN = 16 * 1024;
+
+    // formats of text printed without a format table; the same ones usually come back with every buffer
+    private static final int MAX_TEXT_FORMAT_CHARS = 64 * 1024;
+    private final Map<String, CompiledFormat> textFormats = new HashMap<>();
+    // characters of the formats in textFormats
+    private int textFormatChars;
+
+    // records decoded by decode per call site id, when counted for the metrics; null otherwise
+    private int[] siteRecords;
+
+    /** Text ending the output when the rest of a buffer cannot be decoded, see {@link #site(int)} */
+    static final String CORRUPT_TAIL = "[rest of the print buffer skipped: unknown printf call site]\n";
+    // whether the buffer being decoded reached a value that cannot start a record; nothing after it is decoded
+    private boolean corruptTail;
+
+    /**
+     * @param table the table of the call sites that wrote records with a site id
+     */
+    PrintBufferDecoder(PrintfSiteTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Decodes the first <code>printedSize</code> values of <code>printfData</code> (the buffer without its first value)
+     */
+    static String decode(int[] printfData, int printedSize, PrintfSiteTable table) {
+        StringBuilder result = new StringBuilder();
+        new PrintBufferDecoder(table).decode(printfData, printedSize, result);
+        return result.toString();
+    }
+
+    /**
+     * Decodes the first <code>printedSize</code> values of <code>printfData</code> (the buffer without its first value)
+     * at the end of <code>result</code>
+     */
+    void decode(int[] printfData, int printedSize, StringBuilder result) {
+        corruptTail = false;
+        decode(printfData, 0, printedSize, result);
+    }
+
+    /**
+     * Decodes the values of <code>printfData</code> from <code>from</code> to <code>limit</code> at the end of
+     * <code>result</code>, stopping before a record or a specifier cut by <code>limit</code>
+     *
+     * @return the index of the first value not decoded, <code>limit</code> when everything was decoded
+     */
+    int decode(int[] printfData, int from, int limit, StringBuilder result) {
+        if (corruptTail)
+            return limit;
+        int layout = table.getLayout();
+        // this loop parses the formatting of the result
+        for (int i = from; i < limit; i++) {
+            // a record written with a format table: the format string comes from the table, the values follow
+            if (PreprocessedSource.isSiteRecord(printfData[i], layout)) {
+                PrintfCallSite site = site(printfData[i]);
+                if (site == null) {
+                    result.append(CORRUPT_TAIL);
+                    corruptTail = true;
+                    return limit;
+                }
+                CompiledFormat format = site.compiledFormat();
+                if (i + site.headerSize() + format.valueCount >= limit)
+                    return i;
+                if (siteRecords != null)
+                    siteRecords = countSiteRecord(siteRecords, printfData[i] & PreprocessedSource.SITE_ID_MASK);
+                // the invocation key is only kept by records
+                i = format.append(result, printfData, i + 1 + site.headerSize(), plainLocale, scratch) - 1;
+            }
+            // the length of a record is only needed to split the buffer, the record follows
+            else if (PreprocessedSource.isLength(printfData[i], layout)) {
+                continue;
+            }
+            // a run of literal characters packed four per uint
+            else if (PreprocessedSource.isPackedText(printfData[i], layout)) {
+                int count = printfData[i] & PreprocessedSource.PACKED_COUNT_MASK;
+                if (i + (count + 3) / 4 >= limit)
+                    return i;
+                for (int k = 0; k < count; ++k)
+                    result.append(PreprocessedSource.packedChar(printfData, i + 1, k));
+                i += (count + 3) / 4;
+            }
+            // % indicates the beginning of a formatted input
+            else if ((char)printfData[i] == '%') {
+                if (i + 1 >= limit)
+                    return i;
+                // if followed by another %, we're actually supposed to print '%'
+                if ((char)printfData[i + 1] == '%') {
+                    result.append('%');
+                    i++;
+                }
+                // otherwise we'll be printing numbers
+                else {
+                    int end = specifierEnd(printfData, i, limit);
+                    if (end == -1)
+                        return i;
+                    FormatPlan plan = plan(printfData, i, end);
+                    if (end + plan.vecSize >= limit)
+                        return i;
+                    plan.append(result, printfData, end + 1, plainLocale, scratch);
+                    i = end + plan.vecSize;
+                }
+            }
+            else // otherwise it's a single character, just add it to the result
+                result.append((char)printfData[i]);
+        }
+        return limit;
+    }
+
+    /**
+     * Decodes the first <code>printedSize</code> values of <code>printfData</code> at the end of <code>result</code>,
+     * formatting each distinct record once, see {@link PrintDeduplication}; a record cut by the end is left out
+     */
+    void decode(int[] printfData, int printedSize, PrintDeduplication deduplication, StringBuilder result) {
+        boolean global = deduplication == PrintDeduplication.GLOBAL;
+        int layout = table.getLayout();
+        corruptTail = false;
+        // formatting must not count the records again
+        int[] counted = siteRecords;
+        siteRecords = null;
+        // distinct records in the order they were first seen: first value, first compared value after it, end
+        int[] starts = new int[64], compared = new int[64], ends = new int[64], counts = new int[64], hashes = new int[64];
+        int recordCount = 0;
+        // record numbers plus one by hash, for the global mode
+        int[] slots = new int[global ? 128 : 0];
+
+        for (int i = 0; i < printedSize; ) {
+            // lengths only split the buffer, and each one starts a record
+            if (PreprocessedSource.isLength(printfData[i], layout)) {
+                i++;
+                continue;
+            }
+            int start = i, from, end;
+            if (PreprocessedSource.isSiteRecord(printfData[i], layout)) {
+                if (site(printfData[i]) == null) {
+                    corruptTail = true;
+                    break;
+                }
+                if ((end = unitEnd(printfData, i, printedSize)) == -1)
+                    break;
+                // the invocation key is not part of the text
+                from = i + 1 + site(printfData[i]).headerSize();
+                if (counted != null)
+                    counted = countSiteRecord(counted, printfData[i] & PreprocessedSource.SITE_ID_MASK);
+            }
+            else {
+                if ((end = lineEnd(printfData, i, printedSize)) == i)
+                    break;
+                from = i + 1;
+            }
+            i = end;
+
+            int hash = printfData[start];
+            for (int k = from; k < end; ++k)
+                hash = 31 * hash + printfData[k];
+            // the record it repeats, -1 if none
+            int same = -1;
+            if (!global) {
+                int last = recordCount - 1;
+                if (last >= 0 && hashes[last] == hash && sameRecord(printfData, starts[last], compared[last], ends[last], start, from, end))
+                    same = last;
+                else if (last >= 0) {
+                    // a run ended: only the last record may repeat, the others are done with
+                    appendRecord(printfData, starts[last], ends[last], counts[last], result);
+                    recordCount = 0;
+                }
+            }
+            else {
+                int mask = slots.length - 1;
+                int slot = (hash ^ hash >>> 16) & mask;
+                for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                    int r = slots[slot] - 1;
+                    if (hashes[r] == hash && sameRecord(printfData, starts[r], compared[r], ends[r], start, from, end)) {
+                        same = r;
+                        break;
+                    }
+                }
+                if (same == -1)
+                    slots[slot] = recordCount + 1;
+            }
+            if (same != -1) {
+                counts[same]++;
+                continue;
+            }
+
+            if (recordCount == starts.length) {
+                starts = Arrays.copyOf(starts, recordCount * 2);
+                compared = Arrays.copyOf(compared, recordCount * 2);
+                ends = Arrays.copyOf(ends, recordCount * 2);
+                counts = Arrays.copyOf(counts, recordCount * 2);
+                hashes = Arrays.copyOf(hashes, recordCount * 2);
+            }
+            starts[recordCount] = start;
+            compared[recordCount] = from;
+            ends[recordCount] = end;
+            counts[recordCount] = 1;
+            hashes[recordCount] = hash;
+            recordCount++;
+            if (global && recordCount * 2 > slots.length)
+                slots = rehash(hashes, recordCount, slots.length * 2);
+        }
+        // the records before a value that cannot start one are still formatted
+        boolean corrupt = corruptTail;
+        corruptTail = false;
+        for (int r = 0; r < recordCount; ++r)
+            appendRecord(printfData, starts[r], ends[r], counts[r], result);
+        if (corrupt)
+            result.append(CORRUPT_TAIL);
+        corruptTail = corrupt;
+        siteRecords = counted;
+    }
+
+    /**
+     * Index after the text starting at <code>printfData[i]</code>: its units up to the first one ending with a newline,
+     * the start of a record from a call site or the length of a record, or the first unit cut by <code>limit</code>
+     */
+    int lineEnd(int[] printfData, int i, int limit) {
+        int layout = table.getLayout();
+        while (i < limit && !PreprocessedSource.isSiteRecord(printfData[i], layout) && !PreprocessedSource.isLength(printfData[i], layout)) {
+            int end = unitEnd(printfData, i, limit);
+            if (end == -1)
+                break;
+            char last = PreprocessedSource.isPackedText(printfData[i], layout)
+                    ? PreprocessedSource.packedChar(printfData, i + 1, (printfData[i] & PreprocessedSource.PACKED_COUNT_MASK) - 1)
+                    : end == i + 1 ? (char)printfData[i] : 0;
+            i = end;
+            if (last == '\n')
+                break;
+        }
+        return i;
+    }
+
+    /**
+     * Whether two records have the same first value and the same values from their first compared one
+     */
+    private static boolean sameRecord(int[] data, int start1, int from1, int end1, int start2, int from2, int end2) {
+        if (data[start1] != data[start2] || end1 - from1 != end2 - from2)
+            return false;
+        for (int k = 0; k < end1 - from1; ++k)
+            if (data[from1 + k] != data[from2 + k])
+                return false;
+        return true;
+    }
+
+    private static int[] rehash(int[] hashes, int recordCount, int size) {
+        int[] slots = new int[size];
+        for (int r = 0; r < recordCount; ++r) {
+            int slot = (hashes[r] ^ hashes[r] >>> 16) & (size - 1);
+            while (slots[slot] != 0)
+                slot = (slot + 1) & (size - 1);
+            slots[slot] = r + 1;
+        }
+        return slots;
+    }
+
+    /**
+     * Formats a record with its repeat count
+     */
+    private void appendRecord(int[] printfData, int start, int end, int count, StringBuilder result) {
+        int length = result.length();
+        decode(printfData, start, end, result);
+        if (count == 1)
+            return;
+        String repeats = " (x" + count + ")";
+        if (result.length() > length && result.charAt(result.length() - 1) == '\n')
+            result.insert(result.length() - 1, repeats);
+        else
+            result.append(repeats);
+    }
+
+    /**
+     * Decodes <code>printedSize</code> values read <code>chunkSize</code> at a time, handing the text of each chunk to
+     * <code>sink</code>.<br/>
+     * A record cut by the end of a chunk is carried over to the next one; one cut by the end of the printed range is left
+     * out.
+     */
+    <E extends Exception> void decode(ValueReader reader, int printedSize, int chunkSize, TextSink<E> sink) throws E {
+        corruptTail = false;
+        StringBuilder text = new StringBuilder();
+        int[] chunk = new int[Math.max(1, Math.min(chunkSize, printedSize))];
+        int read = 0;
+        // values at the beginning of the chunk that the previous one ended in the middle of
+        int carried = 0;
+        while (read < printedSize) {
+            int count = Math.min(Math.min(chunk.length - carried, chunkSize), printedSize - read);
+            reader.read(read, chunk, carried, count);
+            read += count;
+
+            int filled = carried + count;
+            int decoded = decode(chunk, 0, filled, text);
+            carried = filled - decoded;
+            System.arraycopy(chunk, decoded, chunk, 0, carried);
+            // a single record longer than the chunk
+            if (carried == chunk.length)
+                chunk = Arrays.copyOf(chunk, chunk.length * 2);
+            sink.write(text, false);
+        }
+        sink.write(text, true);
+    }
+
+    /**
+     * Decodes the first <code>printedSize</code> values of <code>printfData</code> into records, leaving out a record cut
+     * by the end
+     */
+    void decodeRecords(int[] printfData, int printedSize, long batch, Consumer<PrintRecord> out) {
+        decodeRecords(printfData, 0, printedSize, batch, out);
+    }
+
+    /**
+     * Decodes the values of <code>printfData</code> from <code>from</code> to <code>printedSize</code> into records,
+     * leaving out a record cut by the end.<br/>
+     * Text printed without a format table makes a record per line, and per record when records start with their length,
+     * like {@link PrintLog} counts them.
+     */
+    void decodeRecords(int[] printfData, int from, int printedSize, long batch, Consumer<PrintRecord> out) {
+        StringBuilder format = new StringBuilder();
+        int[] values = new int[16];
+        int valueCount = 0;
+        int layout = table.getLayout();
+        for (int i = from; i < printedSize; i++) {
+            if (PreprocessedSource.isSiteRecord(printfData[i], layout)) {
+                PrintRecord record = record(printfData, i, printedSize, batch);
+                if (record == null)
+                    break;
+                emitText(format, values, valueCount, batch, out);
+                valueCount = 0;
+                out.accept(record);
+                i += record.getSite().headerSize() + record.getValueCount();
+            }
+            else if (PreprocessedSource.isLength(printfData[i], layout)) {
+                emitText(format, values, valueCount, batch, out);
+                valueCount = 0;
+            }
+            else if (PreprocessedSource.isPackedText(printfData[i], layout)) {
+                int count = printfData[i] & PreprocessedSource.PACKED_COUNT_MASK;
+                if (i + (count + 3) / 4 >= printedSize)
+                    break;
+                for (int k = 0; k < count; ++k) {
+                    char c = PreprocessedSource.packedChar(printfData, i + 1, k);
+                    format.append(c);
+                    // packed text is literal, the rebuilt format string is not
+                    if (c == '%')
+                        format.append('%');
+                }
+                i += (count + 3) / 4;
+                if (count > 0 && format.charAt(format.length() - 1) == '\n') {
+                    emitText(format, values, valueCount, batch, out);
+                    valueCount = 0;
+                }
+            }
+            else if ((char)printfData[i] == '%') {
+                if (i + 1 >= printedSize)
+                    break;
+                if ((char)printfData[i + 1] == '%') {
+                    format.append("%%");
+                    i++;
+                }
+                else {
+                    int end = specifierEnd(printfData, i, printedSize);
+                    if (end == -1)
+                        break;
+                    FormatPlan plan = plan(printfData, i, end);
+                    if (end + plan.vecSize >= printedSize)
+                        break;
+                    for (int j = i; j <= end; ++j)
+                        format.append((char)printfData[j]);
+                    if (valueCount + plan.vecSize > values.length)
+                        values = Arrays.copyOf(values, values.length * 2);
+                    System.arraycopy(printfData, end + 1, values, valueCount, plan.vecSize);
+                    valueCount += plan.vecSize;
+                    i = end + plan.vecSize;
+                }
+            }
+            else {
+                format.append((char)printfData[i]);
+                if ((char)printfData[i] == '\n') {
+                    emitText(format, values, valueCount, batch, out);
+                    valueCount = 0;
+                }
+            }
+        }
+        emitText(format, values, valueCount, batch, out);
+    }
+
+    /**
+     * Turns text printed without a format table into a record, if there is any
+     */
+    private void emitText(StringBuilder format, int[] values, int valueCount, long batch, Consumer<PrintRecord> out) {
+        if (format.length() == 0)
+            return;
+        String text = format.toString();
+        format.setLength(0);
+        CompiledFormat compiled = textFormats.get(text);
+        if (compiled == null) {
+            compiled = CompiledFormat.compile(text);
+            if (text.length() <= MAX_TEXT_FORMAT_CHARS) {
+                if (textFormatChars + text.length() > MAX_TEXT_FORMAT_CHARS) {
+                    textFormats.clear();
+                    textFormatChars = 0;
+                }
+                textFormats.put(text, compiled);
+                textFormatChars += text.length();
+            }
+        }
+        out.accept(new PrintRecord(null, text, compiled, Arrays.copyOf(values, valueCount), null, batch));
+    }
+
+    /**
+     * The record from a call site starting at <code>printfData[start]</code>, null if it is cut by <code>limit</code> or
+     * its call site is unknown
+     */
+    PrintRecord record(int[] printfData, int start, int limit, long batch) {
+        PrintfCallSite site = site(printfData[start]);
+        if (site == null)
+            return null;
+        CompiledFormat compiled = site.compiledFormat();
+        int header = site.headerSize();
+        int from = start + 1 + header;
+        if (from + compiled.valueCount > limit)
+            return null;
+        return new PrintRecord(site, site.getFormat(), compiled,
+                Arrays.copyOfRange(printfData, from, from + compiled.valueCount),
+                header != 0 ? Arrays.copyOfRange(printfData, start + 1, from) : null, batch);
+    }
+
+    /**
+     * Gives the index of the first value of each record from a call site among the first <code>printedSize</code> values
+     * of <code>printfData</code>, skipping text printed without a format table and a record cut by the end
+     */
+    void findRecords(int[] printfData, int printedSize, IntConsumer out) {
+        int layout = table.getLayout();
+        for (int i = 0; i < printedSize; ) {
+            int end = unitEnd(printfData, i, printedSize);
+            if (end == -1)
+                return;
+            if (PreprocessedSource.isSiteRecord(printfData[i], layout))
+                out.accept(i);
+            i = end;
+        }
+    }
+
+    /**
+     * Index after the unit starting at <code>printfData[i]</code>, -1 if it is cut by <code>limit</code> or is a record
+     * of an unknown call site.<br/>
+     * A unit is a record from a call site, a specifier with its values, "%%", a character, a run of packed characters or
+     * the length of a record.
+     */
+    int unitEnd(int[] printfData, int i, int limit) {
+        int end;
+        int layout = table.getLayout();
+        if (PreprocessedSource.isSiteRecord(printfData[i], layout)) {
+            PrintfCallSite site = site(printfData[i]);
+            if (site == null)
+                return -1;
+            end = i + 1 + site.headerSize() + site.compiledFormat().valueCount;
+        }
+        else if (PreprocessedSource.isPackedText(printfData[i], layout)) {
+            end = i + 1 + ((printfData[i] & PreprocessedSource.PACKED_COUNT_MASK) + 3) / 4;
+        }
+        else if (PreprocessedSource.isLength(printfData[i], layout) || (char)printfData[i] != '%') {
+            end = i + 1;
+        }
+        else if (i + 1 < limit && (char)printfData[i + 1] == '%') {
+            end = i + 2;
+        }
+        else {
+            int conversion = specifierEnd(printfData, i, limit);
+            if (conversion == -1)
+                return -1;
+            end = conversion + 1 + plan(printfData, i, conversion).vecSize;
+        }
+        return end <= limit ? end : -1;
+    }
+
+    /**
+     * Cuts the first <code>printedSize</code> values into ranges of about <code>grain</code> values starting on unit
+     * boundaries.<br/>
+     * Records starting with their length are skipped over whole, everything else is walked unit by unit.
+     *
+     * @return the bounds of the ranges, from 0 to <code>printedSize</code>
+     */
+    int[] split(int[] printfData, int printedSize, int grain) {
+        int[] bounds = new int[16];
+        int count = 1;
+        int i = 0, rangeStart = 0;
+        while (i < printedSize) {
+            if (i - rangeStart >= grain) {
+                if (count == bounds.length)
+                    bounds = Arrays.copyOf(bounds, count * 2);
+                bounds[count++] = rangeStart = i;
+            }
+            int next;
+            if (PreprocessedSource.isLength(printfData[i], table.getLayout()))
+                next = i + Math.max(1, printfData[i] & PreprocessedSource.LENGTH_MASK);
+            else if ((next = unitEnd(printfData, i, printedSize)) == -1)
+                break;
+            i = next;
+        }
+        if (count == bounds.length)
+            bounds = Arrays.copyOf(bounds, count + 1);
+        bounds[count++] = printedSize;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Decodes the first <code>printedSize</code> values of <code>printfData</code> on the threads of <code>pool</code>:
+     * the values are split into ranges starting on unit boundaries, decoded in parallel and concatenated in order
+     */
+    static String decodeParallel(int[] printfData, int printedSize, PrintfSiteTable table, ForkJoinPool pool) {
+        return decodeParallel(printfData, printedSize, table, pool, null);
+    }
+
+    /**
+     * Like {@link #decodeParallel(int[], int, PrintfSiteTable, ForkJoinPool)}, adding the records per call site to the
+     * given metrics unless null
+     */
+    static String decodeParallel(int[] printfData, int printedSize, PrintfSiteTable table, ForkJoinPool pool, PrintMetrics metrics) {
+        int grain = Math.max(MIN_PARALLEL_GRAIN, printedSize / (pool.getParallelism() * 8));
+        int[] bounds = new PrintBufferDecoder(table).split(printfData, printedSize, grain);
+        StringBuilder[] parts = new StringBuilder[bounds.length - 1];
+        pool.invoke(new DecodeRanges(printfData, bounds, 0, parts.length, table, parts, metrics));
+
+        int length = 0;
+        for (StringBuilder part : parts)
+            length += part.length();
+        StringBuilder result = new StringBuilder(length);
+        for (StringBuilder part : parts)
+            result.append(part);
+        return result.toString();
+    }
+
+    /**
+     * Decodes the ranges <code>from</code> to <code>to</code>, each with a decoder of its own
+     */
+    // tasks only live in a pool, they are never serialized
+    @SuppressWarnings("serial")
+    private static final class DecodeRanges extends RecursiveAction {
+        private final int[] printfData;
+        private final int[] bounds;
+        private final int from, to;
+        private final PrintfSiteTable table;
+        private final StringBuilder[] parts;
+        private final PrintMetrics metrics;
+
+        DecodeRanges(int[] printfData, int[] bounds, int from, int to, PrintfSiteTable table, StringBuilder[] parts, PrintMetrics metrics) {
+            this.printfData = printfData;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.table = table;
+            this.parts = parts;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeRanges(printfData, bounds, from, middle, table, parts, metrics),
+                        new DecodeRanges(printfData, bounds, middle, to, table, parts, metrics));
+                return;
+            }
+            StringBuilder part = new StringBuilder(bounds[from + 1] - bounds[from]);
+            PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+            if (metrics != null)
+                decoder.countSiteRecords();
+            decoder.decode(printfData, bounds[from], bounds[from + 1], part);
+            if (metrics != null)
+                decoder.flushSiteRecords(metrics);
+            parts[from] = part;
+        }
+    }
+
+    /**
+     * Starts counting the records decoded per call site, to be added to the given metrics by
+     * {@link #flushSiteRecords(PrintMetrics)}
+     */
+    void countSiteRecords() {
+        if (siteRecords == null)
+            siteRecords = new int[Math.max(16, table.size())];
+    }
+
+    /**
+     * Counts a record of a call site, growing the counts if needed
+     */
+    private static int[] countSiteRecord(int[] siteRecords, int id) {
+        if (id >= siteRecords.length)
+            siteRecords = Arrays.copyOf(siteRecords, Math.max(id + 1, siteRecords.length * 2));
+        siteRecords[id]++;
+        return siteRecords;
+    }
+
+    /**
+     * Adds the records counted since the last call to the metrics
+     */
+    void flushSiteRecords(PrintMetrics metrics) {
+        if (siteRecords != null) {
+            metrics.addSiteRecords(siteRecords);
+            Arrays.fill(siteRecords, 0);
+        }
+    }
+
+    /**
+     * The call site of a record, null if the table does not know it: a value overwritten when the buffer overflowed, or
+     * a shader linked against another table. The rest of the buffer cannot be split into records then.
+     */
+    PrintfCallSite site(int tagged) {
+        return table.get(tagged & PreprocessedSource.SITE_ID_MASK);
+    }
+
+    /**
+     * Tags of the layouts declared in the table, see {@link PrintfSiteTable#addLayout(PrintfOptions)}
+     */
+    int layout() {
+        return table.getLayout();
+    }
+
+    /**
+     * Index of the conversion character of the specifier starting at <code>data[start]</code>, -1 if it is not before
+     * <code>limit</code>
+     */
+    static int specifierEnd(int[] data, int start, int limit) {
+        int i = start;
+        while (i < limit && !PrintfChars.isConversion((char)data[i]))
+            i += (char)data[i] == '^' ? 2 : 1;
+        return i < limit ? i : -1;
+    }
+
+    /**
+     * Returns the plan of the specifier from <code>data[start]</code> to its conversion character at
+     * <code>data[end]</code>, compiling it the first time
+     */
+    FormatPlan plan(int[] data, int start, int end) {
+        long key = 0;
+        if (end - start < 9) {
+            for (int i = start; i <= end; ++i) {
+                char c = (char)data[i];
+                if (c >= 128) {
+                    key = 0;
+                    break;
+                }
+                key = key << 7 | c;
+            }
+        }
+        if (key == 0)
+            return FormatPlan.compile(new IntChars(data), start, end);
+
+        int mask = planKeys.length - 1;
+        int slot = (int) (key ^ key >>> 29) & mask;
+        while (planKeys[slot] != 0) {
+            if (planKeys[slot] == key)
+                return plans[slot];
+            slot = (slot + 1) & mask;
+        }
+        FormatPlan plan = FormatPlan.compile(new IntChars(data), start, end);
+        planKeys[slot] = key;
+        plans[slot] = plan;
+        if (++planCount * 2 > planKeys.length)
+            growPlans();
+        return plan;
+    }
+
+    private void growPlans() {
+        long[] oldKeys = planKeys;
+        FormatPlan[] oldPlans = plans;
+        planKeys = new long[oldKeys.length * 2];
+        plans = new FormatPlan[oldKeys.length * 2];
+        int mask = planKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] == 0)
+                continue;
+            int slot = (int) (oldKeys[i] ^ oldKeys[i] >>> 29) & mask;
+            while (planKeys[slot] != 0)
+                slot = (slot + 1) & mask;
+            planKeys[slot] = oldKeys[i];
+            plans[slot] = oldPlans[i];
+        }
+    }
+
+    /**
+     * Whether String.format uses the same characters as the allocation-free writers in the default locale
+     */
+    static boolean isPlainLocale() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+    }
+
+    /**
+     * Copies printed values, the first one after the counter being 0, into an array
+     */
+    interface ValueReader {
+        void read(int from, int[] values, int offset, int count);
+    }
+
+    /**
+     * Receives the decoded text one chunk at a time, and removes from it what it consumed
+     */
+    interface TextSink<E extends Exception> {
+        void write(StringBuilder text, boolean last) throws E;
+    }
+
+    /**
+     * View of buffer values as characters, to compile specifiers in place
+     */
+    private static final class IntChars implements CharSequence {
+        private final int[] data;
+
+        IntChars(int[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int length() {
+            return data.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) data[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package shaderprintf;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Print buffers reused across frames and sized after what the shaders print.<br/>
+ * The pool watches the first value of each buffer it reads back, the number of values the shaders requested: when a
+ * frame overflows, the next buffers are at least twice as large, up to the maximum size; once the frames have used at
+ * most a quarter of the buffer during the quiet period, the next buffers are halved, down to the minimum size.
+ * Buffers are only created when none of the current size is free, and deleted when the size changes.<br/>
+ * Each frame goes {@link #acquire()}, {@link #bind(int, int)} for each program using printf, draw/dispatch calls,
+ * {@link #release(int)}, which waits for the GPU and returns the text.<br/>
+ * Not thread-safe: use it from the thread owning the context.
+ */
+public class PrintBufferPool implements AutoCloseable {
+
+    /** Default quiet period, in frames */
+    public static final int DEFAULT_QUIET_PERIOD = 300;
+
+    private final PrintBufferBackend backend;
+    private final PrintBufferDecoder decoder;
+    private final PrintMetrics metrics;
+    private final int minSize, maxSize, quietPeriod;
+    // mappings of the buffers created and not deleted, free or acquired
+    private final Map<Integer, IntBuffer> buffers = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+    // size in values of the buffers handed out from now on
+    private int size;
+    // frames in a row that used at most a quarter of the size, and the most they used
+    private int quietFrames;
+    private long quietPeak;
+    private long highWaterMark;
+    private int createdCount;
+
+    /**
+     * Creates a pool of OpenGL buffers of <code>minSize</code> to <code>maxSize</code> values, decoded with the table
+     * of {@link ShaderPrintf} and measured in its metrics
+     */
+    public PrintBufferPool(int minSize, int maxSize) {
+        this(new GLPrintBufferBackend(), ShaderPrintf.getSiteTable(), minSize, maxSize, DEFAULT_QUIET_PERIOD, ShaderPrintf.getMetrics());
+    }
+
+    /**
+     * Creates a pool of buffers of <code>minSize</code> to <code>maxSize</code> values through the given backend,
+     * shrinking them after <code>quietPeriod</code> frames using at most a quarter of them, and recording the buffers
+     * read back in <code>metrics</code>
+     */
+    public PrintBufferPool(PrintBufferBackend backend, PrintfSiteTable table, int minSize, int maxSize, int quietPeriod, PrintMetrics metrics) {
+        if (minSize < 2)
+            throw new IllegalArgumentException("A print buffer needs room for its counter and a value: " + minSize);
+        if (maxSize < minSize || maxSize > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("Invalid maximum size " + maxSize + " for minimum size " + minSize);
+        if (quietPeriod < 1)
+            throw new IllegalArgumentException("Quiet period must be positive: " + quietPeriod);
+        this.backend = backend;
+        this.metrics = metrics;
+        this.decoder = new PrintBufferDecoder(table);
+        decoder.countSiteRecords();
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.quietPeriod = quietPeriod;
+        this.size = minSize;
+    }
+
+    /**
+     * Returns a buffer of the current size, ready to be printed to; a free one if any
+     */
+    public int acquire() {
+        Integer buffer = free.poll();
+        if (buffer == null) {
+            buffer = backend.createBuffer(size * 4);
+            buffers.put(buffer, backend.map(buffer).asIntBuffer());
+            createdCount++;
+        }
+        backend.reset(buffer);
+        return buffer;
+    }
+
+    /**
+     * Binds an acquired buffer to a program; call anywhere between glUseProgram and the draw/dispatch call
+     */
+    public void bind(int program, int buffer) {
+        values(buffer);
+        backend.bind(program, buffer);
+    }
+
+    /**
+     * Waits for the GPU to finish with an acquired buffer, returns its text and gives the buffer back to the pool
+     */
+    public String release(int buffer) {
+        StringBuilder text = new StringBuilder();
+        try {
+            release(buffer, text);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Waits for the GPU to finish with an acquired buffer, appends its text to <code>out</code> decoding it in chunks,
+     * and gives the buffer back to the pool
+     */
+    public void release(int buffer, Appendable out) throws IOException {
+        IntBuffer values = values(buffer).duplicate();
+        long fence = backend.fence();
+        try {
+            backend.waitFence(fence);
+        } finally {
+            backend.deleteFence(fence);
+        }
+
+        // the counter keeps counting what did not fit
+        long requestedSize = Math.max(0, Integer.toUnsignedLong(values.get(0)) - 1);
+        int printedSize = (int) Math.min(requestedSize, values.capacity() - 1);
+        metrics.recordFrame(requestedSize, printedSize);
+        values.position(1);
+        values.limit(1 + printedSize);
+        IntBuffer printed = values.slice();
+        try {
+            long start = System.nanoTime();
+            decoder.decode((from, target, offset, count) -> {
+                printed.position(from);
+                printed.get(target, offset, count);
+            }, printedSize, ShaderPrintf.DEFAULT_CHUNK_SIZE, (text, last) -> {
+                out.append(text);
+                text.setLength(0);
+            });
+            decoder.flushSiteRecords(metrics);
+            metrics.recordDecode(System.nanoTime() - start);
+        } finally {
+            // the size is only updated once the buffer is done with, so that it goes back with the others
+            resize(requestedSize);
+            if (values.capacity() == size)
+                free.add(buffer);
+            else
+                delete(buffer);
+        }
+    }
+
+    /**
+     * Grows the size if a frame overflowed, shrinks it after a quiet period
+     */
+    private void resize(long requestedSize) {
+        // the values needed, counter included
+        long needed = requestedSize + 1;
+        highWaterMark = Math.max(highWaterMark, requestedSize);
+        int newSize = size;
+        if (needed > size) {
+            while (newSize < needed && newSize < maxSize)
+                newSize = (int) Math.min(maxSize, 2L * newSize);
+        } else if (needed <= size / 4) {
+            quietPeak = Math.max(quietPeak, needed);
+            if (++quietFrames >= quietPeriod) {
+                // keep the peak of the quiet period within half of the buffer
+                while (newSize / 2 >= minSize && newSize / 2 >= 2 * quietPeak)
+                    newSize /= 2;
+            }
+        } else {
+            quietFrames = 0;
+            quietPeak = 0;
+        }
+        if (newSize != size) {
+            size = newSize;
+            quietFrames = 0;
+            quietPeak = 0;
+            while (!free.isEmpty())
+                delete(free.poll());
+        }
+    }
+
+    /**
+     * Size in values, counter included, of the buffers handed out from now on
+     */
+    public int getBufferSize() {
+        return size;
+    }
+
+    /**
+     * Most values requested by the shaders in a buffer released so far, counter excluded
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Number of buffers created so far
+     */
+    public int getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Number of buffers created and not deleted, free or acquired
+     */
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Number of free buffers
+     */
+    public int getFreeCount() {
+        return free.size();
+    }
+
+    /**
+     * Deletes every buffer, acquired ones included
+     */
+    @Override
+    public void close() {
+        for (int buffer : buffers.keySet())
+            backend.deleteBuffer(buffer);
+        buffers.clear();
+        free.clear();
+    }
+
+    private void delete(int buffer) {
+        buffers.remove(buffer);
+        backend.deleteBuffer(buffer);
+    }
+
+    private IntBuffer values(int buffer) {
+        IntBuffer values = buffers.get(buffer);
+        if (values == null || free.contains(buffer))
+            throw new IllegalArgumentException("Buffer " + buffer + " was not acquired from this pool");
+        return values;
+    }
+}
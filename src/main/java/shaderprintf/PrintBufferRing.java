@@ -0,0 +1,242 @@
+package shaderprintf;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A ring of persistently mapped print buffers, read back without waiting for the GPU.<br/>
+ * Frame k prints to buffer k mod N and is decoded once the fence inserted at its end has signalled, so the CPU only
+ * waits when it gets N frames ahead of the GPU.<br/>
+ * Each frame goes {@link #beginFrame()}, {@link #bind(int)} for each program using printf, draw/dispatch calls,
+ * {@link #endFrame()}; the text of finished frames comes out of {@link #poll()} in order.<br/>
+ * Not thread-safe: use it from the thread owning the context.
+ */
+public class PrintBufferRing implements AutoCloseable {
+
+    private final PrintBufferBackend backend;
+    private final PrintBufferDecoder decoder;
+    private final PrintMetrics metrics;
+    private final Slot[] slots;
+    // values of frames copied out before they were polled, because their buffer was needed again
+    private final Deque<int[]> copied = new ArrayDeque<>();
+    // frames ended so far; the one being recorded has this index
+    private long frame;
+    // oldest ended frame not decoded yet
+    private long nextToDecode;
+    private boolean recording;
+
+    /**
+     * Creates <code>count</code> OpenGL buffers of <code>size</code> values each, decoded with the table of
+     * {@link ShaderPrintf} and measured in its metrics
+     */
+    public PrintBufferRing(int count, int size) {
+        this(new GLPrintBufferBackend(), count, size, ShaderPrintf.getSiteTable(), ShaderPrintf.getMetrics());
+    }
+
+    /**
+     * Creates <code>count</code> buffers of <code>size</code> values each through the given backend, recording the
+     * frames read back in <code>metrics</code>
+     */
+    public PrintBufferRing(PrintBufferBackend backend, int count, int size, PrintfSiteTable table, PrintMetrics metrics) {
+        if (count < 1)
+            throw new IllegalArgumentException("A ring needs at least one buffer: " + count);
+        if (size < 2)
+            throw new IllegalArgumentException("A print buffer needs room for its counter and a value: " + size);
+        if (size > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("Invalid print buffer size " + size);
+        this.backend = backend;
+        this.metrics = metrics;
+        this.decoder = new PrintBufferDecoder(table);
+        decoder.countSiteRecords();
+        this.slots = new Slot[count];
+        for (int i = 0; i < count; ++i) {
+            int buffer = backend.createBuffer(size * 4);
+            slots[i] = new Slot(buffer, backend.map(buffer).asIntBuffer());
+        }
+    }
+
+    /**
+     * Starts recording a frame in the next buffer of the ring.<br/>
+     * If that buffer still holds a frame the GPU has not finished, waits for it and keeps a copy of its values for
+     * {@link #poll()}.
+     */
+    public void beginFrame() {
+        if (recording)
+            throw new IllegalStateException("The previous frame was not ended");
+        if (frame - nextToDecode == slots.length) {
+            Slot oldest = slot(nextToDecode);
+            backend.waitFence(oldest.fence);
+            IntBuffer values = release(oldest);
+            long start = System.nanoTime();
+            int[] copy = new int[values.remaining()];
+            values.get(copy);
+            metrics.recordReadback(4L * copy.length, System.nanoTime() - start);
+            copied.add(copy);
+        }
+        backend.reset(slot(frame).buffer);
+        recording = true;
+    }
+
+    /**
+     * Binds the buffer of the frame being recorded to a program; call anywhere between glUseProgram and the
+     * draw/dispatch call
+     */
+    public void bind(int program) {
+        if (!recording)
+            throw new IllegalStateException("No frame is being recorded");
+        backend.bind(program, slot(frame).buffer);
+    }
+
+    /**
+     * Ends the frame being recorded, after its last draw/dispatch call
+     */
+    public void endFrame() {
+        if (!recording)
+            throw new IllegalStateException("No frame is being recorded");
+        slot(frame).fence = backend.fence();
+        frame++;
+        recording = false;
+    }
+
+    /**
+     * Returns the text of the oldest ended frame that was not returned yet if the GPU has finished it, null otherwise
+     */
+    public String poll() {
+        StringBuilder text = new StringBuilder();
+        try {
+            return poll(text) ? text.toString() : null;
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends the text of the oldest ended frame that was not returned yet to <code>out</code> if the GPU has finished
+     * it, decoding it in chunks
+     *
+     * @return false if there was no such frame
+     */
+    public boolean poll(Appendable out) throws IOException {
+        IntBuffer values = next();
+        if (values == null)
+            return false;
+        long start = System.nanoTime();
+        decoder.decode((from, target, offset, count) -> {
+            values.position(from);
+            values.get(target, offset, count);
+        }, values.limit(), ShaderPrintf.DEFAULT_CHUNK_SIZE, (text, last) -> {
+            out.append(text);
+            text.setLength(0);
+        });
+        decoder.flushSiteRecords(metrics);
+        metrics.recordDecode(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Hands a copy of the values of the oldest ended frame that was not returned yet to <code>decoder</code> if the GPU
+     * has finished it; the render thread only pays for the copy
+     *
+     * @return false if there was no such frame
+     */
+    public boolean poll(AsyncPrintDecoder decoder) {
+        IntBuffer values = next();
+        if (values == null)
+            return false;
+        decoder.submit(values);
+        return true;
+    }
+
+    /**
+     * Appends the values of the oldest ended frame that was not returned yet to a capture file if the GPU has finished
+     * it; the render thread only pays for the copy
+     *
+     * @return false if there was no such frame
+     */
+    public boolean poll(PrintCaptureWriter capture) throws IOException {
+        IntBuffer values = next();
+        if (values == null)
+            return false;
+        capture.writeFrame(values);
+        return true;
+    }
+
+    /**
+     * Returns the text of the oldest ended frame that was not returned yet, waiting for the GPU to finish it; null if
+     * every ended frame was returned
+     */
+    public String waitNext() {
+        if (copied.isEmpty() && nextToDecode < frame)
+            backend.waitFence(slot(nextToDecode).fence);
+        return poll();
+    }
+
+    /**
+     * Number of frames ended but not returned yet
+     */
+    public int getPendingCount() {
+        return (int) (frame - nextToDecode) + copied.size();
+    }
+
+    /**
+     * Deletes the buffers and fences; frames not returned yet are lost
+     */
+    @Override
+    public void close() {
+        for (Slot slot : slots) {
+            if (slot.fence != 0)
+                backend.deleteFence(slot.fence);
+            backend.deleteBuffer(slot.buffer);
+        }
+        copied.clear();
+        nextToDecode = frame;
+    }
+
+    private Slot slot(long frame) {
+        return slots[(int) (frame % slots.length)];
+    }
+
+    /**
+     * The printed values of the oldest ended frame that was not returned yet if the GPU has finished it, null otherwise
+     */
+    private IntBuffer next() {
+        if (!copied.isEmpty())
+            return IntBuffer.wrap(copied.poll());
+        if (nextToDecode == frame || !backend.isSignaled(slot(nextToDecode).fence))
+            return null;
+        return release(slot(nextToDecode));
+    }
+
+    /**
+     * Marks the frame of a slot as returned and gives a view of its printed values, valid until the slot is reused
+     */
+    private IntBuffer release(Slot slot) {
+        backend.deleteFence(slot.fence);
+        slot.fence = 0;
+        nextToDecode++;
+
+        IntBuffer values = slot.values.duplicate();
+        // the counter keeps counting what did not fit
+        long requestedSize = Math.max(0, Integer.toUnsignedLong(values.get(0)) - 1);
+        long printedSize = Math.min(requestedSize, values.capacity() - 1);
+        metrics.recordFrame(requestedSize, printedSize);
+        values.position(1);
+        values.limit(1 + (int) printedSize);
+        return values.slice();
+    }
+
+    private static final class Slot {
+        final int buffer;
+        final IntBuffer values;
+        // fence inserted at the end of the frame printed to this buffer, 0 once decoded
+        long fence;
+
+        Slot(int buffer, IntBuffer values) {
+            this.buffer = buffer;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package shaderprintf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static shaderprintf.PrintCaptureWriter.*;
+
+/**
+ * Reads a capture file written by {@link PrintCaptureWriter}.<br/>
+ * Opening the file rebuilds its table of call sites and finds its frames; the values of a frame are memory-mapped when
+ * it is decoded. A segment cut by the end of the file, as left by a crash, ends it.
+ * Instances are not thread-safe.
+ */
+public final class PrintCaptureReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final PrintfSiteTable table = new PrintfSiteTable();
+    private final PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+    // offset in the file of the values of each frame, and their number
+    private long[] frameOffsets = new long[16];
+    private int[] frameSizes = new int[16];
+    private int frameCount;
+
+    /**
+     * @throws IOException if the file cannot be read or is not a capture file
+     */
+    public PrintCaptureReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            ByteBuffer header = read(0, HEADER_SIZE, fileSize);
+            if (header == null || header.getInt() != MAGIC)
+                throw new IOException("Not a capture file: " + file);
+            int version = header.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported capture format version " + version);
+
+            long position = HEADER_SIZE;
+            ByteBuffer segment;
+            while ((segment = read(position, SEGMENT_HEADER_SIZE, fileSize)) != null) {
+                int type = segment.getInt();
+                int contentSize = segment.getInt();
+                long content = position + SEGMENT_HEADER_SIZE;
+                if (type == 0 || contentSize < 0 || content + contentSize > fileSize)
+                    break;
+                if (type == SITE_SEGMENT)
+                    readSite(read(content, contentSize, fileSize));
+                else if (type == FRAME_SEGMENT)
+                    addFrame(content + 4, read(content, 4, fileSize).getInt());
+                else if (type == LAYOUT_SEGMENT)
+                    table.addLayout(read(content, 4, fileSize).getInt());
+                else
+                    throw new IOException("Unknown segment type " + type + " at offset " + position);
+                position = content + contentSize;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The call sites of the captured shaders, with the ids they had when captured
+     */
+    public PrintfSiteTable getSiteTable() {
+        return table;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Number of values captured in a frame
+     */
+    public int getFrameSize(int frame) {
+        checkFrame(frame);
+        return frameSizes[frame];
+    }
+
+    /**
+     * The values of a frame, mapped from the file
+     */
+    public IntBuffer getFrame(int frame) throws IOException {
+        checkFrame(frame);
+        return channel.map(FileChannel.MapMode.READ_ONLY, frameOffsets[frame], 4L * frameSizes[frame])
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Appends the text of a frame to <code>out</code>, decoding it in chunks
+     */
+    public void decodeFrame(int frame, Appendable out) throws IOException {
+        IntBuffer values = getFrame(frame);
+        decoder.decode((from, target, offset, count) -> {
+            values.position(from);
+            values.get(target, offset, count);
+        }, values.limit(), ShaderPrintf.DEFAULT_CHUNK_SIZE, (text, last) -> {
+            out.append(text);
+            text.setLength(0);
+        });
+    }
+
+    /**
+     * Appends the text of a frame to <code>out</code>, formatting each distinct record once, see
+     * {@link PrintDeduplication}
+     */
+    public void decodeFrame(int frame, PrintDeduplication deduplication, Appendable out) throws IOException {
+        IntBuffer values = getFrame(frame);
+        int[] printfData = new int[values.remaining()];
+        values.get(printfData);
+        StringBuilder text = new StringBuilder();
+        decoder.decode(printfData, printfData.length, deduplication, text);
+        out.append(text);
+    }
+
+    /**
+     * A view of the records of a frame, formatted only when accessed, their batch being the frame number; see
+     * {@link PrintLog}
+     */
+    public PrintLog getLog(int frame) throws IOException {
+        IntBuffer values = getFrame(frame);
+        return new PrintLog((from, target, offset, count) -> {
+            values.position(from);
+            values.get(target, offset, count);
+        }, values.limit(), table, PrintLog.DEFAULT_PAGE_SIZE, PrintLog.DEFAULT_MAX_PAGES, frame);
+    }
+
+    /**
+     * Decodes a frame into records, their batch being the frame number
+     */
+    public void decodeFrame(int frame, Consumer<PrintRecord> out) throws IOException {
+        IntBuffer values = getFrame(frame);
+        int[] printfData = new int[values.remaining()];
+        values.get(printfData);
+        decoder.decodeRecords(printfData, printfData.length, frame, out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readSite(ByteBuffer content) throws IOException {
+        int id = content.getInt();
+        int line = content.getInt();
+        int stage = content.getInt();
+        int recordLimit = content.getInt();
+        boolean stat = content.get() != 0;
+        String format = getString(content, content.getInt());
+        int sourceNameLength = content.getInt();
+        String sourceName = sourceNameLength >= 0 ? getString(content, sourceNameLength) : null;
+        PrintfCallSite site = new PrintfCallSite(line, format).withStage(stage >= 0 ? ShaderStage.values()[stage] : null).withSourceName(sourceName)
+                .withRecordLimit(recordLimit).withStat(stat);
+        if (table.register(site) != id)
+            throw new IOException("Call site " + id + " out of order");
+    }
+
+    private static String getString(ByteBuffer in, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i)
+            chars[i] = in.getChar();
+        return new String(chars);
+    }
+
+    private void addFrame(long offset, int size) {
+        if (frameCount == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+            frameSizes = Arrays.copyOf(frameSizes, frameCount * 2);
+        }
+        frameOffsets[frameCount] = offset;
+        frameSizes[frameCount] = size;
+        ++frameCount;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frameCount)
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+    }
+
+    /**
+     * Reads some bytes of the file, null if the file ends before
+     */
+    private ByteBuffer read(long position, int size, long fileSize) throws IOException {
+        if (position + size > fileSize)
+            return null;
+        ByteBuffer bytes = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining())
+            if (channel.read(bytes, position + bytes.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        bytes.flip();
+        return bytes;
+    }
+}
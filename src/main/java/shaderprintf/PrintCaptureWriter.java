@@ -0,0 +1,211 @@
+package shaderprintf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only capture file of raw print buffers, decoded later by {@link PrintCaptureReader} or
+ * {@link CaptureDecoder}, possibly on another machine.<br/>
+ * The file holds one segment per frame with the printed values as they are, preceded by one segment per call site
+ * registered since the previous frame and by the layouts declared in the table when they changed (see
+ * {@link PrintfSiteTable#addLayout(PrintfOptions)}), so that the file decodes without the process that wrote it. Values are
+ * little-endian, as print buffers are on the GPUs this runs on. The file is written through a memory mapping:
+ * capturing a frame costs one copy of its values.<br/>
+ * A segment becomes visible to readers once complete, so a file cut by a crash still reads up to its last frame.
+ * Instances are not thread-safe.
+ */
+public final class PrintCaptureWriter implements AutoCloseable {
+
+    /** First int of a capture file: "SPFC" */
+    static final int MAGIC = 0x53504643;
+    static final int FORMAT_VERSION = 2;
+    /** Size of the file header: magic and format version */
+    static final int HEADER_SIZE = 8;
+    /** Size of a segment header: type and size of the content in bytes */
+    static final int SEGMENT_HEADER_SIZE = 8;
+    static final int SITE_SEGMENT = 1;
+    static final int FRAME_SEGMENT = 2;
+    static final int LAYOUT_SEGMENT = 3;
+
+    // the file grows by windows of at least this size
+    private static final int WINDOW_SIZE = 64*1024*1024;
+
+    private final FileChannel channel;
+    private final PrintfSiteTable table;
+    private MappedByteBuffer window;
+    private long windowStart;
+    // size of the complete segments, in bytes
+    private long size;
+    // start of the frame segment being written, -1 if none
+    private long frameStart = -1;
+    private int sitesWritten;
+    private int layoutWritten;
+    private int frameCount;
+
+    /**
+     * Creates or replaces a capture file for print buffers decoded with the given table
+     */
+    public PrintCaptureWriter(Path file, PrintfSiteTable table) throws IOException {
+        this.channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        this.table = table;
+        ByteBuffer header = reserve(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION);
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * Appends a frame holding the values from the position to the limit of <code>values</code>, the print buffer
+     * without its first value
+     */
+    public void writeFrame(IntBuffer values) throws IOException {
+        int position = values.position();
+        beginFrame(values.remaining()).asIntBuffer().put(values);
+        values.position(position);
+        endFrame();
+    }
+
+    /**
+     * Appends a frame holding <code>printedSize</code> values of <code>printfData</code> from <code>from</code>
+     */
+    public void writeFrame(int[] printfData, int from, int printedSize) throws IOException {
+        beginFrame(printedSize).asIntBuffer().put(printfData, from, printedSize);
+        endFrame();
+    }
+
+    /**
+     * Starts a frame of the given number of values and returns the mapped bytes to fill with them, little-endian;
+     * {@link #endFrame()} completes it
+     */
+    ByteBuffer beginFrame(int printedSize) throws IOException {
+        if (frameStart != -1)
+            throw new IllegalStateException("Frame already started");
+        if (printedSize < 0 || printedSize > (Integer.MAX_VALUE - 4) / 4)
+            throw new IllegalArgumentException("Invalid frame size " + printedSize);
+        writeSites();
+
+        frameStart = size;
+        ByteBuffer segment = reserve(SEGMENT_HEADER_SIZE + 4 + 4L * printedSize);
+        segment.position(SEGMENT_HEADER_SIZE);
+        segment.putInt(printedSize);
+        return segment.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Completes the frame started by {@link #beginFrame(int)}
+     */
+    void endFrame() {
+        if (frameStart == -1)
+            throw new IllegalStateException("No frame started");
+        int contentSize = window.getInt((int) (frameStart - windowStart) + SEGMENT_HEADER_SIZE) * 4 + 4;
+        commit(frameStart, FRAME_SEGMENT, contentSize);
+        frameStart = -1;
+        ++frameCount;
+    }
+
+    /**
+     * Number of frames written
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Size of the complete segments of the file, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Writes the complete segments to the storage device
+     */
+    public void flush() {
+        if (window != null)
+            window.force();
+    }
+
+    /**
+     * Writes the call sites registered and the layouts declared since the last frame
+     */
+    private void writeSites() throws IOException {
+        int layout = table.getLayout();
+        if (layout != layoutWritten) {
+            long start = size;
+            reserve(SEGMENT_HEADER_SIZE + 4).putInt(SEGMENT_HEADER_SIZE, layout);
+            commit(start, LAYOUT_SEGMENT, 4);
+            layoutWritten = layout;
+        }
+        for (int id = sitesWritten, count = table.size(); id < count; ++id) {
+            PrintfCallSite site = table.get(id);
+            String sourceName = site.getSourceName() != null ? site.getSourceName() : "";
+            int contentSize = 4 * 6 + 1 + 2 * (site.getFormat().length() + sourceName.length());
+            long start = size;
+            ByteBuffer segment = reserve(SEGMENT_HEADER_SIZE + contentSize);
+            segment.position(SEGMENT_HEADER_SIZE);
+            segment.putInt(id).putInt(site.getLine()).putInt(site.getStage() != null ? site.getStage().ordinal() : -1)
+                    .putInt(site.getRecordLimit()).put((byte) (site.isStat() ? 1 : 0));
+            putString(segment, site.getFormat());
+            segment.putInt(site.getSourceName() != null ? sourceName.length() : -1);
+            for (int i = 0; i < sourceName.length(); ++i)
+                segment.putChar(sourceName.charAt(i));
+            commit(start, SITE_SEGMENT, contentSize);
+            sitesWritten = id + 1;
+        }
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        out.putInt(s.length());
+        for (int i = 0; i < s.length(); ++i)
+            out.putChar(s.charAt(i));
+    }
+
+    /**
+     * Maps the given number of bytes at the end of the file, moving the window if they do not fit in it
+     */
+    private ByteBuffer reserve(long bytes) throws IOException {
+        long start = frameStart != -1 ? frameStart : size;
+        if (window == null || start + bytes > windowStart + window.capacity()) {
+            if (bytes > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Segment of " + bytes + " bytes");
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_SIZE, bytes));
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer reserved = window.duplicate();
+        reserved.position((int) (start - windowStart));
+        reserved.limit(reserved.position() + (int) bytes);
+        return reserved.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Makes a segment visible: its type is written last, on a zero that ends the file until then
+     */
+    private void commit(long start, int type, int contentSize) {
+        int offset = (int) (start - windowStart);
+        window.putInt(offset + 4, contentSize);
+        window.putInt(offset, type);
+        size = start + SEGMENT_HEADER_SIZE + contentSize;
+    }
+
+    /**
+     * Drops a frame started but not ended, and shrinks the file to its complete segments
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            frameStart = -1;
+            flush();
+            window = null;
+            channel.truncate(size);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package shaderprintf;
+
+/**
+ * How repeated records collapse when a print buffer is decoded, see
+ * {@link ShaderPrintf#getPrintBufferString(int, PrintDeduplication)}.<br/>
+ * Records are compared on their values in the buffer, before formatting: a record from a call site by its id and its
+ * arguments, its invocation key left out as from the text, and text printed without a format table by its values up to
+ * each newline. Only one record of each kind is formatted; when it repeats, " (xN)" goes before its ending newline.
+ */
+public enum PrintDeduplication {
+
+    /** Runs of identical records collapse into their first record */
+    CONSECUTIVE,
+
+    /** Identical records collapse wherever they are, in the order their first record was printed */
+    GLOBAL
+}
@@ -0,0 +1,313 @@
+package shaderprintf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Random-access view of the records of a print buffer, read in pages and formatted only when accessed, to look at a
+ * few records of a huge buffer without decoding all of it.<br/>
+ * Records are numbered in buffer order from 0. A record is a record from a call site, a record starting with its
+ * length (see {@link PrintfOptions#isLengthPrefix()}), or otherwise a line of text printed without a format table. A
+ * record cut by the end of the buffer is left out, and so are the records after a record of an unknown call site.<br/>
+ * Records are found by scanning the buffer as far as needed, keeping the start of one record in
+ * {@value #INDEX_STRIDE} to come back to the others; the most recently used pages are kept. {@link #size()} and
+ * {@link #tail(int)} scan the whole buffer, without formatting it.<br/>
+ * The buffer must not change while the view is used. Instances are not thread-safe.
+ */
+public final class PrintLog {
+
+    /** Default number of values read at a time */
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+    /** Default number of pages kept */
+    public static final int DEFAULT_MAX_PAGES = 16;
+    /** Number of records between two records whose start is kept */
+    public static final int INDEX_STRIDE = 64;
+
+    private final PrintBufferDecoder.ValueReader reader;
+    private final int printedSize, pageSize;
+    private final PrintBufferDecoder decoder;
+    private final long batch;
+    // pages read, least recently used first
+    private final Map<Integer, int[]> pages;
+    // contiguous copy of values from windowStart, for records across pages
+    private int[] window = new int[0];
+    private int windowStart, windowLength;
+    // start of every INDEX_STRIDE-th record found so far, the records found and the index after the last one
+    private int[] checkpoints = new int[64];
+    private int scannedRecords, scannedEnd;
+    private boolean complete;
+
+    /**
+     * @param reader reads values of the buffer, its first value excluded
+     * @param printedSize number of values printed
+     * @param batch sequence number given to the records, see {@link PrintRecord#getBatch()}
+     */
+    PrintLog(PrintBufferDecoder.ValueReader reader, int printedSize, PrintfSiteTable table, int pageSize, int maxPages, long batch) {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        if (maxPages <= 0)
+            throw new IllegalArgumentException("Page count must be positive: " + maxPages);
+        this.reader = reader;
+        this.printedSize = printedSize;
+        this.pageSize = pageSize;
+        this.decoder = new PrintBufferDecoder(table);
+        this.batch = batch;
+        this.pages = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * A view of the first <code>printedSize</code> values of <code>printfData</code> (a print buffer without its first
+     * value), which must not change afterwards
+     */
+    public static PrintLog of(int[] printfData, int printedSize, PrintfSiteTable table) {
+        return new PrintLog((from, values, offset, count) -> System.arraycopy(printfData, from, values, offset, count),
+                printedSize, table, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, 0);
+    }
+
+    /**
+     * Number of records; scans the whole buffer the first time
+     */
+    public int size() {
+        while (!complete)
+            scanNext();
+        return scannedRecords;
+    }
+
+    /**
+     * The record with the given number, its values not formatted yet
+     */
+    public PrintRecord get(int record) {
+        List<PrintRecord> records = range(record, record + 1);
+        if (records.isEmpty())
+            throw new IndexOutOfBoundsException("Record " + record + " of " + size());
+        return records.get(0);
+    }
+
+    /**
+     * The records from <code>from</code> to <code>to</code> excluded, fewer if the buffer ends before
+     */
+    public List<PrintRecord> range(int from, int to) {
+        checkRange(from, to);
+        List<PrintRecord> records = new ArrayList<>(Math.min(to - from, 1024));
+        walk(from, to, (start, end) -> {
+            records.add(record(start, end));
+            return true;
+        });
+        return records;
+    }
+
+    /**
+     * The last <code>count</code> records, fewer if there are not as many
+     */
+    public List<PrintRecord> tail(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative record count " + count);
+        int size = size();
+        return range(Math.max(0, size - count), size);
+    }
+
+    /**
+     * The text of the records from <code>from</code> to <code>to</code> excluded, as
+     * {@link ShaderPrintf#getPrintBufferString(int)} prints it
+     */
+    public String getText(int from, int to) {
+        checkRange(from, to);
+        StringBuilder text = new StringBuilder();
+        walk(from, to, (start, end) -> {
+            load(start, end - start);
+            decoder.decode(window, start - windowStart, end - windowStart, text);
+            return true;
+        });
+        return text.toString();
+    }
+
+    /**
+     * Number of the first record from <code>from</code> on accepted by <code>predicate</code>, -1 if none; the
+     * predicate sees the values of the records, which are only formatted if it asks for their text
+     */
+    public int find(int from, Predicate<PrintRecord> predicate) {
+        checkRange(from, from);
+        int[] found = {-1};
+        int[] record = {from};
+        walk(from, Integer.MAX_VALUE, (start, end) -> {
+            if (predicate.test(record(start, end))) {
+                found[0] = record[0];
+                return false;
+            }
+            record[0]++;
+            return true;
+        });
+        return found[0];
+    }
+
+    private static void checkRange(int from, int to) {
+        if (from < 0 || to < from)
+            throw new IndexOutOfBoundsException("Invalid record range " + from + " to " + to);
+    }
+
+    /**
+     * Receives the bounds of a record, returns whether to go on
+     */
+    private interface RecordVisitor {
+        boolean visit(int start, int end);
+    }
+
+    /**
+     * Visits the records from <code>from</code> to <code>to</code> excluded, scanning further when needed
+     */
+    private void walk(int from, int to, RecordVisitor visitor) {
+        // back to the last start kept before from
+        while (!complete && scannedRecords <= from)
+            scanNext();
+        if (from >= scannedRecords)
+            return;
+        int record = from / INDEX_STRIDE * INDEX_STRIDE;
+        int start = checkpoints[from / INDEX_STRIDE];
+        for (; record < from; ++record)
+            start = skipEmpty(recordEnd(start));
+
+        for (; record < to; ++record) {
+            int end;
+            if (record < scannedRecords)
+                end = recordEnd(start);
+            else if (scanNext() != -1)
+                end = scannedEnd;
+            else
+                return;
+            if (!visitor.visit(start, end))
+                return;
+            // not past the last record wanted, which may need another page
+            if (record + 1 < to)
+                start = skipEmpty(end);
+        }
+    }
+
+    /**
+     * Finds the record after the last one found
+     *
+     * @return its start, -1 if the buffer ends before
+     */
+    private int scanNext() {
+        int start = skipEmpty(scannedEnd);
+        int end = start < printedSize ? recordEnd(start) : -1;
+        if (end == -1) {
+            complete = true;
+            return -1;
+        }
+        if (scannedRecords % INDEX_STRIDE == 0) {
+            int checkpoint = scannedRecords / INDEX_STRIDE;
+            if (checkpoint == checkpoints.length)
+                checkpoints = Arrays.copyOf(checkpoints, checkpoint * 2);
+            checkpoints[checkpoint] = start;
+        }
+        scannedRecords++;
+        scannedEnd = end;
+        return start;
+    }
+
+    /**
+     * Index of the first value from <code>i</code> on that is not a length with nothing after it
+     */
+    private int skipEmpty(int i) {
+        int layout = decoder.layout();
+        while (i < printedSize) {
+            load(i, 1);
+            int value = window[i - windowStart];
+            if (!PreprocessedSource.isLength(value, layout) || (value & PreprocessedSource.LENGTH_MASK) > 1)
+                break;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Index after the record starting at <code>start</code>, -1 if it is cut by the end of the buffer or is a record of
+     * an unknown call site
+     */
+    private int recordEnd(int start) {
+        int layout = decoder.layout();
+        // the values in the window first, then larger windows from start while the record is cut by them
+        int count = start >= windowStart && start < windowStart + windowLength ? windowStart + windowLength - start : pageSize;
+        for (; ; count = (int) Math.min(Integer.MAX_VALUE, Math.max(pageSize, 2L * count))) {
+            load(start, count);
+            int i = start - windowStart, limit = windowLength;
+            boolean last = windowStart + windowLength == printedSize;
+            int value = window[i];
+            if (PreprocessedSource.isLength(value, layout)) {
+                int end = start + (value & PreprocessedSource.LENGTH_MASK);
+                if (end <= windowStart + limit)
+                    return end;
+                if (last)
+                    return -1;
+            }
+            else if (PreprocessedSource.isSiteRecord(value, layout)) {
+                if (decoder.site(value) == null)
+                    return -1;
+                int end = decoder.unitEnd(window, i, limit);
+                if (end != -1)
+                    return windowStart + end;
+                if (last)
+                    return -1;
+            }
+            else {
+                // the line may go on after the window, or end with a unit cut by it
+                int end = decoder.lineEnd(window, i, limit);
+                if (last)
+                    return end > i ? windowStart + end : -1;
+                if (end > i && end < limit && decoder.unitEnd(window, end, limit) != -1)
+                    return windowStart + end;
+            }
+        }
+    }
+
+    /**
+     * The record from <code>start</code> to <code>end</code>
+     */
+    private PrintRecord record(int start, int end) {
+        load(start, end - start);
+        PrintRecord[] record = {null};
+        decoder.decodeRecords(window, start - windowStart, end - windowStart, batch, r -> record[0] = r);
+        return record[0];
+    }
+
+    /**
+     * Makes the window hold the values from <code>from</code> to <code>from + count</code>, fewer at the end of the
+     * buffer
+     */
+    private void load(int from, int count) {
+        int to = (int) Math.min((long) from + count, printedSize);
+        if (from >= windowStart && to <= windowStart + windowLength)
+            return;
+        if (window.length < to - from)
+            window = new int[Math.max(to - from, pageSize)];
+        windowStart = from;
+        windowLength = to - from;
+        for (int i = from; i < to; ) {
+            int page = i / pageSize;
+            int offset = i - page * pageSize;
+            int copied = Math.min(to - i, pageSize - offset);
+            System.arraycopy(page(page), offset, window, i - from, copied);
+            i += copied;
+        }
+    }
+
+    private int[] page(int page) {
+        int[] values = pages.get(page);
+        if (values == null) {
+            int from = page * pageSize;
+            values = new int[Math.min(pageSize, printedSize - from)];
+            reader.read(from, values, 0, values.length);
+            pages.put(page, values);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,204 @@
+package shaderprintf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the print buffers read back through {@link ShaderPrintf} and {@link PrintBufferRing}: values requested by
+ * the shaders against values stored, overflows, records per call site, readback volume and readback and decode
+ * latencies.<br/>
+ * A print buffer overflows when its shaders request more values than it holds: the last records overwrite each other
+ * at its end. Values are counted in uints, the first value of the buffer excluded.<br/>
+ * Poll the getters, or publish {@link #snapshot()} to a metrics registry. Thread-safe.
+ */
+public final class PrintMetrics {
+
+    /**
+     * Called on the thread reading back a buffer that overflowed
+     */
+    public interface OverflowListener {
+        void onOverflow(long requested, long stored);
+    }
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder readbackBytes = new LongAdder();
+    private volatile long lastRequested;
+    private volatile long lastStored;
+    private long[] siteRecords = new long[16];
+    private final LatencyHistogram readbackLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final List<OverflowListener> overflowListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Records the state of a print buffer read back: the values its shaders requested and the values it stored
+     */
+    void recordFrame(long requestedValues, long storedValues) {
+        frames.increment();
+        requested.add(requestedValues);
+        stored.add(storedValues);
+        lastRequested = requestedValues;
+        lastStored = storedValues;
+        if (requestedValues > storedValues) {
+            overflows.increment();
+            for (OverflowListener listener : overflowListeners)
+                listener.onOverflow(requestedValues, storedValues);
+        }
+    }
+
+    void recordReadback(long bytes, long nanos) {
+        readbackBytes.add(bytes);
+        readbackLatency.record(nanos);
+    }
+
+    void recordDecode(long nanos) {
+        decodeLatency.record(nanos);
+    }
+
+    /**
+     * Adds numbers of records decoded, indexed by call site id
+     */
+    synchronized void addSiteRecords(int[] counts) {
+        if (counts.length > siteRecords.length)
+            siteRecords = Arrays.copyOf(siteRecords, Math.max(counts.length, siteRecords.length * 2));
+        for (int id = 0; id < counts.length; ++id)
+            siteRecords[id] += counts[id];
+    }
+
+    public void addOverflowListener(OverflowListener listener) {
+        overflowListeners.add(listener);
+    }
+
+    public void removeOverflowListener(OverflowListener listener) {
+        overflowListeners.remove(listener);
+    }
+
+    /**
+     * Number of print buffers read back
+     */
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    /**
+     * Number of print buffers read back that overflowed
+     */
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    /**
+     * Total number of values requested by the shaders
+     */
+    public long getRequestedValues() {
+        return requested.sum();
+    }
+
+    /**
+     * Total number of values stored in the print buffers
+     */
+    public long getStoredValues() {
+        return stored.sum();
+    }
+
+    /**
+     * Number of values requested by the shaders in the last print buffer read back
+     */
+    public long getLastRequestedValues() {
+        return lastRequested;
+    }
+
+    /**
+     * Number of values stored in the last print buffer read back
+     */
+    public long getLastStoredValues() {
+        return lastStored;
+    }
+
+    /**
+     * Number of bytes copied from print buffers
+     */
+    public long getReadbackBytes() {
+        return readbackBytes.sum();
+    }
+
+    /**
+     * Number of records decoded for the call site with the given id; records of text printed without a format table
+     * have no call site and are not counted
+     */
+    public synchronized long getSiteRecords(int siteId) {
+        return siteId >= 0 && siteId < siteRecords.length ? siteRecords[siteId] : 0;
+    }
+
+    /**
+     * Time spent copying print buffers from the GPU, per buffer
+     */
+    public LatencyHistogram getReadbackLatency() {
+        return readbackLatency;
+    }
+
+    /**
+     * Time spent decoding print buffers, per buffer
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * The metrics by name, latencies in nanoseconds; records per call site are named
+     * <code>sites.&lt;id&gt;.records</code>
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("frames", getFrameCount());
+        values.put("overflows", getOverflowCount());
+        values.put("values.requested", getRequestedValues());
+        values.put("values.stored", getStoredValues());
+        values.put("values.last.requested", getLastRequestedValues());
+        values.put("values.last.stored", getLastStoredValues());
+        values.put("readback.bytes", getReadbackBytes());
+        putLatency(values, "readback.latency", readbackLatency);
+        putLatency(values, "decode.latency", decodeLatency);
+        synchronized (this) {
+            for (int id = 0; id < siteRecords.length; ++id)
+                if (siteRecords[id] != 0)
+                    values.put("sites." + id + ".records", siteRecords[id]);
+        }
+        return values;
+    }
+
+    private static void putLatency(Map<String, Number> values, String name, LatencyHistogram histogram) {
+        values.put(name + ".count", histogram.getCount());
+        values.put(name + ".mean", histogram.getMeanNanos());
+        values.put(name + ".p50", histogram.getPercentileNanos(0.5));
+        values.put(name + ".p99", histogram.getPercentileNanos(0.99));
+        values.put(name + ".max", histogram.getMaxNanos());
+    }
+
+    /**
+     * Sets every metric back to 0; listeners stay
+     */
+    public synchronized void reset() {
+        frames.reset();
+        overflows.reset();
+        requested.reset();
+        stored.reset();
+        readbackBytes.reset();
+        lastRequested = 0;
+        lastStored = 0;
+        Arrays.fill(siteRecords, 0);
+        readbackLatency.reset();
+        decodeLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
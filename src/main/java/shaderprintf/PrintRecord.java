@@ -0,0 +1,106 @@
+package shaderprintf;
+
+/**
+ * One record decoded from a print buffer: a format string and the values printed with it.<br/>
+ * Records written through a format table come from a single printf call and know their {@link PrintfCallSite}.
+ * Text printed without a format table has no call site; each line of it, or each record when records start with their
+ * length, comes as one record, its format rebuilt from the buffer.
+ */
+public final class PrintRecord {
+
+    private final PrintfCallSite site;
+    private final String format;
+    private final CompiledFormat compiledFormat;
+    private final int[] values;
+    private final int[] invocation;
+    private final long batch;
+
+    PrintRecord(PrintfCallSite site, String format, CompiledFormat compiledFormat, int[] values, int[] invocation, long batch) {
+        this.site = site;
+        this.format = format;
+        this.compiledFormat = compiledFormat;
+        this.values = values;
+        this.invocation = invocation;
+        this.batch = batch;
+    }
+
+    /**
+     * The call that printed this record, null for text printed without a format table
+     */
+    public PrintfCallSite getSite() {
+        return site;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Number of values, a vector counting for each of its components
+     */
+    public int getValueCount() {
+        return values.length;
+    }
+
+    /**
+     * Whether a value is printed as a float (%f, %e, %g, %a) rather than as an integer
+     */
+    public boolean isFloat(int value) {
+        return compiledFormat.isFloat(value);
+    }
+
+    /**
+     * A value printed as an integer, or the bits of a float
+     */
+    public int getInt(int value) {
+        return values[value];
+    }
+
+    /**
+     * A value printed as a float
+     */
+    public float getFloat(int value) {
+        return Float.intBitsToFloat(values[value]);
+    }
+
+    /**
+     * Whether the record holds the key of the invocation that printed it; see
+     * {@link PrintfOptions#isInvocationMetadata()}
+     */
+    public boolean hasInvocation() {
+        return invocation != null;
+    }
+
+    /**
+     * A component (0 to 2) of the key of the invocation that printed the record; its meaning depends on the stage of the
+     * call site, see {@link ShaderStage}
+     *
+     * @throws IllegalStateException if the record has no invocation key
+     */
+    public int getInvocation(int component) {
+        if (invocation == null)
+            throw new IllegalStateException("Record without invocation metadata");
+        return invocation[component];
+    }
+
+    /**
+     * Sequence number of the buffer this record was decoded from, starting at 0
+     */
+    public long getBatch() {
+        return batch;
+    }
+
+    /**
+     * The formatted text, as {@link ShaderPrintf#getPrintBufferString(int)} prints it
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder();
+        compiledFormat.append(text, values, 0, PrintBufferDecoder.isPlainLocale(), new char[64]);
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+}
@@ -0,0 +1,140 @@
+package shaderprintf;
+
+import java.util.Arrays;
+
+/**
+ * Index of the records from call sites in a copy of a print buffer, to group, sort or filter them by call site or by
+ * invocation without going through text.<br/>
+ * Records are numbered in buffer order from 0. Text printed without a format table is not indexed.
+ */
+public final class PrintRecordIndex {
+
+    private final int[] data;
+    // number of values printed in data, the values after them are not part of the buffer
+    private final int printedSize;
+    private final PrintBufferDecoder decoder;
+    // index in data of the call site id of each record
+    private final int[] starts;
+    private final int size;
+
+    private PrintRecordIndex(int[] data, int printedSize, PrintBufferDecoder decoder, int[] starts, int size) {
+        this.data = data;
+        this.printedSize = printedSize;
+        this.decoder = decoder;
+        this.starts = starts;
+        this.size = size;
+    }
+
+    /**
+     * Indexes the first <code>printedSize</code> values of <code>printfData</code> (a print buffer without its first
+     * value), which must not change afterwards
+     */
+    public static PrintRecordIndex of(int[] printfData, int printedSize, PrintfSiteTable table) {
+        PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+        int[][] starts = {new int[64]};
+        int[] size = {0};
+        decoder.findRecords(printfData, printedSize, start -> {
+            if (size[0] == starts[0].length)
+                starts[0] = Arrays.copyOf(starts[0], size[0] * 2);
+            starts[0][size[0]++] = start;
+        });
+        return new PrintRecordIndex(printfData, printedSize, decoder, starts[0], size[0]);
+    }
+
+    /**
+     * Number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    public PrintfCallSite getSite(int record) {
+        return decoder.site(data[start(record)]);
+    }
+
+    /**
+     * Whether a record holds the key of the invocation that printed it
+     */
+    public boolean hasInvocation(int record) {
+        return getSite(record).getStage() != null;
+    }
+
+    /**
+     * A component (0 to 2) of the key of the invocation that printed a record
+     *
+     * @throws IllegalStateException if the record has no invocation key
+     */
+    public int getInvocation(int record, int component) {
+        if (!hasInvocation(record))
+            throw new IllegalStateException("Record without invocation metadata");
+        if (component < 0 || component >= PreprocessedSource.INVOCATION_KEY_SIZE)
+            throw new IndexOutOfBoundsException("Invocation key component " + component);
+        return data[start(record) + 1 + component];
+    }
+
+    /**
+     * The record itself, with its values
+     */
+    public PrintRecord getRecord(int record) {
+        return decoder.record(data, start(record), printedSize, 0);
+    }
+
+    /**
+     * The records printed by a call site, in buffer order
+     */
+    public int[] findSite(PrintfCallSite site) {
+        int[] found = new int[size];
+        int count = 0;
+        for (int record = 0; record < size; ++record)
+            if (getSite(record).equals(site))
+                found[count++] = record;
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * The records printed by an invocation, in buffer order; see {@link ShaderStage} for the meaning of the key in each
+     * stage
+     */
+    public int[] findInvocation(int x, int y, int z) {
+        int[] found = new int[size];
+        int count = 0;
+        for (int record = 0; record < size; ++record) {
+            int start = starts[record];
+            if (hasInvocation(record) && data[start + 1] == x && data[start + 2] == y && data[start + 3] == z)
+                found[count++] = record;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * The records ordered by invocation key (components compared as unsigned, x first), then in buffer order; records
+     * without invocation key come last
+     */
+    public int[] sortByInvocation() {
+        Integer[] order = new Integer[size];
+        for (int record = 0; record < size; ++record)
+            order[record] = record;
+        Arrays.sort(order, (a, b) -> {
+            boolean hasA = hasInvocation(a), hasB = hasInvocation(b);
+            if (hasA != hasB)
+                return hasA ? -1 : 1;
+            if (hasA)
+                for (int component = 1; component <= PreprocessedSource.INVOCATION_KEY_SIZE; ++component) {
+                    int compare = Integer.compareUnsigned(data[starts[a] + component], data[starts[b] + component]);
+                    if (compare != 0)
+                        return compare;
+                }
+            return Integer.compare(a, b);
+        });
+        int[] sorted = new int[size];
+        for (int record = 0; record < size; ++record)
+            sorted[record] = order[record];
+        return sorted;
+    }
+
+    private int start(int record) {
+        if (record < 0 || record >= size)
+            throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+        return starts[record];
+    }
+}
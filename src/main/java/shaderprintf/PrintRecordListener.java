@@ -0,0 +1,17 @@
+package shaderprintf;
+
+/**
+ * Receives the records decoded by an {@link AsyncPrintDecoder}, on its thread
+ */
+public interface PrintRecordListener {
+
+    void onRecord(PrintRecord record);
+
+    /**
+     * Called after the last record of a buffer
+     *
+     * @param batch sequence number of the buffer
+     */
+    default void onBatchEnd(long batch) {
+    }
+}
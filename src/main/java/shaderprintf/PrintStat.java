@@ -0,0 +1,104 @@
+package shaderprintf;
+
+/**
+ * Statistics of the values given to one printstat call, as aggregated on the GPU: their number, range and sum.<br/>
+ * Each call site has {@link #SLOT_SIZE} uints in the statistics buffer, at the index of its id times the slot size:
+ * the count, the minimum and the maximum as ordered keys (see {@link #orderedKey(float)}) and the sum as float bits.
+ */
+public final class PrintStat {
+
+    /** Number of uints per call site in the statistics buffer */
+    static final int SLOT_SIZE = 4;
+    /** Content of an empty slot: no value, minimum above and maximum below any key, sum 0 */
+    static final int[] EMPTY_SLOT = {0, 0xFFFFFFFF, 0, 0};
+
+    private final PrintfCallSite site;
+    private final long count;
+    private final float min;
+    private final float max;
+    private final float sum;
+
+    PrintStat(PrintfCallSite site, long count, float min, float max, float sum) {
+        this.site = site;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * Reads the slot of a call site
+     */
+    static PrintStat of(PrintfCallSite site, int[] slots, int siteId) {
+        int slot = siteId * SLOT_SIZE;
+        return new PrintStat(site, Integer.toUnsignedLong(slots[slot]), fromOrderedKey(slots[slot + 1]),
+                fromOrderedKey(slots[slot + 2]), Float.intBitsToFloat(slots[slot + 3]));
+    }
+
+    /**
+     * Maps a float to a uint whose unsigned order is the order of the floats, so that atomicMin and atomicMax work on
+     * it: positive floats get their sign bit set, negative floats have all their bits flipped
+     */
+    static int orderedKey(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        return bits ^ (bits < 0 ? 0xFFFFFFFF : 0x80000000);
+    }
+
+    /**
+     * Inverse of {@link #orderedKey(float)}
+     */
+    static float fromOrderedKey(int key) {
+        return Float.intBitsToFloat(key ^ (key < 0 ? 0x80000000 : 0xFFFFFFFF));
+    }
+
+    public PrintfCallSite getSite() {
+        return site;
+    }
+
+    /**
+     * The label given to the printstat call
+     */
+    public String getLabel() {
+        return site.getFormat();
+    }
+
+    /**
+     * Number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Smallest value, NaN if there is none
+     */
+    public float getMin() {
+        return count > 0 ? min : Float.NaN;
+    }
+
+    /**
+     * Largest value, NaN if there is none
+     */
+    public float getMax() {
+        return count > 0 ? max : Float.NaN;
+    }
+
+    /**
+     * Sum of the values, accumulated in float precision in no particular order
+     */
+    public float getSum() {
+        return sum;
+    }
+
+    /**
+     * Mean of the values, NaN if there is none
+     */
+    public double getMean() {
+        return count > 0 ? sum / (double) count : Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return getLabel() + ": count " + count + ", min " + getMin() + ", max " + getMax() + ", mean " + getMean();
+    }
+}
@@ -0,0 +1,62 @@
+package shaderprintf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of the printstat calls of a frame, read from a statistics buffer; see
+ * {@link ShaderPrintf#getPrintStats(int)}.<br/>
+ * Only the call sites that received values are listed, in order of id.
+ */
+public final class PrintStatTable {
+
+    private final List<PrintStat> stats;
+
+    private PrintStatTable(List<PrintStat> stats) {
+        this.stats = Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Reads a copy of a statistics buffer, {@link PrintStat#SLOT_SIZE} uints per call site id of the given table
+     */
+    public static PrintStatTable of(int[] slots, PrintfSiteTable table) {
+        List<PrintStat> stats = new ArrayList<>();
+        for (int id = 0, size = Math.min(table.size(), slots.length / PrintStat.SLOT_SIZE); id < size; ++id) {
+            PrintfCallSite site = table.get(id);
+            if (site.isStat() && slots[id * PrintStat.SLOT_SIZE] != 0)
+                stats.add(PrintStat.of(site, slots, id));
+        }
+        return new PrintStatTable(stats);
+    }
+
+    public List<PrintStat> getStats() {
+        return stats;
+    }
+
+    /**
+     * The statistics of the first call site with the given label, null if none received values
+     */
+    public PrintStat get(String label) {
+        for (PrintStat stat : stats)
+            if (stat.getLabel().equals(label))
+                return stat;
+        return null;
+    }
+
+    /**
+     * One row per call site: label, line, count, min, max, mean
+     */
+    @Override
+    public String toString() {
+        int labelWidth = "label".length();
+        for (PrintStat stat : stats)
+            labelWidth = Math.max(labelWidth, stat.getLabel().length());
+        String label = "%-" + labelWidth + "s";
+        StringBuilder table = new StringBuilder(String.format(label + " %6s %12s %14s %14s %14s%n", "label", "line", "count", "min", "max", "mean"));
+        for (PrintStat stat : stats)
+            table.append(String.format(label + " %6d %12d %14.6g %14.6g %14.6g%n", stat.getLabel(), stat.getSite().getLine(), stat.getCount(),
+                    stat.getMin(), stat.getMax(), stat.getMean()));
+        return table.toString();
+    }
+}
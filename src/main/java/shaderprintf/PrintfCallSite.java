@@ -0,0 +1,179 @@
+package shaderprintf;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A printf call found by the preprocessor: its format string and where it comes from.<br/>
+ * Call sites are given their ids by a {@link PrintfSiteTable}.
+ */
+public final class PrintfCallSite {
+
+    private final int line;
+    private final String format;
+    private final ShaderStage stage;
+    private final String sourceName;
+    private final int recordLimit;
+    private final boolean stat;
+    private volatile CompiledFormat compiledFormat;
+
+    /**
+     * The fields of a call site, copied to derive another one
+     */
+    private static final class Builder {
+        int line;
+        String format;
+        ShaderStage stage;
+        String sourceName;
+        int recordLimit;
+        boolean stat;
+    }
+
+    /**
+     * A printf call site without stage, source name nor record limit; derive the others with the <code>with</code>
+     * methods
+     *
+     * @param line line of the call in the source given to the preprocessor, starting at 1
+     * @param format the format string, escape sequences already resolved; the label for a printstat call
+     */
+    PrintfCallSite(int line, String format) {
+        this.line = line;
+        this.format = format;
+        this.stage = null;
+        this.sourceName = null;
+        this.recordLimit = 0;
+        this.stat = false;
+    }
+
+    private PrintfCallSite(Builder builder) {
+        this.line = builder.line;
+        this.format = builder.format;
+        this.stage = builder.stage;
+        this.sourceName = builder.sourceName;
+        this.recordLimit = builder.recordLimit;
+        this.stat = builder.stat;
+    }
+
+    /**
+     * A copy of this call site changed by <code>change</code>
+     */
+    private PrintfCallSite with(Consumer<Builder> change) {
+        Builder builder = new Builder();
+        builder.line = line;
+        builder.format = format;
+        builder.stage = stage;
+        builder.sourceName = sourceName;
+        builder.recordLimit = recordLimit;
+        builder.stat = stat;
+        change.accept(builder);
+        return new PrintfCallSite(builder);
+    }
+
+    /**
+     * @see #getStage()
+     */
+    PrintfCallSite withStage(ShaderStage stage) {
+        return with(builder -> builder.stage = stage);
+    }
+
+    /**
+     * @see #getSourceName()
+     */
+    PrintfCallSite withSourceName(String sourceName) {
+        return with(builder -> builder.sourceName = sourceName);
+    }
+
+    /**
+     * @see #getRecordLimit()
+     */
+    PrintfCallSite withRecordLimit(int recordLimit) {
+        return with(builder -> builder.recordLimit = recordLimit);
+    }
+
+    /**
+     * @see #isStat()
+     */
+    PrintfCallSite withStat(boolean stat) {
+        return with(builder -> builder.stat = stat);
+    }
+
+    /**
+     * Line of the call in the source given to the preprocessor, starting at 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * The format string, escape sequences already resolved
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Stage of the shader when the records of this call hold the key of the invocation that printed them, null otherwise
+     */
+    public ShaderStage getStage() {
+        return stage;
+    }
+
+    /**
+     * Name of the source given to the preprocessor, see {@link PrintfOptions#getSourceName()}; null if unknown
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Maximum number of records written per bind of the print buffer, see {@link PrintfOptions#getRecordLimit()}; 0 for
+     * no limit
+     */
+    public int getRecordLimit() {
+        return recordLimit;
+    }
+
+    /**
+     * Whether the call is a printstat, whose values are aggregated into a {@link PrintStat} instead of printed
+     */
+    public boolean isStat() {
+        return stat;
+    }
+
+    /**
+     * Number of values between the call site id and the printed values in a record
+     */
+    int headerSize() {
+        return stage != null ? PreprocessedSource.INVOCATION_KEY_SIZE : 0;
+    }
+
+    /**
+     * The format string parsed for decoding, compiled on first use
+     */
+    CompiledFormat compiledFormat() {
+        CompiledFormat compiled = compiledFormat;
+        if (compiled == null)
+            compiledFormat = compiled = CompiledFormat.compile(format);
+        return compiled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PrintfCallSite)) return false;
+        PrintfCallSite other = (PrintfCallSite) o;
+        return line == other.line && format.equals(other.format) && stage == other.stage
+                && Objects.equals(sourceName, other.sourceName) && recordLimit == other.recordLimit
+                && stat == other.stat;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * line + format.hashCode()) + (stage != null ? stage.hashCode() : 0)) + Objects.hashCode(sourceName) + 17 * recordLimit + (stat ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return (stage != null ? stage + " " : "") + (sourceName != null ? sourceName + " " : "") + (stat ? "printstat " : "") + "line " + line + ": \"" + format + "\"";
+    }
+}
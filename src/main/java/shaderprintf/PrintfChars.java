@@ -0,0 +1,38 @@
+package shaderprintf;
+
+/**
+ * Character classes of the printf syntax, shared by the preprocessor and the decoders without needing a GL context
+ */
+final class PrintfChars {
+
+    private PrintfChars() {
+    }
+
+    /**
+     * Implementation of C 'isspace' because {@link Character#isSpaceChar(char)} does not handle tabulations
+     */
+    static boolean isspace(char c) {
+        switch (c) {
+            case ' ': return true;
+            case '\t': return true;
+            case '\n': return true;
+            case '\u240B': return true;
+            case '\f': return true;
+            case '\r': return true;
+            default: return Character.isSpaceChar(c);
+        }
+    }
+
+    /**
+     * Whether the given character ends a format specifier
+     */
+    static boolean isConversion(char c) {
+        switch (c) {
+            case 'e': case 'E': case 'f': case 'F': case 'g': case 'G':
+            case 'd': case 'i': case 'u': case 'o': case 'x': case 'X': case 'a': case 'A':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
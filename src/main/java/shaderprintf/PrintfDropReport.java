@@ -0,0 +1,87 @@
+package shaderprintf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Record counters of the call sites of shaders preprocessed with {@link PrintfOptions#withRecordLimit(int)}, read from
+ * one print buffer; see {@link ShaderPrintf#getDroppedRecords(int)}.<br/>
+ * Calls past the limit skip the counter once they see it reached, so that they do not contend on it: the counters
+ * tell which call sites reached their limit, and how many records they dropped at least, not how many they dropped.
+ * A call site whose counter is at its limit may have dropped records without counting any.
+ */
+public final class PrintfDropReport {
+
+    private final PrintfSiteTable table;
+    // record counter of each call site, indexed by call site id
+    private final int[] counts;
+
+    PrintfDropReport(PrintfSiteTable table, int[] counts) {
+        this.table = table;
+        this.counts = counts;
+    }
+
+    /**
+     * Value of the record counter of the call site with the given id: the records it wrote, plus the calls that went
+     * past its limit before seeing the counter reach it
+     */
+    public long getCounted(int siteId) {
+        return siteId >= 0 && siteId < counts.length ? Integer.toUnsignedLong(counts[siteId]) : 0;
+    }
+
+    /**
+     * Whether the call site with the given id wrote as many records as its limit, after which it may have dropped any
+     * number of records
+     */
+    public boolean isLimitReached(int siteId) {
+        PrintfCallSite site = table.get(siteId);
+        return site != null && site.getRecordLimit() > 0 && getCounted(siteId) >= site.getRecordLimit();
+    }
+
+    /**
+     * Number of records the call site with the given id is known to have dropped because of its limit; it may have
+     * dropped more once {@link #isLimitReached(int)}
+     */
+    public long getDroppedAtLeast(int siteId) {
+        if (!isLimitReached(siteId))
+            return 0;
+        return getCounted(siteId) - table.get(siteId).getRecordLimit();
+    }
+
+    /**
+     * Sum of {@link #getDroppedAtLeast(int)} over all call sites
+     */
+    public long getTotalDroppedAtLeast() {
+        long total = 0;
+        for (int id = 0; id < counts.length; ++id)
+            total += getDroppedAtLeast(id);
+        return total;
+    }
+
+    /**
+     * The call sites that reached their limit, in order of id, with the number of records each is known to have
+     * dropped, possibly 0
+     */
+    public Map<PrintfCallSite, Long> getSitesAtLimit() {
+        Map<PrintfCallSite, Long> sites = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; ++id)
+            if (isLimitReached(id))
+                sites.put(table.get(id), getDroppedAtLeast(id));
+        return sites;
+    }
+
+    /**
+     * One line per call site that reached its limit
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<PrintfCallSite, Long> entry : getSitesAtLimit().entrySet()) {
+            report.append("limit of ").append(entry.getKey().getRecordLimit()).append(" records reached by ").append(entry.getKey());
+            if (entry.getValue() > 0)
+                report.append(", at least ").append(entry.getValue()).append(" dropped");
+            report.append('\n');
+        }
+        return report.toString();
+    }
+}
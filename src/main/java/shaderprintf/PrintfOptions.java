@@ -0,0 +1,283 @@
+package shaderprintf;
+
+import java.util.function.Consumer;
+
+/**
+ * Options of the printf preprocessor.<br/>
+ * Instances are immutable; start from {@link #DEFAULT}, which produces the original code, and derive variants with the
+ * <code>with</code> methods.
+ */
+public final class PrintfOptions {
+
+    /** The original behavior: format strings are written to the print buffer one character per uint */
+    public static final PrintfOptions DEFAULT = new PrintfOptions(new Builder());
+
+    private final boolean formatTable;
+    private final boolean invocationMetadata;
+    private final ShaderStage stage;
+    private final boolean lengthPrefix;
+    private final boolean packedText;
+    private final boolean siteMask;
+    private final String sourceName;
+    private final boolean strip;
+    private final int recordLimit;
+    private final int binding;
+
+    /**
+     * The fields of options, copied to derive other options; the defaults are those of {@link #DEFAULT}
+     */
+    private static final class Builder {
+        boolean formatTable;
+        boolean invocationMetadata;
+        ShaderStage stage;
+        boolean lengthPrefix;
+        boolean packedText;
+        boolean siteMask;
+        String sourceName;
+        boolean strip;
+        int recordLimit;
+        int binding = -1;
+    }
+
+    private PrintfOptions(Builder builder) {
+        this.formatTable = builder.formatTable;
+        this.invocationMetadata = builder.invocationMetadata;
+        this.stage = builder.stage;
+        this.lengthPrefix = builder.lengthPrefix;
+        this.packedText = builder.packedText;
+        this.siteMask = builder.siteMask;
+        this.sourceName = builder.sourceName;
+        this.strip = builder.strip;
+        this.recordLimit = builder.recordLimit;
+        this.binding = builder.binding;
+    }
+
+    /**
+     * A copy of these options changed by <code>change</code>
+     */
+    private PrintfOptions with(Consumer<Builder> change) {
+        Builder builder = new Builder();
+        builder.formatTable = formatTable;
+        builder.invocationMetadata = invocationMetadata;
+        builder.stage = stage;
+        builder.lengthPrefix = lengthPrefix;
+        builder.packedText = packedText;
+        builder.siteMask = siteMask;
+        builder.sourceName = sourceName;
+        builder.strip = strip;
+        builder.recordLimit = recordLimit;
+        builder.binding = binding;
+        change.accept(builder);
+        return new PrintfOptions(builder);
+    }
+
+    /**
+     * Whether format strings are kept in a host-side {@link PrintfSiteTable}. Each printf then only writes the id of its
+     * call site followed by its arguments, instead of one uint per character of the format string.
+     */
+    public boolean isFormatTable() {
+        return formatTable;
+    }
+
+    /**
+     * @see #isFormatTable()
+     */
+    public PrintfOptions withFormatTable(boolean formatTable) {
+        return with(builder -> builder.formatTable = formatTable);
+    }
+
+    /**
+     * Whether each record also holds the key of the invocation that printed it (see {@link ShaderStage}), after the id
+     * of its call site. The call site gives the line and the stage. Implies the format table, and needs the stage of the
+     * shader.
+     */
+    public boolean isInvocationMetadata() {
+        return invocationMetadata;
+    }
+
+    /**
+     * @see #isInvocationMetadata()
+     */
+    public PrintfOptions withInvocationMetadata(boolean invocationMetadata) {
+        return with(builder -> builder.invocationMetadata = invocationMetadata);
+    }
+
+    /**
+     * Stage of the shader being preprocessed, null if unknown.<br/>
+     * {@link ShaderPrintf#glShaderSourcePrint(int, PrintfOptions, String...)} fills it from the shader object.
+     */
+    public ShaderStage getStage() {
+        return stage;
+    }
+
+    /**
+     * @see #getStage()
+     */
+    public PrintfOptions withStage(ShaderStage stage) {
+        return with(builder -> builder.stage = stage);
+    }
+
+    /**
+     * Whether each record starts with its length, so that a buffer can be split into records without parsing them and
+     * decoded in parallel; see {@link ShaderPrintf#getPrintBufferStringParallel(int)}
+     */
+    public boolean isLengthPrefix() {
+        return lengthPrefix;
+    }
+
+    /**
+     * @see #isLengthPrefix()
+     */
+    public PrintfOptions withLengthPrefix(boolean lengthPrefix) {
+        return with(builder -> builder.lengthPrefix = lengthPrefix);
+    }
+
+    /**
+     * Whether literal text of format strings written to the print buffer is packed four characters per uint, after a
+     * marker holding the length of the run. Specifiers and characters above U+00FF are still written one per uint.
+     * Has no effect with the format table, which writes no text.
+     */
+    public boolean isPackedText() {
+        return packedText;
+    }
+
+    /**
+     * @see #isPackedText()
+     */
+    public PrintfOptions withPackedText(boolean packedText) {
+        return with(builder -> builder.packedText = packedText);
+    }
+
+    /**
+     * Whether each printf call tests the bit of its call site in a mask buffer before writing anything, so that call
+     * sites can be turned on and off at runtime without recompiling; see {@link PrintfSiteMask}.<br/>
+     * A disabled call costs one load from the mask and skips the atomicAdd on the print buffer.
+     */
+    public boolean isSiteMask() {
+        return siteMask;
+    }
+
+    /**
+     * @see #isSiteMask()
+     */
+    public PrintfOptions withSiteMask(boolean siteMask) {
+        return with(builder -> builder.siteMask = siteMask);
+    }
+
+    /**
+     * Name of the source being preprocessed, typically its file name, null if unknown.<br/>
+     * Kept in its call sites, so that {@link PrintfSiteMask#setSourceEnabled(String, boolean)} can switch a whole file.
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @see #getSourceName()
+     */
+    public PrintfOptions withSourceName(String sourceName) {
+        return with(builder -> builder.sourceName = sourceName);
+    }
+
+    /**
+     * Release mode: printf calls are removed instead of rewritten, keeping only those of their arguments that may have
+     * side effects, and no print buffer is declared; enablePrintf and disablePrintf remain as empty functions.<br/>
+     * The calls are parsed as in the other modes and the lines keep their numbers, so the same source works in both.
+     * Every other option is ignored.
+     */
+    public boolean isStrip() {
+        return strip;
+    }
+
+    /**
+     * @see #isStrip()
+     */
+    public PrintfOptions withStrip(boolean strip) {
+        return with(builder -> builder.strip = strip);
+    }
+
+    /**
+     * Maximum number of records each call site writes to a print buffer between two binds of the buffer, 0 for no
+     * limit.<br/>
+     * Calls past the limit only read the counter of their call site, so that a print in a hot loop neither floods the
+     * buffer nor serializes every invocation on its write index or on the counter. Only the calls that read the counter
+     * before it reached the limit increment it: which call sites reached their limit is known, the number of
+     * records they dropped only in part, see {@link ShaderPrintf#getDroppedRecords(int)}.
+     */
+    public int getRecordLimit() {
+        return recordLimit;
+    }
+
+    /**
+     * @see #getRecordLimit()
+     */
+    public PrintfOptions withRecordLimit(int recordLimit) {
+        if (recordLimit < 0)
+            throw new IllegalArgumentException("Negative record limit " + recordLimit);
+        return with(builder -> builder.recordLimit = recordLimit);
+    }
+
+    /**
+     * Binding point of the print buffer block, given to it with a <code>layout(binding=N)</code> qualifier, -1 to
+     * declare it without one.<br/>
+     * The blocks of the mask, record counters and printstat statistics, when declared, take the next three binding
+     * points. All of them can then be bound once for all the draws of a frame, see
+     * {@link ShaderPrintf#bindPrintBufferBase(int, int)}, and never clash with the blocks of the application as long as
+     * it leaves these four binding points free.
+     */
+    public int getBinding() {
+        return binding;
+    }
+
+    /**
+     * @see #getBinding()
+     */
+    public PrintfOptions withBinding(int binding) {
+        if (binding < -1)
+            throw new IllegalArgumentException("Invalid binding point " + binding);
+        return with(builder -> builder.binding = binding);
+    }
+
+    /**
+     * Whether printf calls write records starting with the id of their call site
+     */
+    boolean isSiteRecords() {
+        return formatTable || invocationMetadata;
+    }
+
+    /**
+     * Tags that values printed with these options may carry, among {@link PreprocessedSource#SITE_TAG},
+     * {@link PreprocessedSource#LENGTH_TAG} and {@link PreprocessedSource#PACKED_TAG}
+     */
+    int layoutTags() {
+        if (strip)
+            return 0;
+        return (isSiteRecords() ? PreprocessedSource.SITE_TAG : 0)
+                | (lengthPrefix ? PreprocessedSource.LENGTH_TAG : 0)
+                | (packedText && !isSiteRecords() ? PreprocessedSource.PACKED_TAG : 0);
+    }
+
+    /**
+     * Stable textual form of the options, part of the key of cached sources
+     */
+    String key() {
+        return "formatTable=" + formatTable + ",invocationMetadata=" + invocationMetadata + ",stage=" + stage + ",lengthPrefix=" + lengthPrefix + ",packedText=" + packedText
+                + ",siteMask=" + siteMask + ",strip=" + strip + ",recordLimit=" + recordLimit + ",binding=" + binding
+                + ",sourceName=" + sourceName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PrintfOptions && key().equals(((PrintfOptions) o).key());
+    }
+
+    @Override
+    public int hashCode() {
+        return key().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PrintfOptions{" + key() + "}";
+    }
+}
@@ -0,0 +1,641 @@
+package shaderprintf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass implementation of {@link ShaderPrintf#addPrintToSource(String)}.<br/>
+ * The source is walked once: comments are stripped on the fly, printf calls are recognized with the same rules as
+ * {@link ShaderPrintf#findCall(String, String)} and rewritten in place at the end of a single output builder.
+ * With the default options, the output is identical to the original multi-pass implementation.
+ */
+final class PrintfPreprocessor {
+
+    /** Version of the generated code; changes whenever the output for a given source changes */
+    static final String VERSION = "12";
+
+    private static final String PRINTF = "printf";
+    private static final String PRINTSTAT = "printstat";
+    private static final String VERSION_DIRECTIVE = "#version";
+
+    // functions without side effects, whose calls are dropped in strip mode
+    private static final Pattern CONSTRUCTOR = Pattern.compile("[biud]?vec[234]|d?mat[234](x[234])?|float|double|u?int|bool");
+    private static final Set<String> PURE_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "radians", "degrees", "sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh", "asinh", "acosh", "atanh",
+            "pow", "exp", "log", "exp2", "log2", "sqrt", "inversesqrt", "abs", "sign", "floor", "trunc", "round", "roundEven",
+            "ceil", "fract", "mod", "min", "max", "clamp", "mix", "step", "smoothstep", "isnan", "isinf", "floatBitsToInt",
+            "floatBitsToUint", "intBitsToFloat", "uintBitsToFloat", "fma", "packHalf2x16", "unpackHalf2x16", "length",
+            "distance", "dot", "cross", "normalize", "faceforward", "reflect", "refract", "matrixCompMult", "outerProduct",
+            "transpose", "determinant", "inverse", "lessThan", "lessThanEqual", "greaterThan", "greaterThanEqual", "equal",
+            "notEqual", "any", "all", "not", "bitfieldExtract", "bitfieldInsert", "bitfieldReverse", "bitCount", "findLSB",
+            "findMSB", "texture", "textureLod", "textureOffset", "texelFetch", "texelFetchOffset", "textureSize",
+            "textureGrad", "textureGather", "imageSize", "imageLoad", "dFdx", "dFdy", "fwidth"));
+
+    // no call is being tracked
+    private static final int IDLE = 0;
+    // "printf" has been seen, waiting for the following character to accept or reject it
+    private static final int CANDIDATE = 1;
+    // inside the parentheses of an accepted call
+    private static final int IN_CALL = 2;
+    // after the closing parenthesis, waiting for the ';' ending the statement
+    private static final int AFTER_CALL = 3;
+
+    private final String input;
+    private final PrintfOptions options;
+    private final StringBuilder out;
+    private final List<PrintfCallSite> sites = new ArrayList<>();
+
+    // line of the input being read, and of the last 'p' written to the output
+    private int inputLine = 1;
+    private int callLine;
+
+    // comment stripping state, applied to the input
+    private boolean commentLong;
+    private boolean commentRow;
+    private boolean inStringFlag;
+
+    // comment state as seen by findCall, applied to the (rewritten) output
+    private boolean callCommentLong;
+    private boolean callCommentRow;
+
+    // #version tracking, in stripped source coordinates
+    private int strippedLength;
+    private int strippedNewlines;
+    private int versionMatch;
+    private int versionIndex = -1;
+    private int versionEnd = -1;
+    private int lineAfterVersion = 2;
+
+    // call tracking
+    private int state = IDLE;
+    private int callStart;
+    private String callFunction;
+    private boolean snapshotCommentLong;
+    private boolean snapshotCommentRow;
+    private int parentheses;
+    private boolean inString;
+    private boolean escaped;
+    private final List<Integer> argumentCommas = new ArrayList<>();
+    // whether a printstat call has been rewritten, which needs the statistics buffer
+    private boolean hasStats;
+
+    // format characters written by the call being rewritten: characters waiting to be packed, whether the characters
+    // belong to a specifier (never packed), and the number of uints written so far
+    private final StringBuilder pendingText = new StringBuilder();
+    private boolean inSpecifier;
+    private int textWrites;
+
+    private PrintfPreprocessor(String input, PrintfOptions options) {
+        this.input = input;
+        this.options = options;
+        this.out = new StringBuilder(input.length() + (input.length() >> 1) + 256);
+    }
+
+    /**
+     * Rewrites all printf and printstat calls of the given source and inserts the print buffer definition after the #version line
+     */
+    static PreprocessedSource process(String source, PrintfOptions options) {
+        if (source.indexOf(PreprocessedSource.PLACEHOLDER) != -1)
+            throw new IllegalArgumentException("Shader sources may not contain the character U+FFFF");
+        if (options.isInvocationMetadata() && options.getStage() == null && !options.isStrip())
+            throw new IllegalArgumentException("Invocation metadata needs the stage of the shader, see PrintfOptions.withStage");
+        return new PrintfPreprocessor(source, options).run();
+    }
+
+    /**
+     * Rewrites all printf and printstat calls of one part of a shader source, without inserting anything: the part is
+     * stitched with the others and the header by {@link IncrementalShaderSource}. Lines of call sites count from the
+     * start of the part.
+     */
+    static PreprocessedPart processPart(String source, PrintfOptions options) {
+        if (source.indexOf(PreprocessedSource.PLACEHOLDER) != -1)
+            throw new IllegalArgumentException("Shader sources may not contain the character U+FFFF");
+        if (options.isInvocationMetadata() && options.getStage() == null && !options.isStrip())
+            throw new IllegalArgumentException("Invocation metadata needs the stage of the shader, see PrintfOptions.withStage");
+        PrintfPreprocessor preprocessor = new PrintfPreprocessor(source, options);
+        preprocessor.walk();
+        if (preprocessor.commentLong || preprocessor.inStringFlag)
+            throw new IllegalArgumentException("Part ends inside a comment or a string, parts must be preprocessed together");
+        return new PreprocessedPart(new PreprocessedSource(preprocessor.out.toString(), preprocessor.sites, options.layoutTags()),
+                preprocessor.versionIndex != -1 ? preprocessor.headerOffset() : -1, preprocessor.lineAfterVersion, preprocessor.hasStats);
+    }
+
+    private PreprocessedSource run() {
+        walk();
+        out.insert(Math.min(headerOffset(), out.length()), header(options, hasStats, lineAfterVersion, 0));
+        return new PreprocessedSource(out.toString(), sites, options.layoutTags());
+    }
+
+    /**
+     * Rewrites the calls of the whole input
+     */
+    private void walk() {
+        final int length = input.length();
+        for (int i = 0; i < length; ++i) {
+            if (i > 0 && input.charAt(i - 1) == '\n')
+                ++inputLine;
+            char c = input.charAt(i);
+            if (c == '"' && (i == 0 || i + 1 >= length || input.charAt(i + 1) != '\\')) inStringFlag = !inStringFlag;
+            if (!inStringFlag) {
+                if (i < length - 1) {
+                    char next = input.charAt(i + 1);
+                    if (c == '/' && next == '*') { commentLong = true; i++; continue; }
+                    if (c == '*' && next == '/') { commentLong = false; i++; continue; }
+                    if (c == '/' && next == '/') { commentRow = true; i++; continue; }
+                }
+                if (c == '\n') commentRow = false;
+            }
+            if (!commentLong && !commentRow)
+                emit(c);
+        }
+
+        if (state == IN_CALL || state == AFTER_CALL)
+            throw new IllegalArgumentException("Unterminated printf call at offset " + callStart + " of the preprocessed source");
+    }
+
+    /**
+     * Where the header goes: after the #version line, at the start without one
+     */
+    private int headerOffset() {
+        if (versionIndex == -1)
+            return 0;
+        if (versionEnd == -1)
+            versionEnd = strippedLength;
+        return 1 + versionEnd - versionIndex;
+    }
+
+    /**
+     * The ssbo definition and some helper functions, inserted after the #version line
+     *
+     * @param sourceString number of the source string given to the #line directive restoring the line numbers, 0 for
+     *                     none
+     */
+    static String header(PrintfOptions options, boolean hasStats, int lineAfterVersion, int sourceString) {
+        String line = "#line " + lineAfterVersion + (sourceString != 0 ? " " + sourceString : "") + "\n";
+        if (options.isStrip()) {
+            // no buffer in strip mode, the stubs keep calls to enablePrintf and disablePrintf valid
+            return "\nvoid enablePrintf(){}void disablePrintf(){}\n" + line;
+        }
+        String siteBuffers = options.isSiteMask() ? block(options, PreprocessedSource.MASK_BLOCK, 1) + "{uint printMask[];};" : "";
+        if (options.getRecordLimit() > 0)
+            siteBuffers += block(options, PreprocessedSource.COUNTER_BLOCK, 2) + "{uint printCounts[];};";
+        if (hasStats)
+            siteBuffers += block(options, PreprocessedSource.STAT_BLOCK, 3) + "{uint printStats[];};";
+        return "\n" + block(options, PreprocessedSource.PRINT_BLOCK, 0) + "{uint printData[];};" + siteBuffers + "bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}\n" + line;
+    }
+
+    /**
+     * Declaration of a buffer block, at the given offset from the binding point of the options if they have one
+     */
+    private static String block(PrintfOptions options, String name, int bindingOffset) {
+        return (options.getBinding() >= 0 ? "layout(binding=" + (options.getBinding() + bindingOffset) + ") buffer " : "buffer ") + name;
+    }
+
+    /**
+     * Handles one character of the comment-free source
+     */
+    private void emit(char c) {
+        trackVersion(c);
+        if (c == 'p')
+            callLine = inputLine;
+        write(c);
+    }
+
+    /**
+     * Appends one character to the output and advances the call tracking
+     */
+    private void write(char c) {
+        out.append(c);
+        switch (state) {
+            case IDLE:
+                scan(c);
+                break;
+            case CANDIDATE:
+                if (PrintfChars.isspace(c) || c == '(') {
+                    state = IN_CALL;
+                    parentheses = 0;
+                    inString = false;
+                    escaped = false;
+                    argumentCommas.clear();
+                    trackCall(c);
+                }
+                else {
+                    state = IDLE;
+                    if (PRINTF.equals(callFunction))
+                        resetCallComments();
+                    scan(c);
+                }
+                break;
+            case IN_CALL:
+                trackCall(c);
+                break;
+            case AFTER_CALL:
+                if (c == ';')
+                    rewriteCall();
+                break;
+        }
+    }
+
+    private void trackVersion(char c) {
+        if (versionIndex == -1) {
+            if (c == VERSION_DIRECTIVE.charAt(versionMatch)) {
+                if (++versionMatch == VERSION_DIRECTIVE.length()) {
+                    versionIndex = strippedLength - (VERSION_DIRECTIVE.length() - 1);
+                    lineAfterVersion = 2 + strippedNewlines;
+                }
+            }
+            else
+                versionMatch = c == VERSION_DIRECTIVE.charAt(0) ? 1 : 0;
+        }
+        else if (versionEnd == -1 && c == '\n')
+            versionEnd = strippedLength;
+
+        if (c == '\n')
+            ++strippedNewlines;
+        ++strippedLength;
+    }
+
+    /**
+     * Updates the comment state the way findCall sees it for the last character of the output, and detects the start
+     * of a call
+     */
+    private void scan(char c) {
+        int index = out.length() - 1;
+        if (index > 0) {
+            char previous = out.charAt(index - 1);
+            if (previous == '/' && c == '*') callCommentLong = true;
+            if (previous == '*' && c == '/') callCommentLong = false;
+            if (previous == '/' && c == '/') callCommentRow = true;
+        }
+        if (c == '\n') callCommentRow = false;
+
+        String function = c == 'f' ? PRINTF : c == 't' ? PRINTSTAT : null;
+        if (function != null && index >= function.length() - 1) {
+            int tentative = index - (function.length() - 1);
+            if (out.indexOf(function, tentative) == tentative) {
+                if (!callCommentLong && !callCommentRow && (tentative == 0 || PrintfChars.isspace(out.charAt(tentative - 1)))) {
+                    state = CANDIDATE;
+                    callStart = tentative;
+                    callFunction = function;
+                    snapshotCommentLong = callCommentLong;
+                    snapshotCommentRow = callCommentRow;
+                }
+                else if (PRINTF.equals(function)) // findCall restarts from scratch after a rejected occurrence
+                    resetCallComments();
+            }
+        }
+    }
+
+    private void resetCallComments() {
+        callCommentLong = false;
+        callCommentRow = false;
+    }
+
+    /**
+     * Follows parentheses and strings of an accepted call until its closing parenthesis
+     */
+    private void trackCall(char c) {
+        if (escaped) {
+            // the escaped character is only checked for parentheses
+            escaped = false;
+        }
+        else {
+            if (!inString && parentheses == 1 && c == ',')
+                argumentCommas.add(out.length() - 1 - callStart);
+            if (c == '"')
+                inString = !inString;
+            if (c == '\\') {
+                escaped = true;
+                return;
+            }
+        }
+        if (!inString && c == '(')
+            parentheses++;
+        if (!inString && c == ')') {
+            parentheses--;
+            if (parentheses == 0)
+                state = AFTER_CALL;
+        }
+    }
+
+    /**
+     * Replaces the call at the end of the output (ending with ';') by the buffer insertions
+     */
+    private void rewriteCall() {
+        String call = out.substring(callStart);
+        if (PRINTSTAT.equals(callFunction)) {
+            rewriteStat(call);
+            return;
+        }
+        int callEnd = call.length() - 1;
+
+        // gather the arguments
+        List<String> args = arguments(call, false);
+
+        // come up with a list of data insertions that match the printf call
+        // (with a format table, the characters go to the table and only the values are written)
+        boolean inlineFormat = !options.isSiteRecords();
+        boolean packedText = inlineFormat && options.isPackedText();
+        pendingText.setLength(0);
+        textWrites = 0;
+        StringBuilder replacement = new StringBuilder(call.length() * 8);
+        StringBuilder format = new StringBuilder();
+        int argumentIndex = 0, writeSize = inlineFormat ? 0 : 1;
+        ShaderStage stage = options.isInvocationMetadata() ? options.getStage() : null;
+        if (stage != null)
+            writeSize += PreprocessedSource.INVOCATION_KEY_SIZE;
+        boolean inString = false;
+        for (int i = 0; i < callEnd; ++i) {
+            if (call.charAt(i) == '"')
+                inString = !inString;
+            if (inString && call.charAt(i) == '\\') {
+                writeChar(replacement, format, escape(call.charAt(i + 1)));
+                i++;
+            }
+            else if (inString && call.charAt(i) != '"') {
+                writeChar(replacement, format, call.charAt(i));
+            }
+            if (inString && call.charAt(i) == '%') {
+                if (call.charAt(i + 1) == '%') {
+                    i++;
+                    // packed text is not parsed by the decoder, so a single '%' stands for itself
+                    if (packedText)
+                        format.append('%');
+                    else
+                        writeChar(replacement, format, call.charAt(i));
+                }
+                else {
+                    if (packedText) {
+                        // the '%' starting the specifier went to the text, it is written unpacked with the specifier
+                        pendingText.setLength(pendingText.length() - 1);
+                        flushText(replacement);
+                        inSpecifier = true;
+                        writeStore(replacement, '%');
+                    }
+                    int vecSize = 1;
+                    while (!PrintfChars.isConversion(call.charAt(i))) {
+                        // a special feature to support vector prints
+                        if (call.charAt(i) == '^')
+                            vecSize = call.charAt(i + 1) - '0';
+                        if (++i >= callEnd)
+                            throw new IllegalArgumentException("Unterminated format specifier in " + call);
+                        writeChar(replacement, format, call.charAt(i));
+                    }
+                    inSpecifier = false;
+                    // store the actual data in the element after the format string
+                    for (int j = 0; j < vecSize; ++j) {
+                        String value = args.get(argumentIndex);
+                        if (vecSize > 1)
+                            value = "(" + value + ")." + "xyzw".charAt(j);
+                        switch (call.charAt(i)) {
+                            case 'e': case 'E': case 'f': case 'F': case 'g': case 'G': case 'x': case 'X':
+                                replacement.append("printData[printIndex++]=floatBitsToUint(").append(value).append(");"); break;
+                            default:
+                                replacement.append("printData[printIndex++]=").append(value).append(";"); break;
+                        }
+                        writeSize++;
+                    }
+                    argumentIndex++;
+                }
+            }
+        }
+        flushText(replacement);
+        // the call has been parsed like in the other modes, so that the same source works in all of them
+        if (options.isStrip()) {
+            replaceCall(strip(call));
+            return;
+        }
+        if (inlineFormat)
+            writeSize += textWrites;
+        if (options.isLengthPrefix())
+            writeSize++;
+
+        // the call site is needed for its id in records, for its bit in the site mask and for its record counter
+        int localSite = sites.size();
+        int recordLimit = options.getRecordLimit();
+        if (!inlineFormat || options.isSiteMask() || recordLimit > 0)
+            sites.add(new PrintfCallSite(callLine, format.toString()).withStage(stage).withSourceName(options.getSourceName()).withRecordLimit(recordLimit));
+
+        StringBuilder rewritten = new StringBuilder(replacement.length() + 128);
+        rewritten.append("if(printfWriter");
+        if (options.isSiteMask()) {
+            rewritten.append("&&");
+            PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.MASK_TEST, localSite);
+        }
+        if (recordLimit > 0) {
+            // counted after the mask test, so that disabled calls stay free; a plain load first, so that the calls past
+            // the limit do not contend on the counter, which then only counts the drops of the calls racing to the limit
+            rewritten.append("&&printCounts[");
+            PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.SITE_ID, localSite);
+            rewritten.append("]<").append(recordLimit).append("u&&atomicAdd(printCounts[");
+            PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.SITE_ID, localSite);
+            rewritten.append("],1u)<").append(recordLimit).append('u');
+        }
+        rewritten.append("){uint printIndex=min(atomicAdd(printData[0],").append(writeSize).append("u),printData.length()-").append(writeSize).append("u);");
+        if (options.isLengthPrefix())
+            rewritten.append("printData[printIndex++]=").append(PreprocessedSource.LENGTH_TAG | writeSize).append("u;");
+        if (!inlineFormat) {
+            rewritten.append("printData[printIndex++]=");
+            PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.RECORD_TAG, localSite);
+            rewritten.append("u;");
+            if (stage != null)
+                for (int i = 0; i < PreprocessedSource.INVOCATION_KEY_SIZE; ++i)
+                    rewritten.append("printData[printIndex++]=uint(").append(stage.invocationKey(i)).append(");");
+        }
+        rewritten.append(replacement).append('}');
+        replaceCall(rewritten);
+    }
+
+    /**
+     * Replaces the printstat call at the end of the output (ending with ';') by the updates of the statistics of its
+     * call site: the number of values, their minimum and maximum (as ordered keys, see {@link PrintStat}) and their sum
+     */
+    private void rewriteStat(String call) {
+        List<String> args = arguments(call, true);
+        int labelStart = call.indexOf('"');
+        int labelEnd = labelStart != -1 ? call.indexOf('"', labelStart + 1) : -1;
+        if (labelEnd == -1 || args.size() != 1 || args.get(0).trim().isEmpty())
+            throw new IllegalArgumentException("printstat takes a label and a value: " + call);
+        if (options.isStrip()) {
+            replaceCall(strip(call));
+            return;
+        }
+
+        int localSite = sites.size();
+        sites.add(new PrintfCallSite(callLine, call.substring(labelStart + 1, labelEnd)).withSourceName(options.getSourceName()).withStat(true));
+        hasStats = true;
+
+        StringBuilder rewritten = new StringBuilder(512);
+        rewritten.append("if(printfWriter");
+        if (options.isSiteMask()) {
+            rewritten.append("&&");
+            PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.MASK_TEST, localSite);
+        }
+        rewritten.append("){float printValue=float(").append(args.get(0).replace('\n', ' ').trim()).append(");");
+        rewritten.append("uint printKey=floatBitsToUint(printValue);printKey^=(printKey>>31)!=0u?0xFFFFFFFFu:0x80000000u;");
+        rewritten.append("uint printSlot=").append(PrintStat.SLOT_SIZE).append("u*");
+        PreprocessedSource.appendPlaceholder(rewritten, PreprocessedSource.SITE_ID, localSite);
+        rewritten.append("u;atomicAdd(printStats[printSlot],1u);atomicMin(printStats[printSlot+1u],printKey);atomicMax(printStats[printSlot+2u],printKey);");
+        // there is no atomic float addition in core GLSL
+        rewritten.append("uint printSum=printStats[printSlot+3u],printSeen;do{printSeen=printSum;printSum=atomicCompSwap(printStats[printSlot+3u],printSeen,floatBitsToUint(uintBitsToFloat(printSeen)+printValue));}while(printSum!=printSeen);}");
+        for (int i = 0; i < call.length(); ++i)
+            if (call.charAt(i) == '\n')
+                rewritten.append('\n');
+        replaceCall(rewritten);
+    }
+
+    /**
+     * Replaces the call at the end of the output by the given code
+     */
+    private void replaceCall(CharSequence rewritten) {
+        // findCall searches the rewritten source again, so the rewritten call goes through the tracking as well
+        state = IDLE;
+        callCommentLong = snapshotCommentLong;
+        callCommentRow = snapshotCommentRow;
+        out.setLength(callStart);
+        for (int i = 0; i < rewritten.length(); ++i)
+            write(rewritten.charAt(i));
+    }
+
+    /**
+     * The arguments of the call after its format string, with or without their spaces
+     */
+    private List<String> arguments(String call, boolean keepSpaces) {
+        List<String> args = new ArrayList<>(argumentCommas.size());
+        StringBuilder arg = new StringBuilder();
+        for (int comma : argumentCommas) {
+            arg.setLength(0);
+            int argParentheses = 0;
+            for (int argLoc = comma + 1; argLoc < call.length() && (argParentheses > 0 || call.charAt(argLoc) != ','); ++argLoc) {
+                char c = call.charAt(argLoc);
+                if (c == '(') ++argParentheses;
+                if (c == ')') --argParentheses;
+                if (argParentheses < 0) break;
+                if (keepSpaces || c != ' ')
+                    arg.append(c);
+            }
+            args.add(arg.toString());
+        }
+        return args;
+    }
+
+    /**
+     * Code replacing a call in strip mode: the arguments that may have side effects, as statements, and the newlines of
+     * the call so that the following lines keep their numbers
+     */
+    private StringBuilder strip(String call) {
+        StringBuilder stripped = new StringBuilder("{");
+        for (String arg : arguments(call, true)) {
+            if (hasSideEffects(arg))
+                stripped.append(arg.replace('\n', ' ').trim()).append(';');
+        }
+        stripped.append('}');
+        for (int i = 0; i < call.length(); ++i)
+            if (call.charAt(i) == '\n')
+                stripped.append('\n');
+        return stripped;
+    }
+
+    /**
+     * Whether evaluating an expression may have side effects: increments, decrements, assignments and calls of functions
+     * other than constructors and common built-in functions, which could write to buffers, images or out parameters
+     */
+    static boolean hasSideEffects(String expression) {
+        for (int i = 0; i < expression.length(); ++i) {
+            char c = expression.charAt(i);
+            char previous = i > 0 ? expression.charAt(i - 1) : ' ';
+            char next = i + 1 < expression.length() ? expression.charAt(i + 1) : ' ';
+            if ((c == '+' || c == '-') && next == c)
+                return true;
+            if (c == '=' && next != '=' && (previous != '=' && previous != '!' && previous != '<' && previous != '>'
+                    || i > 1 && (previous == '<' || previous == '>') && expression.charAt(i - 2) == previous))
+                return true;
+            if (c == '(') {
+                int nameEnd = i;
+                while (nameEnd > 0 && PrintfChars.isspace(expression.charAt(nameEnd - 1)))
+                    --nameEnd;
+                int nameStart = nameEnd;
+                while (nameStart > 0 && (Character.isLetterOrDigit(expression.charAt(nameStart - 1)) || expression.charAt(nameStart - 1) == '_'))
+                    --nameStart;
+                if (nameStart < nameEnd && !isPureFunction(expression.substring(nameStart, nameEnd)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPureFunction(String name) {
+        return CONSTRUCTOR.matcher(name).matches() || PURE_FUNCTIONS.contains(name);
+    }
+
+    /**
+     * Adds a character of the format string, either as a buffer insertion or to the format table entry
+     */
+    private void writeChar(StringBuilder replacement, StringBuilder format, char c) {
+        if (!options.isSiteRecords()) {
+            if (options.isPackedText() && !inSpecifier && c <= PreprocessedSource.PACKED_CHAR_MAX)
+                pendingText.append(c);
+            else {
+                flushText(replacement);
+                writeStore(replacement, c);
+            }
+        }
+        format.append(c);
+    }
+
+    private void writeStore(StringBuilder replacement, char c) {
+        replacement.append("printData[printIndex++]=").append((int) c).append(';');
+        textWrites++;
+    }
+
+    /**
+     * Writes the characters waiting to be packed, four per uint after a run-length marker; runs too short to gain
+     * anything are written one character per uint
+     */
+    private void flushText(StringBuilder replacement) {
+        int count = pendingText.length();
+        if (count < 3) {
+            for (int i = 0; i < count; ++i) {
+                // unpacked, a '%' is read as the start of a specifier unless doubled
+                if (pendingText.charAt(i) == '%')
+                    writeStore(replacement, '%');
+                writeStore(replacement, pendingText.charAt(i));
+            }
+        }
+        else {
+            replacement.append("printData[printIndex++]=").append(PreprocessedSource.PACKED_TAG | count).append("u;");
+            for (int i = 0; i < count; i += 4) {
+                int word = 0;
+                for (int j = Math.min(count, i + 4) - 1; j >= i; --j)
+                    word = word << 8 | pendingText.charAt(j);
+                replacement.append("printData[printIndex++]=").append(Integer.toUnsignedString(word)).append("u;");
+            }
+            textWrites += 1 + (count + 3) / 4;
+        }
+        pendingText.setLength(0);
+    }
+
+    /**
+     * Value of the escape sequence '\' followed by the given character
+     */
+    private static char escape(char c) {
+        switch (c) {
+            case '\'': return '\'';
+            case '\"': return '\"';
+            case '?': return '?';
+            case '\\': return '\\';
+            case 'a': return '\u0007'; // BELL character
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'v': return '\u240B'; // vertical tab
+            default: return ' ';
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package shaderprintf;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Runtime switch of the printf call sites of shaders preprocessed with {@link PrintfOptions#withSiteMask(boolean)}.
+ * <br/>The mask holds one bit per call site id of a {@link PrintfSiteTable}, set when the call site is disabled, so
+ * call sites registered later start enabled. Changes take effect the next time the mask is bound with
+ * {@link ShaderPrintf#bindSiteMask(int)}, without recompiling any shader.<br/>
+ * Rules given by source name or format apply to the call sites registered when they are given.
+ */
+public final class PrintfSiteMask {
+
+    private final PrintfSiteTable table;
+    private int[] disabled = new int[1];
+    // incremented on every change, to upload the mask only when needed
+    private int version;
+
+    public PrintfSiteMask(PrintfSiteTable table) {
+        this.table = Objects.requireNonNull(table);
+    }
+
+    /**
+     * The table giving the ids of the call sites
+     */
+    public PrintfSiteTable getTable() {
+        return table;
+    }
+
+    public synchronized boolean isEnabled(int siteId) {
+        int word = siteId >>> 5;
+        return word >= disabled.length || (disabled[word] & 1 << (siteId & 31)) == 0;
+    }
+
+    /**
+     * Enables or disables the call site with the given id
+     *
+     * @throws IllegalArgumentException if no call site has this id
+     */
+    public synchronized void setEnabled(int siteId, boolean enabled) {
+        if (table.get(siteId) == null)
+            throw new IllegalArgumentException("Unknown call site id " + siteId);
+        int word = siteId >>> 5;
+        if (word >= disabled.length)
+            disabled = Arrays.copyOf(disabled, Math.max(word + 1, disabled.length * 2));
+        int bits = enabled ? disabled[word] & ~(1 << (siteId & 31)) : disabled[word] | 1 << (siteId & 31);
+        if (bits != disabled[word]) {
+            disabled[word] = bits;
+            ++version;
+        }
+    }
+
+    /**
+     * Enables or disables every registered call site matching the given predicate; returns the number of them
+     */
+    public synchronized int setEnabled(Predicate<PrintfCallSite> sites, boolean enabled) {
+        int count = 0;
+        for (int id = 0, size = table.size(); id < size; ++id)
+            if (sites.test(table.get(id))) {
+                setEnabled(id, enabled);
+                ++count;
+            }
+        return count;
+    }
+
+    /**
+     * Enables or disables the call sites of a source, see {@link PrintfOptions#withSourceName(String)}; returns the
+     * number of them
+     */
+    public int setSourceEnabled(String sourceName, boolean enabled) {
+        return setEnabled(site -> sourceName.equals(site.getSourceName()), enabled);
+    }
+
+    /**
+     * Enables or disables the call sites whose format string contains a match of the given regular expression; returns
+     * the number of them
+     */
+    public int setFormatEnabled(Pattern format, boolean enabled) {
+        return setEnabled(site -> format.matcher(site.getFormat()).find(), enabled);
+    }
+
+    /**
+     * Enables or disables every registered call site
+     */
+    public int setAllEnabled(boolean enabled) {
+        return setEnabled(site -> true, enabled);
+    }
+
+    /**
+     * Number of changes so far
+     */
+    synchronized int version() {
+        return version;
+    }
+
+    /**
+     * The mask as uploaded to the shaders, covering at least the given number of call sites
+     */
+    synchronized int[] words(int siteCount) {
+        return Arrays.copyOf(disabled, Math.max(disabled.length, (siteCount + 31) >>> 5));
+    }
+}
@@ -0,0 +1,93 @@
+package shaderprintf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Host-side table giving ids to printf call sites.<br/>
+ * Shaders preprocessed with {@link PrintfOptions#withFormatTable(boolean)} write the id of the call site instead of
+ * its format string; the same table is then needed to decode the print buffer.<br/>
+ * Registering a call site that is already known returns its existing id, so reloading a shader does not grow the
+ * table. Lookups are lock-free and can happen concurrently with registrations.
+ */
+public class PrintfSiteTable {
+
+    private final HashMap<PrintfCallSite, Integer> ids = new HashMap<>();
+    private volatile PrintfCallSite[] sites = new PrintfCallSite[16];
+    private volatile int count;
+    // tags of the layouts of the sources linked to the table
+    private volatile int layout;
+    // whether a registered call site counts its records, or is a printstat
+    private volatile boolean recordLimits, stats;
+
+    /**
+     * Returns the id of the given call site, registering it if needed
+     */
+    public synchronized int register(PrintfCallSite site) {
+        Integer id = ids.get(site);
+        if (id != null)
+            return id;
+
+        if (count == PreprocessedSource.SITE_ID_MASK)
+            throw new IllegalStateException("Too many printf call sites");
+        if (count == sites.length)
+            sites = Arrays.copyOf(sites, sites.length * 2);
+        sites[count] = site;
+        ids.put(site, count);
+        recordLimits |= site.getRecordLimit() > 0;
+        stats |= site.isStat();
+        return count++;
+    }
+
+    /**
+     * Returns the call site with the given id, null if there is none
+     */
+    public PrintfCallSite get(int id) {
+        // read the count first: the matching array and slot were published before it
+        int size = count;
+        PrintfCallSite[] current = sites;
+        return id >= 0 && id < size ? current[id] : null;
+    }
+
+    /**
+     * Number of registered call sites
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Declares that buffers decoded with this table may hold values printed with the given options; sources linked to
+     * the table declare their options themselves.<br/>
+     * The decoder only reads the call site ids, lengths and packed text markers of the layouts declared, so that a
+     * value overwriting a character when a buffer overflows still decodes as a character.
+     */
+    public void addLayout(PrintfOptions options) {
+        addLayout(options.layoutTags());
+    }
+
+    synchronized void addLayout(int tags) {
+        layout |= tags;
+    }
+
+    /**
+     * Tags of the layouts declared, see {@link PrintfOptions#layoutTags()}
+     */
+    int getLayout() {
+        return layout;
+    }
+
+    /**
+     * Whether a registered call site counts its records, see {@link PrintfOptions#withRecordLimit(int)}
+     */
+    boolean hasRecordLimits() {
+        return recordLimits;
+    }
+
+    /**
+     * Whether a registered call site is a printstat
+     */
+    boolean hasStats() {
+        return stats;
+    }
+}
@@ -28,18 +28,35 @@ package shaderprintf;
 
 import org.lwjgl.system.MemoryUtil;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.IllegalFormatConversionException;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL45.*;
 import static org.lwjgl.opengl.GL43.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.system.MemoryUtil.*;
 
@@ -48,10 +65,63 @@ public class ShaderPrintf {
     /** (added) here sizeof(unsigned) is set to 4 */
     private static final int SIZEOF_UNSIGNED = 4;
 
+    /** (added) Number of values read at once by {@link #writePrintBuffer(int, Appendable)} and its overloads */
+    static final int DEFAULT_CHUNK_SIZE = 64*1024;
+
+    /**
+     * Options used by {@link #addPrintToSource(String)} and {@link #glShaderSourcePrint(int, String...)}
+     */
+    private static volatile PrintfOptions options = PrintfOptions.DEFAULT;
+
+    /**
+     * Table of the call sites of every shader preprocessed through this class
+     */
+    private static PrintfSiteTable siteTable = new PrintfSiteTable();
+
+    /**
+     * Mask of the call sites of {@link #siteTable}, and the buffer it was last uploaded to
+     */
+    private static PrintfSiteMask siteMask = new PrintfSiteMask(siteTable);
+    private static int siteMaskBuffer;
+    private static int siteMaskVersion = -1;
+    private static int siteMaskWords;
+
+    /**
+     * Record counters and printstat statistics of the call sites, by print buffer: the buffer and its size in uints
+     */
+    private static final Map<Integer, int[]> siteCounters = new HashMap<>();
+    private static final Map<Integer, int[]> siteStats = new HashMap<>();
+
+    /**
+     * Calls binding print buffers, and the binding points of the print blocks of each program looked up so far, in the
+     * order of {@link #PRINT_BLOCKS}, -1 for the blocks a program does not have
+     */
+    private static PrintBindingBackend bindingBackend = new GLPrintBindingBackend();
+    private static final Map<Integer, int[]> programBindings = new HashMap<>();
+    private static final String[] PRINT_BLOCKS = {PreprocessedSource.PRINT_BLOCK, PreprocessedSource.MASK_BLOCK,
+            PreprocessedSource.COUNTER_BLOCK, PreprocessedSource.STAT_BLOCK};
+
+    /**
+     * Patterns clearing the counter of a print buffer, the record counters and the printstat statistics
+     */
+    private static final int[] COUNTER_START = {1};
+    private static final int[] NO_RECORDS = {0};
+
+    /**
+     * Metrics of the print buffers read back through this class
+     */
+    private static final PrintMetrics metrics = new PrintMetrics();
+
+    /**
+     * Cache used by {@link #glShaderSourcePrint(int, String...)}, null when disabled
+     */
+    private static volatile ShaderSourceCache sourceCache = new ShaderSourceCache(16*1024*1024);
+
     /**
      * Creates a shader storage buffer object to be used with the print functionality.<br/>
      * Any SSBO can be used, this is just for convenience and does nothing special.<br/>
-     * (added) The default size is set to 16*1024*1024
+     * (added) The default size is set to 16*1024*1024; to size buffers after what the shaders print and reuse them
+     * across frames, see {@link PrintBufferPool}
      */
     public static int createPrintBuffer() {
         return createPrintBuffer(16*1024*1024);
@@ -72,6 +142,12 @@ public class ShaderPrintf {
      */
     public static void deletePrintBuffer(int printBuffer) {
         glDeleteBuffers(printBuffer);
+        // (added) and the buffers kept for it
+        for (Map<Integer, int[]> siteBuffers : Arrays.asList(siteCounters, siteStats)) {
+            int[] siteBuffer = siteBuffers.remove(printBuffer);
+            if (siteBuffer != null)
+                bindingBackend.deleteBuffer(siteBuffer[0]);
+        }
     }
 
     /**
@@ -79,322 +155,711 @@ public class ShaderPrintf {
      */
     public static void bindPrintBuffer(int program, int printBuffer) {
         // reset the buffer; only first value relevant (writing position / size of output), rest is filled up to the index this states
-        ByteBuffer beginIterator = memCalloc(SIZEOF_UNSIGNED).putInt(0, 1);
-        glNamedBufferSubData(printBuffer, 0, beginIterator);
+        // (added) with a clear, which needs no client memory
+        resetPrintBuffer(printBuffer);
 
         // bind to whatever slot we happened to get
-        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, glGetProgramResourceIndex(program, GL_SHADER_STORAGE_BLOCK, "printBuffer"), printBuffer);
+        // (added) the slots of a program are only looked up on its first bind
+        bindPrintBlocks(program, printBuffer);
+    }
 
-        memFree(beginIterator); // (added) valid because glNamedBufferSubData **copies** the content
+    /**
+     * (added) Binds a print buffer to the binding point given to the programs with
+     * {@link PrintfOptions#withBinding(int)}, along with the buffers kept for it on the next three binding points, and
+     * resets it. The record counters and the printstat statistics are only created and bound once a program counting
+     * records or calling printstat was linked.<br/>
+     * The binding holds for every draw/dispatch call using these programs until the binding points are bound again:
+     * call it once per frame, instead of {@link #bindPrintBuffer(int, int)} for each program.
+     */
+    public static void bindPrintBufferBase(int binding, int printBuffer) {
+        if (binding < 0)
+            throw new IllegalArgumentException("Invalid binding point " + binding);
+        resetPrintBuffer(printBuffer);
+        bindingBackend.bindBuffer(binding, printBuffer);
+        bindingBackend.bindBuffer(binding + 1, siteMaskBuffer());
+        if (siteTable.hasRecordLimits())
+            bindingBackend.bindBuffer(binding + 2, siteBuffer(siteCounters, printBuffer, siteTable.size(), NO_RECORDS));
+        if (siteTable.hasStats())
+            bindingBackend.bindBuffer(binding + 3, siteBuffer(siteStats, printBuffer, siteTable.size() * PrintStat.SLOT_SIZE, PrintStat.EMPTY_SLOT));
     }
 
     /**
-     * Fetches the printed buffer from VRAM and turns it into an String
+     * (added) Sets the writing position of a print buffer back to its first value, and clears the record counters and
+     * printstat statistics kept for it.<br/>
+     * {@link #bindPrintBuffer(int, int)} and {@link #bindPrintBufferBase(int, int)} already call it.
      */
-    public static String getPrintBufferString(int printBuffer) {
-        // get the size of what we want to read and the size of the print buffer
-        ByteBuffer printedSizePointer = memAlloc(SIZEOF_UNSIGNED);
-        IntBuffer bufferSizePointer = memAllocInt(1);
-        glGetNamedBufferSubData(printBuffer, 0, printedSizePointer);
-        glGetNamedBufferParameteriv(printBuffer, GL_BUFFER_SIZE, bufferSizePointer);
+    public static void resetPrintBuffer(int printBuffer) {
+        bindingBackend.clear(printBuffer, 1, COUNTER_START);
+        int[] counters = siteCounters.get(printBuffer);
+        if (counters != null)
+            bindingBackend.clear(counters[0], counters[1], NO_RECORDS);
+        int[] stats = siteStats.get(printBuffer);
+        if (stats != null)
+            bindingBackend.clear(stats[0], stats[1], PrintStat.EMPTY_SLOT);
+    }
 
-        int bufferSize = bufferSizePointer.get(0);
-        int printedSize = printedSizePointer.getInt()-1;
-        memFree(bufferSizePointer);
-        memFree(printedSizePointer);
+    /**
+     * Binds a print buffer and the buffers kept for it to the blocks of a program, without resetting them
+     */
+    static void bindPrintBlocks(int program, int printBuffer) {
+        int[] bindings = programBindings(program);
+        if (bindings[0] != -1)
+            bindingBackend.bindBuffer(bindings[0], printBuffer);
+        if (bindings[1] != -1)
+            bindingBackend.bindBuffer(bindings[1], siteMaskBuffer());
+        if (bindings[2] != -1)
+            bindingBackend.bindBuffer(bindings[2], siteBuffer(siteCounters, printBuffer, siteTable.size(), NO_RECORDS));
+        if (bindings[3] != -1)
+            bindingBackend.bindBuffer(bindings[3], siteBuffer(siteStats, printBuffer, siteTable.size() * PrintStat.SLOT_SIZE, PrintStat.EMPTY_SLOT));
+    }
 
-        bufferSize /= SIZEOF_UNSIGNED;
+    /**
+     * (added) Binds the mask of {@link #getSiteMask()} to the current program, uploading it first if it changed; does
+     * nothing for programs preprocessed without {@link PrintfOptions#withSiteMask(boolean)}.<br/>
+     * {@link #bindPrintBuffer(int, int)} already calls it.
+     */
+    public static void bindSiteMask(int program) {
+        int binding = programBindings(program)[1];
+        if (binding != -1)
+            bindingBackend.bindBuffer(binding, siteMaskBuffer());
+    }
 
-        // make sure we're not reading past the maximum size
-        if (printedSize > bufferSize)
-            printedSize = bufferSize;
+    /**
+     * The buffer of the site mask, uploaded first if it changed
+     */
+    private static int siteMaskBuffer() {
+        // the mask must cover every registered call site, including the ones registered since the last upload
+        int siteCount = Math.max(1, siteTable.size());
+        if (siteMaskBuffer == 0)
+            siteMaskBuffer = bindingBackend.createBuffer();
+        if (siteMask.version() != siteMaskVersion || (siteCount + 31) >>> 5 > siteMaskWords) {
+            siteMaskVersion = siteMask.version();
+            int[] words = siteMask.words(siteCount);
+            siteMaskWords = words.length;
+            bindingBackend.upload(siteMaskBuffer, words);
+        }
+        return siteMaskBuffer;
+    }
+
+    /**
+     * The buffer kept for a print buffer in the given map, created or grown to hold at least the given number of uints;
+     * new storage is cleared with the given pattern
+     */
+    private static int siteBuffer(Map<Integer, int[]> siteBuffers, int printBuffer, int size, int[] pattern) {
+        int[] siteBuffer = siteBuffers.computeIfAbsent(printBuffer, buffer -> new int[]{bindingBackend.createBuffer(), 0});
+        if (siteBuffer[1] < size || siteBuffer[1] == 0) {
+            // whole slots of 64 uints, so that statistics slots are never cut
+            siteBuffer[1] = Math.max(64, Math.max(size + 63 & ~63, siteBuffer[1] * 2));
+            bindingBackend.allocate(siteBuffer[0], siteBuffer[1]);
+            bindingBackend.clear(siteBuffer[0], siteBuffer[1], pattern);
+        }
+        return siteBuffer[0];
+    }
+
+    /**
+     * Binding points of the print blocks of a program, looked up on its first bind
+     */
+    private static int[] programBindings(int program) {
+        int[] bindings = programBindings.get(program);
+        if (bindings != null)
+            return bindings;
+        bindings = new int[PRINT_BLOCKS.length];
+        int[] indices = new int[PRINT_BLOCKS.length];
+        boolean shared = false;
+        for (int i = 0; i < PRINT_BLOCKS.length; ++i) {
+            indices[i] = bindingBackend.getBlockIndex(program, PRINT_BLOCKS[i]);
+            bindings[i] = indices[i] != GL_INVALID_INDEX ? bindingBackend.getBlockBinding(program, indices[i]) : -1;
+            for (int j = 0; j < i; ++j)
+                shared |= bindings[i] != -1 && bindings[i] == bindings[j];
+        }
+        // blocks declared without a binding point share binding point 0, each is then given the one equal to its index
+        if (shared) {
+            for (int i = 0; i < PRINT_BLOCKS.length; ++i) {
+                if (bindings[i] != -1) {
+                    bindingBackend.setBlockBinding(program, indices[i], indices[i]);
+                    bindings[i] = indices[i];
+                }
+            }
+        }
+        programBindings.put(program, bindings);
+        return bindings;
+    }
+
+    /**
+     * (added) Forgets the binding points looked up for a program; call it after relinking or deleting a program whose
+     * print buffer was bound
+     */
+    public static void forgetProgram(int program) {
+        programBindings.remove(program);
+    }
+
+    /**
+     * (added) Sets the calls used to bind print buffers, {@link GLPrintBindingBackend} by default. The binding points
+     * looked up and the buffers kept for print buffers are forgotten, not deleted: set it before binding anything.
+     */
+    public static void setBindingBackend(PrintBindingBackend backend) {
+        bindingBackend = Objects.requireNonNull(backend);
+        forgetBindings();
+    }
+
+    /**
+     * Replaces the table of the call sites and its mask, forgetting the bindings like
+     * {@link #setBindingBackend(PrintBindingBackend)}; lets tests start from an empty table
+     */
+    static void setSiteTable(PrintfSiteTable table) {
+        siteTable = Objects.requireNonNull(table);
+        siteMask = new PrintfSiteMask(table);
+        forgetBindings();
+    }
+
+    private static void forgetBindings() {
+        programBindings.clear();
+        siteCounters.clear();
+        siteStats.clear();
+        siteMaskBuffer = 0;
+        siteMaskVersion = -1;
+        siteMaskWords = 0;
+    }
+
+    /**
+     * (added) Reads which call sites reached their record limit since the print buffer was last bound, and how many
+     * records they dropped at least, for programs preprocessed with {@link PrintfOptions#withRecordLimit(int)}
+     */
+    public static PrintfDropReport getDroppedRecords(int printBuffer) {
+        return new PrintfDropReport(siteTable, readSiteBuffer(siteCounters, printBuffer, siteTable.size()));
+    }
+
+    /**
+     * (added) Reads the statistics of the printstat calls since the print buffer was last bound
+     */
+    public static PrintStatTable getPrintStats(int printBuffer) {
+        return PrintStatTable.of(readSiteBuffer(siteStats, printBuffer, siteTable.size() * PrintStat.SLOT_SIZE), siteTable);
+    }
+
+    private static int[] readSiteBuffer(Map<Integer, int[]> siteBuffers, int printBuffer, int size) {
+        int[] siteBuffer = siteBuffers.get(printBuffer);
+        int[] values = new int[siteBuffer != null ? Math.min(siteBuffer[1], size) : 0];
+        if (values.length > 0)
+            bindingBackend.read(siteBuffer[0], values);
+        return values;
+    }
+
+    /**
+     * Fetches the printed buffer from VRAM and turns it into an String
+     */
+    public static String getPrintBufferString(int printBuffer) {
+        return getPrintBufferString(printBuffer, siteTable);
+    }
+
+    /**
+     * Fetches the printed buffer from VRAM and turns it into an String, looking call sites up in the given table
+     */
+    public static String getPrintBufferString(int printBuffer, PrintfSiteTable table) {
+        int printedSize = getPrintedSize(printBuffer);
 
         // this vector will hold the CPU copy of the print buffer
         int[] printfData = new int[printedSize]; // (added) here we start at 0 because Java allows to directly get the length of the array
 
         // get the rest of the buffer data (the actual text)
+        long start = System.nanoTime();
         glGetNamedBufferSubData(printBuffer, SIZEOF_UNSIGNED, printfData);
+        metrics.recordReadback((long) printedSize * SIZEOF_UNSIGNED, System.nanoTime() - start); // (added)
+
+        return decodePrintBuffer(printfData, printedSize, table);
+    }
 
-        // the final string we're going to build
+    /**
+     * (added) Turns the values read back from a print buffer, its first value excluded, into a String the way
+     * {@link #getPrintBufferString(int, PrintfSiteTable)} does, metrics included; needs no GL context
+     */
+    static String decodePrintBuffer(int[] printfData, int printedSize, PrintfSiteTable table) {
+        // counting the records of each call site
+        long start = System.nanoTime();
         StringBuilder result = new StringBuilder();
+        PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+        decoder.countSiteRecords();
+        decoder.decode(printfData, printedSize, result);
+        decoder.flushSiteRecords(metrics);
+        metrics.recordDecode(System.nanoTime() - start);
+        return result.toString();
+    }
 
-        // (added) used to print numbers
-        StringBuilder format = new StringBuilder();
+    /**
+     * (added) Fetches the printed buffer from VRAM and turns it into an String, formatting each distinct record once:
+     * repeated records are printed once with their number of repeats
+     */
+    public static String getPrintBufferString(int printBuffer, PrintDeduplication deduplication) {
+        return getPrintBufferString(printBuffer, siteTable, deduplication);
+    }
 
+    /**
+     * (added) Fetches the printed buffer from VRAM and turns it into an String, formatting each distinct record once and
+     * looking call sites up in the given table
+     */
+    public static String getPrintBufferString(int printBuffer, PrintfSiteTable table, PrintDeduplication deduplication) {
+        int[] printfData = readPrintBuffer(printBuffer);
+        long start = System.nanoTime();
+        StringBuilder result = new StringBuilder();
+        PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+        decoder.countSiteRecords();
+        decoder.decode(printfData, printfData.length, Objects.requireNonNull(deduplication), result);
+        decoder.flushSiteRecords(metrics);
+        metrics.recordDecode(System.nanoTime() - start);
+        return result.toString();
+    }
 
-        // to hold the temporary results of formatting
-        //char[] intermediate = new char[1024]; (added) moved to second inner for-loop to use Java's standard library
+    /**
+     * (added) Fetches the printed buffer from VRAM and turns it into an String, decoding it on all cores.<br/>
+     * The buffer is first split into ranges, which is quick for records written with
+     * {@link PrintfOptions#isLengthPrefix()} and walks the others value by value.
+     */
+    public static String getPrintBufferStringParallel(int printBuffer) {
+        return getPrintBufferStringParallel(printBuffer, siteTable, ForkJoinPool.commonPool());
+    }
 
-        // this loop parses the formatting of the result
-        for(int i = 0; i < printedSize; i++) {
-            // % indicates the beginning of a formatted input
-            if ((char)printfData[i] == '%') {
-                // if followed by another %, we're actually supposed to print '%'
-                if ((char)printfData[i + 1] == '%') {
-                    result.append("%");
-                    i++;
-                }
-                // otherwise we'll be printing numbers
-                else {
-                    // first parse out the possible vector size
-                    int vecSize = 1;
-                    format.setLength(0); // (added) clears the builder
-                    while (!"eEfFgGdiuoxXaA".contains(String.valueOf((char)printfData[i]))) {
-                        if ((char)printfData[i] == '^') {
-                            vecSize = (char)printfData[i + 1] - '0';
-                            i += 2;
-                        }
-                        else {
-                            format.append(String.valueOf((char)printfData[i]));
-                            i++;
-                        }
-                    }
-                    char formatChar = (char)printfData[i];
-                    if(formatChar == 'u') // (added), Java does not support unsigned integers
-                        formatChar = 'd';
-                    format.append(formatChar);
-
-                    // determine whether we'll have to do type conversion
-                    boolean isFloatType = !"diuoxX".contains(String.valueOf((char)printfData[i]));
-
-                    // print to a temporary buffer, add result to string (for vectors add parentheses and commas as in "(a, b, c)")
-                    if (vecSize > 1) result.append("(");
-
-                    for (int j = 0; j < vecSize; ++j) {
-                        i++;
-                        String intermediate;
-                        if (isFloatType)
-                            intermediate = String.format(format.toString(), Float.intBitsToFloat(printfData[i]));
-                        else
-                            intermediate = String.format(format.toString(), printfData[i]);
-                        result.append(intermediate);
-                        if (vecSize > 1 && j < vecSize - 1) result.append(", ");
-                    }
-
-                    if (vecSize > 1) result.append(")");
-                }
+    /**
+     * (added) Fetches the printed buffer from VRAM and turns it into an String on the threads of the given pool, looking
+     * call sites up in the given table
+     */
+    public static String getPrintBufferStringParallel(int printBuffer, PrintfSiteTable table, ForkJoinPool pool) {
+        int[] printfData = readPrintBuffer(printBuffer);
+        long start = System.nanoTime();
+        String text = PrintBufferDecoder.decodeParallel(printfData, printfData.length, table, pool, metrics);
+        metrics.recordDecode(System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM and indexes its records by call site and invocation
+     */
+    public static PrintRecordIndex getPrintRecordIndex(int printBuffer) {
+        return getPrintRecordIndex(printBuffer, siteTable);
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM and indexes its records by call site and invocation, looking call
+     * sites up in the given table
+     */
+    public static PrintRecordIndex getPrintRecordIndex(int printBuffer, PrintfSiteTable table) {
+        int[] printfData = readPrintBuffer(printBuffer);
+        return PrintRecordIndex.of(printfData, printfData.length, table);
+    }
+
+    /**
+     * (added) A view of the records of the printed buffer, read from VRAM page by page and formatted only when accessed;
+     * the buffer must not be reset or printed to while the view is used
+     */
+    public static PrintLog getPrintLog(int printBuffer) {
+        return getPrintLog(printBuffer, siteTable, PrintLog.DEFAULT_PAGE_SIZE, PrintLog.DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * (added) A view of the records of the printed buffer, read from VRAM <code>pageSize</code> values at a time, keeping
+     * the <code>maxPages</code> most recently used pages, and looking call sites up in the given table
+     */
+    public static PrintLog getPrintLog(int printBuffer, PrintfSiteTable table, int pageSize, int maxPages) {
+        return new PrintLog((from, values, offset, count) -> {
+            IntBuffer staging = memAllocInt(Math.max(1, count));
+            try {
+                staging.limit(count);
+                long start = System.nanoTime();
+                glGetNamedBufferSubData(printBuffer, (long)(from + 1) * SIZEOF_UNSIGNED, staging);
+                metrics.recordReadback((long) count * SIZEOF_UNSIGNED, System.nanoTime() - start);
+                staging.get(values, offset, count);
+            } finally {
+                memFree(staging);
             }
-            else // otherwise it's a single character, just add it to the result
-                result.append((char)printfData[i]);
-        }
+        }, getPrintedSize(printBuffer), table, pageSize, maxPages, 0);
+    }
 
-        // ... and we're done.
-        return result.toString();
+    /**
+     * (added) Appends the printed values of the buffer to a capture file, copying them from VRAM straight into the
+     * mapping of the file; they are decoded later with {@link PrintCaptureReader} or {@link CaptureDecoder}
+     */
+    public static void capturePrintBuffer(int printBuffer, PrintCaptureWriter capture) throws IOException {
+        ByteBuffer values = capture.beginFrame(getPrintedSize(printBuffer));
+        long start = System.nanoTime();
+        glGetNamedBufferSubData(printBuffer, SIZEOF_UNSIGNED, values);
+        metrics.recordReadback(values.capacity(), System.nanoTime() - start);
+        capture.endFrame();
     }
 
     /**
-     * (added) Implementation of C 'isspace' because {@link Character#isSpaceChar(char)} does not handle tabulations
+     * (added) Fetches the printed buffer from VRAM in chunks and appends its text to <code>out</code>.<br/>
+     * Memory use is bounded by the chunk size rather than by the size of the output.
      */
-    private static boolean isspace(char c) {
-        switch (c) {
-            case ' ': return true;
-            case '\t': return true;
-            case '\n': return true;
-            case '\u240B': return true;
-            case '\f': return true;
-            case '\r': return true;
-            default: return Character.isSpaceChar(c);
-        }
+    public static void writePrintBuffer(int printBuffer, Appendable out) throws IOException {
+        writePrintBuffer(printBuffer, siteTable, DEFAULT_CHUNK_SIZE, out);
     }
 
     /**
-     * Helper function that finds a function call
+     * (added) Fetches the printed buffer from VRAM <code>chunkSize</code> values at a time and appends its text to
+     * <code>out</code>, looking call sites up in the given table
      */
-    public static int findCall(final String source, final String function) {
-        // search for any occurrence of function name
-        int tentative = source.indexOf(function);
-        if (tentative == -1) {
-            return -1;
+    public static void writePrintBuffer(int printBuffer, PrintfSiteTable table, int chunkSize, Appendable out) throws IOException {
+        streamPrintBuffer(printBuffer, table, chunkSize, (text, last) -> {
+            out.append(text);
+            text.setLength(0);
+        });
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM in chunks and writes its text to <code>out</code>.<br/>
+     * Memory use is bounded by the chunk size rather than by the size of the output.
+     */
+    public static void writePrintBuffer(int printBuffer, Writer out) throws IOException {
+        writePrintBuffer(printBuffer, siteTable, DEFAULT_CHUNK_SIZE, out);
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM <code>chunkSize</code> values at a time and writes its text to
+     * <code>out</code>, looking call sites up in the given table
+     */
+    public static void writePrintBuffer(int printBuffer, PrintfSiteTable table, int chunkSize, Writer out) throws IOException {
+        char[] chars = new char[4096];
+        streamPrintBuffer(printBuffer, table, chunkSize, (text, last) -> {
+            // Writer.append would copy each chunk into a String
+            for (int from = 0; from < text.length(); from += chars.length) {
+                int to = Math.min(text.length(), from + chars.length);
+                text.getChars(from, to, chars, 0);
+                out.write(chars, 0, to - from);
+            }
+            text.setLength(0);
+        });
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM in chunks and writes its text as UTF-8 into <code>out</code>, from
+     * its position.<br/>
+     * Memory use is bounded by the chunk size rather than by the size of the output.
+     *
+     * @throws BufferOverflowException if the text does not fit in <code>out</code>; what fits is written
+     */
+    public static void writePrintBuffer(int printBuffer, ByteBuffer out) {
+        writePrintBuffer(printBuffer, siteTable, DEFAULT_CHUNK_SIZE, out);
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM <code>chunkSize</code> values at a time and writes its text as UTF-8
+     * into <code>out</code>, from its position, looking call sites up in the given table
+     *
+     * @throws BufferOverflowException if the text does not fit in <code>out</code>; what fits is written
+     */
+    public static void writePrintBuffer(int printBuffer, PrintfSiteTable table, int chunkSize, ByteBuffer out) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        streamPrintBuffer(printBuffer, table, chunkSize, (text, last) -> {
+            CharBuffer chars = CharBuffer.wrap(text);
+            if (encoder.encode(chars, out, last).isOverflow() || (last && encoder.flush(out).isOverflow()))
+                throw new BufferOverflowException();
+            // a surrogate pair cut by the end of the chunk stays for the next one
+            text.delete(0, chars.position());
+        });
+    }
+
+    /**
+     * (added) Fetches the printed buffer from VRAM and hands it to <code>decoder</code>, which decodes it on its own
+     * thread
+     *
+     * @return the sequence number given to the buffer, -1 if the decoder dropped it
+     */
+    public static long submitPrintBuffer(int printBuffer, AsyncPrintDecoder decoder) {
+        int printedSize = getPrintedSize(printBuffer);
+        IntBuffer printfData = memAllocInt(Math.max(1, printedSize));
+        printfData.limit(printedSize);
+        try {
+            long start = System.nanoTime();
+            glGetNamedBufferSubData(printBuffer, SIZEOF_UNSIGNED, printfData);
+            metrics.recordReadback((long) printedSize * SIZEOF_UNSIGNED, System.nanoTime() - start);
+            return decoder.submit(printfData);
+        } finally {
+            memFree(printfData);
         }
+    }
 
-        // see if it's inside a comment
-        boolean commentLong = false;
-        boolean commentRow = false;
-        for (int i = 0; i < tentative; ++i) {
-            if (source.charAt(i) == '/' && source.charAt(i + 1) == '*') commentLong = true;
-            if (source.charAt(i) == '*' && source.charAt(i + 1) == '/') commentLong = false;
-            if (source.charAt(i) == '/' && source.charAt(i + 1) == '/') commentRow = true;
-            if (source.charAt(i) == '\n') commentRow = false;
+    private static <E extends Exception> void streamPrintBuffer(int printBuffer, PrintfSiteTable table, int chunkSize, PrintBufferDecoder.TextSink<E> sink) throws E {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        int printedSize = getPrintedSize(printBuffer);
+
+        IntBuffer staging = memAllocInt(Math.max(1, Math.min(chunkSize, printedSize)));
+        try {
+            // reading and decoding alternate, the time spent reading is told apart
+            long[] readNanos = {0};
+            long start = System.nanoTime();
+            PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+            decoder.countSiteRecords();
+            decoder.decode((from, values, offset, count) -> {
+                long readStart = System.nanoTime();
+                staging.clear();
+                staging.limit(count);
+                glGetNamedBufferSubData(printBuffer, (long)(from + 1) * SIZEOF_UNSIGNED, staging);
+                staging.get(values, offset, count);
+                readNanos[0] += System.nanoTime() - readStart;
+            }, printedSize, staging.capacity(), sink);
+            decoder.flushSiteRecords(metrics);
+            metrics.recordReadback((long) printedSize * SIZEOF_UNSIGNED, readNanos[0]);
+            metrics.recordDecode(System.nanoTime() - start - readNanos[0]);
+        } finally {
+            memFree(staging);
         }
-        int tentativeEnd = tentative + function.length();
-        // if the tentative instance is not good...
-        if (commentRow || commentLong || // comment
-                (tentative > 0 && !isspace(source.charAt(tentative - 1))) || // is a part of a longer string
-                tentativeEnd >= source.length() || // is the end of the file
-                !(isspace(source.charAt(tentativeEnd)) || source.charAt(tentativeEnd) == '(')) { // is a part of a longer string
-            // ... find the next one
-            int result = findCall(source.substring(tentative + 1), function);
-            if (result == -1)
+    }
+
+    /**
+     * Number of values printed to the buffer, excluding its first value and limited to the size of the buffer
+     */
+    private static int getPrintedSize(int printBuffer) {
+        // get the size of what we want to read and the size of the print buffer
+        ByteBuffer printedSizePointer = memAlloc(SIZEOF_UNSIGNED);
+        IntBuffer bufferSizePointer = memAllocInt(1);
+        glGetNamedBufferSubData(printBuffer, 0, printedSizePointer);
+        glGetNamedBufferParameteriv(printBuffer, GL_BUFFER_SIZE, bufferSizePointer);
+
+        int bufferSize = bufferSizePointer.get(0);
+        // (added) the counter is a uint that keeps counting past the end of the buffer
+        long requestedSize = Math.max(0, Integer.toUnsignedLong(printedSizePointer.getInt()) - 1);
+        memFree(bufferSizePointer);
+        memFree(printedSizePointer);
+
+        bufferSize /= SIZEOF_UNSIGNED;
+
+        // make sure we're not reading past the maximum size
+        // (added) which excludes the counter itself
+        int printedSize = (int) Math.min(requestedSize, Math.max(0, bufferSize - 1));
+        metrics.recordFrame(requestedSize, printedSize);
+        return printedSize;
+    }
+
+    /**
+     * (added) Copies the printed values of a print buffer, without its first value
+     */
+    private static int[] readPrintBuffer(int printBuffer) {
+        int[] printfData = new int[getPrintedSize(printBuffer)];
+        long start = System.nanoTime();
+        glGetNamedBufferSubData(printBuffer, SIZEOF_UNSIGNED, printfData);
+        metrics.recordReadback((long) printfData.length * SIZEOF_UNSIGNED, System.nanoTime() - start);
+        return printfData;
+    }
+
+    /**
+     * Helper function that finds a function call
+     */
+    public static int findCall(final String source, final String function) {
+        // start of the part of the source being searched; the comment state restarts there after every rejected occurrence
+        int from = 0;
+        while (true) {
+            // search for any occurrence of function name
+            int tentative = source.indexOf(function, from);
+            if (tentative == -1) {
                 return -1;
-		    else
-                return tentative + 1 + result;
+            }
+
+            // see if it's inside a comment
+            boolean commentLong = false;
+            boolean commentRow = false;
+            for (int i = from; i < tentative; ++i) {
+                if (source.charAt(i) == '/' && source.charAt(i + 1) == '*') commentLong = true;
+                if (source.charAt(i) == '*' && source.charAt(i + 1) == '/') commentLong = false;
+                if (source.charAt(i) == '/' && source.charAt(i + 1) == '/') commentRow = true;
+                if (source.charAt(i) == '\n') commentRow = false;
+            }
+            int tentativeEnd = tentative + function.length();
+            // if the tentative instance is not good...
+            if (commentRow || commentLong || // comment
+                    (tentative > from && !PrintfChars.isspace(source.charAt(tentative - 1))) || // is a part of a longer string
+                    tentativeEnd >= source.length() || // is the end of the file
+                    !(PrintfChars.isspace(source.charAt(tentativeEnd)) || source.charAt(tentativeEnd) == '(')) { // is a part of a longer string
+                // ... find the next one
+                from = tentative + 1;
+            }
+            else // otherwise return it
+                return tentative;
         }
-    	else // otherwise return it
-            return tentative;
     }
 
     /**
      * A preprocessor for shader source
+     * <br/>The source is processed in a single pass with the current options, see {@link PrintfPreprocessor}
      */
     public static String addPrintToSource(String source) {
+        return addPrintToSource(source, options);
+    }
 
-        // get rid of comments beforehand
-        String commentedSource = source;
-        source = "";
-        // (added) manual swap here
-        //swap(source, commentedSource);
-
-        boolean commentLong = false;
-        boolean commentRow = false;
-        boolean inStringFlag = false; // (added) name change to avoid conflicts with variables with same name below
-        for (int i = 0; i < commentedSource.length(); ++i) {
-            if (commentedSource.charAt(i) == '"' && (i==0||commentedSource.charAt(i + 1) !='\\')) inStringFlag = !inStringFlag;
-            if (!inStringFlag) {
-                if (i < commentedSource.length() - 1 && commentedSource.charAt(i) == '/' && commentedSource.charAt(i + 1) == '*') { commentLong = true; i++; continue; }
-                if (i < commentedSource.length() - 1 && commentedSource.charAt(i) == '*' && commentedSource.charAt(i + 1) == '/') { commentLong = false; i++; continue; }
-                if (i < commentedSource.length() - 1 && commentedSource.charAt(i) == '/' && commentedSource.charAt(i + 1) == '/') { commentRow = true; i++; continue; }
-                if (commentedSource.charAt(i) == '\n') commentRow = false;
-            }
-            if (!commentLong && !commentRow)
-                source += String.valueOf(commentedSource.charAt(i));
-        }
-
-        // insert our buffer definition after the glsl version define
-        int version = source.indexOf("#version");
-        int lineAfterVersion = 2, bufferInsertOffset = 0;
+    /**
+     * A preprocessor for shader source, using the given options; call sites are registered in the default table
+     */
+    public static String addPrintToSource(String source, PrintfOptions options) {
+        return preprocess(source, options).link(siteTable);
+    }
 
-        if (version != -1) {
-            ++bufferInsertOffset;
+    /**
+     * Runs the preprocessor without registering call sites anywhere; the result is linked to a table with
+     * {@link PreprocessedSource#link(PrintfSiteTable)}
+     */
+    public static PreprocessedSource preprocess(String source, PrintfOptions options) {
+        return PrintfPreprocessor.process(source, options);
+    }
 
-            for (int i = 0; i < version; ++i)
-                if (source.charAt(i) == '\n')
-                    ++lineAfterVersion;
+    /**
+     * (added) Preprocesses sources on all cores with the current options, see
+     * {@link #addPrintToSources(Map, PrintfOptions, Executor)}
+     */
+    public static <K> CompletableFuture<Map<K, String>> addPrintToSources(Map<K, String> sources) {
+        return addPrintToSources(sources, options, batchExecutor());
+    }
 
-            for (int i = version; i < source.length(); ++i)
-                if (source.charAt(i) == '\n')
-                    break;
-                else
-                    bufferInsertOffset += 1;
+    /**
+     * (added) Preprocesses sources on the threads of <code>executor</code>, through the source cache if enabled, then
+     * registers their call sites in the default table in the iteration order of <code>sources</code>: the ids are the
+     * same as if the sources had been preprocessed one by one in that order, whatever thread finishes first.<br/>
+     * Nothing here needs the context; only the glShaderSource calls using the results do. If a source fails, the future
+     * fails with its exception and no call site is registered.
+     *
+     * @return the preprocessed sources by key, in the iteration order of <code>sources</code>
+     */
+    public static <K> CompletableFuture<Map<K, String>> addPrintToSources(Map<K, String> sources, PrintfOptions options, Executor executor) {
+        List<K> keys = new ArrayList<>(sources.size());
+        List<String> texts = new ArrayList<>(sources.size());
+        for (Map.Entry<K, String> source : sources.entrySet()) {
+            keys.add(source.getKey());
+            texts.add(source.getValue());
         }
+        return preprocessAll(texts, options, null, executor).thenApply(linked -> {
+            Map<K, String> result = new LinkedHashMap<>();
+            for (int i = 0; i < keys.size(); ++i)
+                result.put(keys.get(i), linked.get(i));
+            return result;
+        });
+    }
 
-        // go through all printfs in the shader
-        int printfLoc = findCall(source, "printf");
-        while (printfLoc != -1) {
+    /**
+     * (added) Replacement for glShaderSource for hot reloads: only the strings that changed since the last call with the
+     * same <code>source</code> are preprocessed again, see {@link IncrementalShaderSource}
+     */
+    public static void glShaderSourcePrint(int shader, IncrementalShaderSource source, final String... strings) {
+        PrintfOptions options = ShaderPrintf.options;
+        // the invocation key depends on the stage, which the shader object knows
+        if (options.isInvocationMetadata() && options.getStage() == null && !options.isStrip())
+            options = options.withStage(ShaderStage.fromGLType(glGetShaderi(shader, GL_SHADER_TYPE)));
+        glShaderSource(shader, source.update(options, strings));
+    }
 
-            int printfEndLoc = printfLoc;
+    /**
+     * (added) Batch replacement for glShaderSource: preprocesses the source of each shader on all cores, see
+     * {@link #glShaderSourcePrint(int[], String[], PrintfOptions, Executor)}
+     */
+    public static void glShaderSourcePrint(int[] shaders, String[] sources) {
+        glShaderSourcePrint(shaders, sources, options, batchExecutor());
+    }
 
-            int parentheses = 0;
-            boolean inString = false;
+    /**
+     * (added) Batch replacement for glShaderSource: preprocesses the source of each shader on the threads of
+     * <code>executor</code> and gives it to its shader, on the calling thread, which must own the context.<br/>
+     * Call site ids are the same as calling {@link #glShaderSourcePrint(int, PrintfOptions, String...)} for each
+     * shader in order. If a source fails, its exception is thrown and no shader gets its source.
+     */
+    public static void glShaderSourcePrint(int[] shaders, String[] sources, PrintfOptions options, Executor executor) {
+        if (shaders.length != sources.length)
+            throw new IllegalArgumentException(shaders.length + " shaders for " + sources.length + " sources");
+        // the stages are queried here, before leaving the thread owning the context
+        PrintfOptions[] shaderOptions = null;
+        if (options.isInvocationMetadata() && options.getStage() == null && !options.isStrip()) {
+            shaderOptions = new PrintfOptions[shaders.length];
+            for (int i = 0; i < shaders.length; ++i)
+                shaderOptions[i] = options.withStage(ShaderStage.fromGLType(glGetShaderi(shaders[i], GL_SHADER_TYPE)));
+        }
+        List<String> linked;
+        try {
+            linked = preprocessAll(Arrays.asList(sources), options, shaderOptions, executor).join();
+        } catch (CompletionException e) {
+            // rethrown as the preprocessor threw it, as for a single shader
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        for (int i = 0; i < shaders.length; ++i)
+            glShaderSource(shaders[i], linked.get(i));
+    }
 
-            // gather the arguments
-            LinkedList<String> args = new LinkedList<>();
-            while (true) {
+    /**
+     * The common pool, or the calling thread on a single core, where handing tasks to the pool only adds overhead
+     */
+    private static Executor batchExecutor() {
+        return ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : Runnable::run;
+    }
 
-                printfEndLoc++; // FIXME: semble être la source d'erreur
+    /**
+     * Preprocesses sources in parallel, with the given options or with their own if <code>sourceOptions</code> is not
+     * null, and links them in order once all are done
+     */
+    private static CompletableFuture<List<String>> preprocessAll(List<String> sources, PrintfOptions options, PrintfOptions[] sourceOptions, Executor executor) {
+        ShaderSourceCache cache = sourceCache;
+        List<CompletableFuture<PreprocessedSource>> futures = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); ++i) {
+            String source = sources.get(i);
+            PrintfOptions thisOptions = sourceOptions != null ? sourceOptions[i] : options;
+            futures.add(CompletableFuture.supplyAsync(() -> cache != null ? cache.preprocess(source, thisOptions) : preprocess(source, thisOptions), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            // linking assigns the ids, so it runs in order, on a single thread
+            List<String> linked = new ArrayList<>(futures.size());
+            for (CompletableFuture<PreprocessedSource> future : futures)
+                linked.add(future.join().link(siteTable));
+            return linked;
+        });
+    }
 
-                if (!inString && parentheses == 1 && source.charAt(printfEndLoc) == ',') {
-                    String arg = "";
+    /**
+     * Sets the options used by {@link #addPrintToSource(String)} and {@link #glShaderSourcePrint(int, String...)}
+     */
+    public static void setOptions(PrintfOptions options) {
+        ShaderPrintf.options = Objects.requireNonNull(options);
+    }
 
-                    int argLoc = printfEndLoc + 1;
-                    int argParentheses = 0;
-                    while (argParentheses > 0 || source.charAt(argLoc) != ',') {
-                        if (source.charAt(argLoc) == '(') ++argParentheses;
-                        if (source.charAt(argLoc) == ')') --argParentheses;
-                        if (argParentheses < 0) break;
-                        if (source.charAt(argLoc) != ' ')
-                            arg = arg + String.valueOf(source.charAt(argLoc));
-                        ++argLoc;
-                    }
-                    args.add(arg);
-                }
+    /**
+     * Returns the options used by {@link #addPrintToSource(String)} and {@link #glShaderSourcePrint(int, String...)}
+     */
+    public static PrintfOptions getOptions() {
+        return options;
+    }
 
-                if (source.charAt(printfEndLoc) == '"')
-                    inString = !inString;
-                if (source.charAt(printfEndLoc) == '\\')
-                    ++printfEndLoc;
-                if (!inString && source.charAt(printfEndLoc) == '(')
-                    parentheses++;
-                if (!inString && source.charAt(printfEndLoc) == ')') {
-                    parentheses--;
-                    if (parentheses == 0) {
-                        do { printfEndLoc++; } while (source.charAt(printfEndLoc) != ';');
-                        break;
-                    }
-                }
-            }
+    /**
+     * Returns the table of the call sites of every shader preprocessed through this class, used to decode print buffers
+     */
+    public static PrintfSiteTable getSiteTable() {
+        return siteTable;
+    }
 
-            // come up with a list of data insertions that match the printf call
-            String replacement = "";
-            int argumentIndex = 0, writeSize = 0;
-            inString = false;
-            for (int i = printfLoc; i < printfEndLoc; ++i) {
-
-                if (source.charAt(i) == '"')
-                    inString = !inString;
-                if (inString && source.charAt(i) == '\\') {
-                    char ch = '\\';
-                    switch (source.charAt(i + 1)) {
-                        case '\'': ch = '\''; break;
-                        case '\"': ch = '\"'; break;
-                        case '?': ch = '?'; break;
-                        case '\\': ch = '\\'; break;
-                        case 'a': ch = '\u0007'; break; // (added) BELL character
-                        case 'b': ch = '\b'; break;
-                        case 'f': ch = '\f'; break;
-                        case 'n': ch = '\n'; break;
-                        case 'r': ch = '\r'; break;
-                        case 't': ch = '\t'; break;
-                        case 'v': ch = '\u240B'; break; // (added) vertical tab
-                        default: ch = ' ';
-                    }
-                    replacement += "printData[printIndex++]=" + String.valueOf((int)ch) + ";";
-                    writeSize++;
-                    i++;
-                }
-                else if (inString && source.charAt(i) != '"') {
-                    replacement += "printData[printIndex++]=" + String.valueOf((int)source.charAt(i)) + ";";
-                    writeSize++;
-                }
-                if (inString && source.charAt(i) == '%')
-                    if (source.charAt(i + 1) == '%') {
-                    i++;
-                    replacement += "printData[printIndex++]=" + String.valueOf((int)source.charAt(i)) + ";";
-                    writeSize++;
-                }
-                else {
-                    int vecSize = 1;
-                    while (!"eEfFgGdiuoxXaA".contains(String.valueOf(source.charAt(i)))) {
-                        // a special feature to support vector prints
-                        if (source.charAt(i) == '^')
-                            vecSize = source.charAt(i + 1) - '0';
-                        i++;
-                        replacement += "printData[printIndex++]=" + String.valueOf((int)source.charAt(i)) + ";";
-                        writeSize++;
-                    }
-                    // store the actual data in the element after the format string
-                    for (int j = 0; j < vecSize; ++j) {
-                        String arg = args.get(argumentIndex);
-                        if (vecSize > 1)
-                            arg = "(" + arg + ")." + "xyzw".charAt(j);
-                        switch (source.charAt(i)) {
-                            case 'e': case 'E': case 'f': case 'F': case 'g': case 'G': case 'x': case 'X':
-                                replacement += "printData[printIndex++]=floatBitsToUint(" + arg + ");"; break;
-                            default:
-                                replacement += "printData[printIndex++]=" + arg + ";"; break;
-                        }
-                        writeSize++;
-                    }
-                    argumentIndex++;
-                }
-            }
+    /**
+     * (added) Returns the mask switching the call sites of {@link #getSiteTable()} on and off at runtime, see
+     * {@link PrintfOptions#withSiteMask(boolean)}
+     */
+    public static PrintfSiteMask getSiteMask() {
+        return siteMask;
+    }
 
-            source = source.substring(0, printfLoc) + "if(printfWriter){" + "uint printIndex=min(atomicAdd(printData[0]," + String.valueOf(writeSize) + "u),printData.length()-" + String.valueOf(writeSize) + "u);" + replacement + "}" + source.substring(printfEndLoc + 1);
+    /**
+     * (added) Returns the metrics of the print buffers read back through this class and through {@link PrintBufferRing}:
+     * overflows, values requested and stored, records per call site, readback bytes and latencies
+     */
+    public static PrintMetrics getMetrics() {
+        return metrics;
+    }
 
-            printfLoc = findCall(source, "printf");
-        }
+    /**
+     * Sets the cache of preprocessed sources used by {@link #glShaderSourcePrint(int, String...)}; null disables caching.
+     * <br/>The default cache keeps up to 16MB of sources in memory only.
+     */
+    public static void setSourceCache(ShaderSourceCache cache) {
+        sourceCache = cache;
+    }
 
-        // insert the ssbo definition and some helper functions after the #version line
-        return source.substring(0, bufferInsertOffset) + "\nbuffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}\n#line " + String.valueOf(lineAfterVersion) + "\n" + source.substring(bufferInsertOffset);
+    /**
+     * Returns the cache of preprocessed sources used by {@link #glShaderSourcePrint(int, String...)}, null if disabled
+     */
+    public static ShaderSourceCache getSourceCache() {
+        return sourceCache;
     }
 
     /**
@@ -402,15 +867,26 @@ public class ShaderPrintf {
      * <br/>(added) variable length argument for 'strings' for convenience
      */
     public static void glShaderSourcePrint(int shader, final String... strings) {
+        glShaderSourcePrint(shader, options, strings);
+    }
+
+    /**
+     * Replacement for glShaderSource that parses printf commands into buffer insertions, using the given options
+     */
+    public static void glShaderSourcePrint(int shader, PrintfOptions options, final String... strings) {
         // first combine all of the potential source files to a single string
-        String source = "";
+        StringBuilder combined = new StringBuilder();
         for (int i = 0; i < strings.length; ++i) {
-            source += strings[i];
+            combined.append(strings[i]);
         }
-        // parse
-        source = addPrintToSource(source);
+        // (added) the invocation key depends on the stage, which the shader object knows
+        if (options.isInvocationMetadata() && options.getStage() == null && !options.isStrip())
+            options = options.withStage(ShaderStage.fromGLType(glGetShaderi(shader, GL_SHADER_TYPE)));
+        // parse, unless the same source has already been parsed
+        ShaderSourceCache cache = sourceCache;
+        PreprocessedSource preprocessed = cache != null ? cache.preprocess(combined.toString(), options) : preprocess(combined.toString(), options);
 
         // do the compilation
-        glShaderSource(shader, source);
+        glShaderSource(shader, preprocessed.link(siteTable));
     }
 }
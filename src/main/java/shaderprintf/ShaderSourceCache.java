@@ -0,0 +1,236 @@
+package shaderprintf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of preprocessed shader sources, see {@link ShaderPrintf#addPrintToSource(String)}.<br/>
+ * Entries are addressed by the SHA-256 of the source, the preprocessor version and its options, so identical sources
+ * (hot reloads, permutations sharing a body) are only preprocessed once. Results are cached before call site ids are
+ * assigned, so they stay valid across processes and {@link PrintfSiteTable}s.<br/>
+ * The in-memory part is a LRU bounded by an estimate of the bytes held. An optional directory keeps the entries across
+ * process restarts; failing to read or write it only costs a cache miss, and a corrupt entry is deleted.
+ */
+public class ShaderSourceCache {
+
+    /** Rough per-entry overhead of the map, the key and the String objects */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, PreprocessedSource> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an in-memory cache holding at most about <code>maxBytes</code> bytes of sources
+     */
+    public ShaderSourceCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a cache holding at most about <code>maxBytes</code> bytes of sources in memory, backed by the given
+     * directory (created if needed). A null directory disables the on-disk store.
+     */
+    public ShaderSourceCache(long maxBytes, Path directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Same as {@link ShaderPrintf#addPrintToSource(String)}, but reuses the cached result when the same source has
+     * already been preprocessed with the same options
+     */
+    public String addPrintToSource(String source) {
+        return preprocess(source, ShaderPrintf.getOptions()).link(ShaderPrintf.getSiteTable());
+    }
+
+    /**
+     * Same as {@link ShaderPrintf#preprocess(String, PrintfOptions)}, but returns the cached result when the same source
+     * has already been preprocessed with the same options
+     */
+    public PreprocessedSource preprocess(String source, PrintfOptions options) {
+        String key = key(source, options);
+        synchronized (this) {
+            PreprocessedSource processed = entries.get(key);
+            if (processed != null) {
+                hits++;
+                return processed;
+            }
+        }
+
+        PreprocessedSource processed = read(key);
+        if (processed != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        }
+        else {
+            synchronized (this) {
+                misses++;
+            }
+            processed = PrintfPreprocessor.process(source, options);
+            write(key, processed);
+        }
+        put(key, processed);
+        return processed;
+    }
+
+    /**
+     * Empties the in-memory part of the cache; the on-disk store is kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Number of lookups answered from memory
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Number of lookups answered from the on-disk store
+     */
+    public synchronized long getDiskHitCount() {
+        return diskHits;
+    }
+
+    /**
+     * Number of lookups that had to run the preprocessor
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Number of entries dropped from memory to stay under the size bound
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Estimated number of bytes currently held in memory
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    private synchronized void put(String key, PreprocessedSource processed) {
+        long size = sizeOf(key, processed);
+        if (size > maxBytes || entries.containsKey(key))
+            return;
+        entries.put(key, processed);
+        bytes += size;
+
+        // drop the least recently used entries until we fit again
+        Iterator<Map.Entry<String, PreprocessedSource>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, PreprocessedSource> eldest = iterator.next();
+            bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(String key, PreprocessedSource processed) {
+        return ENTRY_OVERHEAD + 2L * key.length() + processed.sizeInBytes();
+    }
+
+    private PreprocessedSource read(String key) {
+        if (directory == null)
+            return null;
+        Path file = directory.resolve(key + ".spp");
+        if (!Files.isRegularFile(file))
+            return null;
+        try (InputStream in = Files.newInputStream(file)) {
+            return PreprocessedSource.read(new DataInputStream(new BufferedInputStream(in)));
+        }
+        catch (IOException | RuntimeException e) {
+            // truncated or corrupt: preprocessed again, and written anew
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    private void write(String key, PreprocessedSource processed) {
+        if (directory == null)
+            return;
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first so that concurrent readers never see a partial entry
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                processed.write(data);
+                data.flush();
+            }
+            Files.move(temporary, directory.resolve(key + ".spp"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            // the entry will simply be preprocessed again next time
+            try {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Hex encoded SHA-256 of the preprocessor version, its options and the source
+     */
+    static String key(String source, PrintfOptions options) {
+        return key(PrintfPreprocessor.VERSION, source, options);
+    }
+
+    static String key(String version, String source, PrintfOptions options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", e);
+        }
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.key().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; ++i) {
+            hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,57 @@
+package shaderprintf;
+
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL40.*;
+import static org.lwjgl.opengl.GL43.*;
+
+/**
+ * Shader stages, with the built-in variables identifying an invocation of each; see
+ * {@link PrintfOptions#isInvocationMetadata()}
+ */
+public enum ShaderStage {
+    /** Invocation key: gl_VertexID, gl_InstanceID, 0 */
+    VERTEX(GL_VERTEX_SHADER, "gl_VertexID", "gl_InstanceID", "0"),
+    /** Invocation key: gl_PrimitiveID, gl_InvocationID, 0 */
+    TESS_CONTROL(GL_TESS_CONTROL_SHADER, "gl_PrimitiveID", "gl_InvocationID", "0"),
+    /** Invocation key: gl_PrimitiveID, 0, 0 */
+    TESS_EVALUATION(GL_TESS_EVALUATION_SHADER, "gl_PrimitiveID", "0", "0"),
+    /** Invocation key: gl_PrimitiveIDIn, gl_InvocationID, 0 */
+    GEOMETRY(GL_GEOMETRY_SHADER, "gl_PrimitiveIDIn", "gl_InvocationID", "0"),
+    /** Invocation key: the pixel coordinates from gl_FragCoord.xy, 0 */
+    FRAGMENT(GL_FRAGMENT_SHADER, "gl_FragCoord.x", "gl_FragCoord.y", "0"),
+    /** Invocation key: gl_GlobalInvocationID.xyz */
+    COMPUTE(GL_COMPUTE_SHADER, "gl_GlobalInvocationID.x", "gl_GlobalInvocationID.y", "gl_GlobalInvocationID.z");
+
+    private final int glType;
+    private final String[] invocationKey;
+
+    ShaderStage(int glType, String... invocationKey) {
+        this.glType = glType;
+        this.invocationKey = invocationKey;
+    }
+
+    /**
+     * The shader type of this stage, as given to glCreateShader
+     */
+    public int getGLType() {
+        return glType;
+    }
+
+    /**
+     * GLSL expression of a component of the invocation key
+     */
+    String invocationKey(int component) {
+        return invocationKey[component];
+    }
+
+    /**
+     * The stage of a shader type, as given to glCreateShader
+     */
+    public static ShaderStage fromGLType(int glType) {
+        for (ShaderStage stage : values())
+            if (stage.glType == glType)
+                return stage;
+        throw new IllegalArgumentException("Unknown shader type 0x" + Integer.toHexString(glType));
+    }
+}
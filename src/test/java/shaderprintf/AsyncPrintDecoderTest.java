@@ -0,0 +1,204 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class AsyncPrintDecoderTest {
+
+    /**
+     * Collects the text of the records, the first one waiting for <code>release</code>
+     */
+    static final class Listener implements PrintRecordListener {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> records = new ArrayList<>();
+        final List<Long> batches = new ArrayList<>();
+
+        @Override
+        public void onRecord(PrintRecord record) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (this) {
+                records.add(record.getText());
+            }
+        }
+
+        @Override
+        public synchronized void onBatchEnd(long batch) {
+            batches.add(batch);
+        }
+
+        synchronized List<String> getRecords() {
+            return new ArrayList<>(records);
+        }
+    }
+
+    static long submit(AsyncPrintDecoder decoder, String text) {
+        int[] values = PrintBufferDecoderTest.chars(text);
+        return decoder.submit(values, 0, values.length);
+    }
+
+    /**
+     * A decoder of capacity 1 busy with the buffer "a", "b" waiting
+     */
+    static AsyncPrintDecoder busyDecoder(AsyncPrintDecoder.OverflowPolicy policy, Listener listener) throws InterruptedException {
+        AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 1, policy);
+        decoder.addListener(listener);
+        assertEquals(0, submit(decoder, "a\n"));
+        listener.started.await();
+        assertEquals(1, submit(decoder, "b\n"));
+        return decoder;
+    }
+
+    @Test
+    public void recordsReachTheListenersInOrder() throws InterruptedException {
+        Listener listener = new Listener();
+        listener.release.countDown();
+        try (AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 4, AsyncPrintDecoder.OverflowPolicy.BLOCK)) {
+            decoder.addListener(listener);
+            // the values around the submitted ones are not copied
+            int[] values = PrintBufferDecoderTest.chars("xa\nb\ny");
+            assertEquals(0, decoder.submit(values, 1, 4));
+            assertEquals(1, submit(decoder, "c\n"));
+            decoder.flush();
+        }
+        assertEquals(Arrays.asList("a\n", "b\n", "c\n"), listener.getRecords());
+        assertEquals(Arrays.asList(0L, 1L), listener.batches);
+    }
+
+    @Test
+    public void blockWaitsForTheDecoder() throws Exception {
+        Listener listener = new Listener();
+        try (AsyncPrintDecoder decoder = busyDecoder(AsyncPrintDecoder.OverflowPolicy.BLOCK, listener)) {
+            long[] sequence = {-2};
+            Thread submitter = new Thread(() -> sequence[0] = submit(decoder, "c\n"));
+            submitter.start();
+            // the queue is full until the listener returns
+            submitter.join(100);
+            assertTrue(submitter.isAlive());
+            listener.release.countDown();
+            submitter.join();
+            assertEquals(2, sequence[0]);
+            decoder.flush();
+            assertEquals(0, decoder.getDroppedCount());
+        }
+        assertEquals(Arrays.asList("a\n", "b\n", "c\n"), listener.getRecords());
+    }
+
+    @Test
+    public void dropNewestDropsTheSubmittedBuffer() throws InterruptedException {
+        Listener listener = new Listener();
+        try (AsyncPrintDecoder decoder = busyDecoder(AsyncPrintDecoder.OverflowPolicy.DROP_NEWEST, listener)) {
+            assertEquals(-1, submit(decoder, "c\n"));
+            assertEquals(-1, submit(decoder, "d\n"));
+            assertEquals(2, decoder.getDroppedCount());
+            listener.release.countDown();
+            decoder.flush();
+        }
+        assertEquals(Arrays.asList("a\n", "b\n"), listener.getRecords());
+    }
+
+    @Test
+    public void dropOldestDropsTheBufferWaiting() throws InterruptedException {
+        Listener listener = new Listener();
+        try (AsyncPrintDecoder decoder = busyDecoder(AsyncPrintDecoder.OverflowPolicy.DROP_OLDEST, listener)) {
+            assertEquals(2, submit(decoder, "c\n"));
+            assertEquals(3, submit(decoder, "d\n"));
+            assertEquals(2, decoder.getDroppedCount());
+            listener.release.countDown();
+            decoder.flush();
+        }
+        assertEquals(Arrays.asList("a\n", "d\n"), listener.getRecords());
+    }
+
+    @Test
+    public void closeDecodesTheBuffersWaiting() throws InterruptedException {
+        Listener listener = new Listener();
+        AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 4, AsyncPrintDecoder.OverflowPolicy.BLOCK);
+        decoder.addListener(listener);
+        submit(decoder, "a\n");
+        listener.started.await();
+        submit(decoder, "b\n");
+        submit(decoder, "c\n");
+        listener.release.countDown();
+        decoder.close();
+        assertEquals(Arrays.asList("a\n", "b\n", "c\n"), listener.getRecords());
+        try {
+            submit(decoder, "d\n");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Decoder closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void listenerExceptionsGoToTheErrorHandler() throws InterruptedException {
+        List<Throwable> errors = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        try (AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 4, AsyncPrintDecoder.OverflowPolicy.BLOCK)) {
+            decoder.setErrorHandler(errors::add);
+            decoder.addListener(record -> {
+                throw new IllegalArgumentException(record.getText());
+            });
+            decoder.addListener(record -> records.add(record.getText()));
+            submit(decoder, "a\nb\n");
+            decoder.flush();
+        }
+        assertEquals(2, errors.size());
+        assertEquals("a\n", errors.get(0).getMessage());
+        assertEquals(Arrays.asList("a\n", "b\n"), records);
+    }
+
+    /**
+     * Submits a buffer to a decoder whose thread stops on it, and checks that flush and submit then throw
+     */
+    static void assertStopsOn(AsyncPrintDecoder decoder, Class<? extends Throwable> failure) {
+        submit(decoder, "a\n");
+        try {
+            decoder.flush();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(failure, e.getCause().getClass());
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        try {
+            submit(decoder, "b\n");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(failure, e.getCause().getClass());
+        }
+        decoder.close();
+    }
+
+    @Test(timeout = 10000)
+    public void errorOfAListenerStopsTheDecoder() {
+        AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 1, AsyncPrintDecoder.OverflowPolicy.BLOCK);
+        decoder.addListener(record -> {
+            throw new StackOverflowError();
+        });
+        assertStopsOn(decoder, StackOverflowError.class);
+    }
+
+    @Test(timeout = 10000)
+    public void exceptionOfTheErrorHandlerStopsTheDecoder() {
+        AsyncPrintDecoder decoder = new AsyncPrintDecoder(new PrintfSiteTable(), 1, AsyncPrintDecoder.OverflowPolicy.BLOCK);
+        decoder.setErrorHandler(e -> {
+            throw new UnsupportedOperationException();
+        });
+        decoder.addListener(record -> {
+            throw new IllegalArgumentException();
+        });
+        assertStopsOn(decoder, UnsupportedOperationException.class);
+    }
+}
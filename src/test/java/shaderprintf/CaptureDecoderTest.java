@@ -0,0 +1,85 @@
+package shaderprintf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class CaptureDecoderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Runs the decoder on the frames of {@link PrintCaptureTest} with the given options
+     *
+     * @return what it printed
+     */
+    String decode(String... options) throws IOException {
+        Path file = folder.newFile().toPath();
+        PrintfSiteTable table = PrintCaptureTest.table();
+        try (PrintCaptureWriter writer = new PrintCaptureWriter(file, table)) {
+            PrintCaptureTest.writeFrames(writer, table);
+        }
+        String[] args = new String[options.length + 1];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = file.toString();
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        try {
+            CaptureDecoder.main(args);
+        } finally {
+            System.setOut(out);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void decodesEveryFrame() throws IOException {
+        assertEquals("a=1\nb=2.000000\na=3\nc 5\nb=4.000000\nb=4.000000\n", decode());
+        assertEquals("# frame 0\na=1\nb=2.000000\n# frame 1\na=3\n# frame 2\nc 5\nb=4.000000\nb=4.000000\n", decode("--headers"));
+    }
+
+    @Test
+    public void framesFilter() throws IOException {
+        assertEquals("a=3\n", decode("--frames", "1"));
+        assertEquals("# frame 1\na=3\n# frame 2\nc 5\nb=4.000000\nb=4.000000\n", decode("--frames", "1-5", "--headers"));
+        assertEquals("", decode("--frames", "3"));
+    }
+
+    @Test
+    public void sitesFilter() throws IOException {
+        assertEquals("b=2.000000\nb=4.000000\nb=4.000000\n", decode("--sites", "1"));
+        assertEquals("a=1\na=3\nc 5\n", decode("--sites", "0, 2,9"));
+        assertEquals("b=2.000000\n", decode("--sites", "1", "--frames", "0"));
+    }
+
+    @Test
+    public void formatFilter() throws IOException {
+        assertEquals("a=1\na=3\nc 5\n", decode("--format", "^[ac]"));
+        // both filters apply
+        assertEquals("c 5\n", decode("--format", "^[ac]", "--sites", "1,2"));
+    }
+
+    @Test
+    public void deduplication() throws IOException {
+        assertEquals("c 5\nb=4.000000 (x2)\n", decode("--dedup", "consecutive", "--frames", "2"));
+    }
+
+    @Test
+    public void listsTheCallSites() throws IOException {
+        String sites = decode("--list-sites");
+        assertEquals(sites, 3, sites.split("\n").length);
+        assertTrue(sites, sites.startsWith("0\t"));
+        assertTrue(sites, sites.contains("a=%d\\n"));
+    }
+}
@@ -0,0 +1,161 @@
+package shaderprintf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link PrintBufferBackend} keeping buffers in memory, to exercise print buffer scheduling without a GPU.<br/>
+ * {@link #print(int, int...)} plays the part of a shader, and fences only signal when {@link #complete(long)} or
+ * {@link #completeAll()} says the "GPU" got there. Waiting on a fence that has not signalled completes it and counts a
+ * stall.
+ */
+class InMemoryPrintBufferBackend implements PrintBufferBackend {
+
+    private final Map<Integer, ByteBuffer> buffers = new HashMap<>();
+    private final Map<Integer, Integer> bindings = new HashMap<>();
+    // fences in the order they were inserted, and whether they have signalled
+    private final TreeMap<Long, Boolean> fences = new TreeMap<>();
+    private int nextBuffer = 1;
+    private long nextFence = 1;
+    private int stallCount;
+
+    @Override
+    public int createBuffer(int size) {
+        int buffer = nextBuffer++;
+        buffers.put(buffer, ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer map(int buffer) {
+        return buffer(buffer).duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        buffer(buffer);
+        buffers.remove(buffer);
+        bindings.values().removeIf(bound -> bound == buffer);
+    }
+
+    @Override
+    public void reset(int buffer) {
+        buffer(buffer).putInt(0, 1);
+    }
+
+    @Override
+    public void bind(int program, int buffer) {
+        buffer(buffer);
+        bindings.put(program, buffer);
+    }
+
+    @Override
+    public long fence() {
+        long fence = nextFence++;
+        fences.put(fence, false);
+        return fence;
+    }
+
+    @Override
+    public boolean isSignaled(long fence) {
+        return fence(fence);
+    }
+
+    @Override
+    public void waitFence(long fence) {
+        if (!fence(fence)) {
+            stallCount++;
+            complete(fence);
+        }
+    }
+
+    @Override
+    public void deleteFence(long fence) {
+        fence(fence);
+        fences.remove(fence);
+    }
+
+    /**
+     * Writes values to the buffer bound to a program the way a printf call does, including when the buffer is full
+     */
+    public void print(int program, int... values) {
+        Integer bound = bindings.get(program);
+        if (bound == null)
+            throw new IllegalStateException("No print buffer bound to program " + program);
+        ByteBuffer buffer = buffers.get(bound);
+        int length = buffer.capacity() / 4;
+        int counter = buffer.getInt(0);
+        buffer.putInt(0, counter + values.length);
+        // as uints, a record larger than the buffer stays at the counter, past the end, where writes are dropped
+        int index = values.length <= length ? Math.min(counter, length - values.length) : counter;
+        for (int value : values) {
+            if (index >= 0 && index < length)
+                buffer.putInt(4 * index, value);
+            index++;
+        }
+    }
+
+    /**
+     * Writes a text the way a printf call without arguments does, one character per value
+     */
+    public void print(int program, String text) {
+        int[] values = new int[text.length()];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = text.charAt(i);
+        print(program, values);
+    }
+
+    /**
+     * Signals a fence and every fence inserted before it
+     */
+    public void complete(long fence) {
+        fence(fence);
+        fences.headMap(fence, true).replaceAll((f, signaled) -> true);
+    }
+
+    /**
+     * Signals every fence inserted so far
+     */
+    public void completeAll() {
+        fences.replaceAll((f, signaled) -> true);
+    }
+
+    /**
+     * The buffer bound to a program, 0 if none
+     */
+    public int getBoundBuffer(int program) {
+        return bindings.getOrDefault(program, 0);
+    }
+
+    /**
+     * Number of times {@link #waitFence(long)} had to wait for a fence that had not signalled
+     */
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    public int getFenceCount() {
+        return fences.size();
+    }
+
+    private ByteBuffer buffer(int buffer) {
+        ByteBuffer contents = buffers.get(buffer);
+        if (contents == null)
+            throw new IllegalStateException("Unknown buffer " + buffer);
+        return contents;
+    }
+
+    private boolean fence(long fence) {
+        Boolean signaled = fences.get(fence);
+        if (signaled == null)
+            throw new IllegalStateException("Unknown fence " + fence);
+        return signaled;
+    }
+}
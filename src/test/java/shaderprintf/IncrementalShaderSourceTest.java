@@ -0,0 +1,69 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IncrementalShaderSourceTest {
+
+    static final PrintfOptions OPTIONS = PrintfOptions.DEFAULT.withFormatTable(true);
+    static final String VERSION = "#version 450\n";
+    static final String F = "float f(float x) {\n    printf(\"f %f\\n\", x);\n    return x;\n}";
+    static final String MAIN = "void main() {\n    printf(\"main %f\\n\", f(1.0));\n}\n";
+
+    @Test
+    public void singlePartIsThePreprocessedSource() throws Exception {
+        String source = PrintfPreprocessorTest.read("fragment.glsl");
+        for (PrintfOptions options : new PrintfOptions[]{PrintfOptions.DEFAULT, OPTIONS, OPTIONS.withSiteMask(true).withRecordLimit(4)})
+            assertEquals(ShaderPrintf.preprocess(source, options).link(new PrintfSiteTable()),
+                    new IncrementalShaderSource(new PrintfSiteTable()).update(options, source));
+    }
+
+    @Test
+    public void partsStartWithALineDirective() {
+        String result = new IncrementalShaderSource(new PrintfSiteTable()).update(OPTIONS, VERSION, F, MAIN);
+        String header = PrintfPreprocessor.header(OPTIONS, false, 2, 0);
+        // F does not end with a newline, one is added before the directive
+        assertTrue(result, result.startsWith(VERSION + header + "#line 1 1\nfloat f(float x) {\n"));
+        assertTrue(result, result.contains("}\n#line 1 2\nvoid main() {\n"));
+    }
+
+    @Test
+    public void noDirectiveComesBeforeTheVersionLine() {
+        String result = new IncrementalShaderSource(new PrintfSiteTable()).update(OPTIONS, "// Copyright\n", VERSION + F, MAIN);
+        // the header restores the lines of the part holding the #version line
+        String header = PrintfPreprocessor.header(OPTIONS, false, 2, 1);
+        assertTrue(result, result.contains(VERSION + header + "float f(float x) {\n"));
+        assertEquals(result, -1, result.substring(0, result.indexOf(VERSION)).indexOf('#'));
+        assertTrue(result, result.contains("}\n#line 1 2\nvoid main() {\n"));
+        assertFalse(result, result.contains("#line 1 1\n"));
+    }
+
+    @Test
+    public void partsAreFoundByContent() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        IncrementalShaderSource source = new IncrementalShaderSource(table);
+        source.update(OPTIONS, VERSION, F, MAIN);
+        assertEquals(3, source.getLastProcessedCount());
+
+        // moved, duplicated or removed parts are not preprocessed again
+        source.update(OPTIONS, VERSION, MAIN, F);
+        assertEquals(0, source.getLastProcessedCount());
+        source.update(OPTIONS, VERSION, F, F, MAIN);
+        assertEquals(0, source.getLastProcessedCount());
+        source.update(OPTIONS, VERSION, MAIN);
+        assertEquals(0, source.getLastProcessedCount());
+        // F was left out by the last update
+        source.update(OPTIONS, VERSION, F, MAIN);
+        assertEquals(1, source.getLastProcessedCount());
+
+        // an edited part only, and a change of options every part
+        source.update(OPTIONS, VERSION, F.replace("return x;", "return x * 2.0;"), MAIN);
+        assertEquals(1, source.getLastProcessedCount());
+        source.update(OPTIONS.withPackedText(true), VERSION, F, MAIN);
+        assertEquals(3, source.getLastProcessedCount());
+        assertEquals(8, source.getProcessedCount());
+        // the edit left the call sites as they were: the table holds the two of them
+        assertEquals(2, table.size());
+    }
+}
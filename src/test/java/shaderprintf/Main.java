@@ -24,6 +24,9 @@ public class Main {
             System.err.println("Error linking: "+glGetProgramInfoLog(program));
 
 
+        // (added) print buffers from 256KB, grown when the output does not fit, up to 64MB
+        PrintBufferPool printBuffers = new PrintBufferPool(64*1024, 16*1024*1024);
+
         int vao = glGenVertexArrays();
         glBindVertexArray(vao);
 
@@ -39,18 +42,16 @@ public class Main {
             Window.Point mouse = Window.getMouse();
             glUniform2i(glGetUniformLocation(program, "mouse"), (int)mouse.x, (int)mouse.y);
 
-            // create a buffer to hold the printf results
-            int printBuffer = createPrintBuffer();
+            // (added) take a buffer to hold the printf results from the pool, which reuses them across frames
+            int printBuffer = printBuffers.acquire();
             // bind it to the current program
-            bindPrintBuffer(program, printBuffer);
+            printBuffers.bind(program, printBuffer);
 
             // do any amount of draw/compute that appends to the buffer
             glDrawArrays(GL_TRIANGLES, 0, 3);
 
-            // convert to string, output to console
-            System.out.printf("%s\n", getPrintBufferString(printBuffer));
-            // clean up
-            deletePrintBuffer(printBuffer);
+            // convert to string, output to console; the buffer goes back to the pool
+            System.out.printf("%s\n", printBuffers.release(printBuffer));
 
             Window.swapBuffers();
 
@@ -58,6 +59,7 @@ public class Main {
         }
 
 
+        printBuffers.close();
         glBindVertexArray(0);
         glDeleteVertexArrays(vao);
         glDeleteShader(vertex); glDeleteShader(fragment);
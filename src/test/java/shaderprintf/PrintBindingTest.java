@@ -0,0 +1,127 @@
+package shaderprintf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PrintBindingTest {
+
+    static final String SOURCE = "#version 450\nvoid main() {\n    printf(\"a %d\\n\", 1);\n    printstat(\"v\", 1.0);\n}\n";
+    static final String[] PRINT_BLOCKS = {"printBuffer", "printMaskBuffer", "printCountBuffer", "printStatBuffer"};
+
+    private final RecordingPrintBindingBackend gl = new RecordingPrintBindingBackend();
+    private PrintfSiteTable globalTable;
+
+    @Before
+    public void setUp() {
+        // each test links its sources to an empty table
+        globalTable = ShaderPrintf.getSiteTable();
+        ShaderPrintf.setSiteTable(new PrintfSiteTable());
+        ShaderPrintf.setBindingBackend(gl);
+    }
+
+    @After
+    public void tearDown() {
+        ShaderPrintf.setSiteTable(globalTable);
+        ShaderPrintf.setBindingBackend(new GLPrintBindingBackend());
+    }
+
+    /**
+     * Links a source using every print block, so that binding creates the buffers kept for print buffers
+     */
+    static void linkSourceWithEveryBlock() {
+        ShaderPrintf.addPrintToSource(SOURCE, PrintfOptions.DEFAULT.withFormatTable(true).withSiteMask(true).withRecordLimit(4));
+    }
+
+    @Test
+    public void callsPerDrawDropWithCachedLookupsAndOnceAFrameBinding() {
+        linkSourceWithEveryBlock();
+        // the four print blocks declared without binding point, after a block of the application
+        int program = 11;
+        gl.declareBlock(program, "appData", 0);
+        for (String block : PRINT_BLOCKS)
+            gl.declareBlock(program, block, 0);
+        int printBuffer = gl.createPrintBuffer(1024);
+
+        // the first bind also creates the mask, counters and statistics
+        ShaderPrintf.bindPrintBuffer(program, printBuffer);
+        assertEquals(gl.getCalls().toString(), 25, gl.getCallCount());
+        assertEquals(printBuffer, gl.getBoundBuffer(1));
+        assertEquals(1, gl.getContents(printBuffer)[0]);
+
+        // looking the blocks up on every draw: the clears, lookups and bindings
+        gl.clearCalls();
+        for (int draw = 0; draw < 10; ++draw) {
+            ShaderPrintf.forgetProgram(program);
+            ShaderPrintf.bindPrintBuffer(program, printBuffer);
+        }
+        assertEquals(gl.getCalls().toString(), 15 * 10, gl.getCallCount());
+
+        // cached lookups: clears of the print buffer, counters and statistics, and the four bindings
+        gl.clearCalls();
+        for (int draw = 0; draw < 10; ++draw)
+            ShaderPrintf.bindPrintBuffer(program, printBuffer);
+        assertEquals(gl.getCalls().toString(), 7 * 10, gl.getCallCount());
+
+        // the same blocks with explicit binding points, bound once for the frame
+        int explicit = 12;
+        gl.declareBlock(explicit, "appData", 0);
+        for (int i = 0; i < PRINT_BLOCKS.length; ++i)
+            gl.declareBlock(explicit, PRINT_BLOCKS[i], 5 + i);
+        ShaderPrintf.bindPrintBufferBase(5, printBuffer);
+        for (int i = 0; i < PRINT_BLOCKS.length; ++i)
+            assertNotEquals(0, gl.getBoundBuffer(5 + i));
+        int[] stats = gl.getContents(gl.getBoundBuffer(8));
+        assertArrayEquals(Arrays.toString(stats), PrintStat.EMPTY_SLOT, Arrays.copyOf(stats, PrintStat.SLOT_SIZE));
+        // the next frames pay for the clears and bindings once, their draws for nothing
+        gl.clearCalls();
+        ShaderPrintf.bindPrintBufferBase(5, printBuffer);
+        assertEquals(gl.getCalls().toString(), 7, gl.getCallCount());
+    }
+
+    @Test
+    public void bindingOncePerFrameCreatesOnlyTheBuffersOfLinkedBlocks() {
+        int printBuffer = gl.createPrintBuffer(1024);
+        ShaderPrintf.bindPrintBufferBase(0, printBuffer);
+        // the print buffer, and the mask
+        assertEquals(printBuffer, gl.getBoundBuffer(0));
+        assertNotEquals(0, gl.getBoundBuffer(1));
+        assertEquals(0, gl.getBoundBuffer(2));
+        assertEquals(0, gl.getBoundBuffer(3));
+        assertFalse(gl.getCalls().toString(), gl.getCalls().toString().contains("allocate"));
+
+        linkSourceWithEveryBlock();
+        ShaderPrintf.bindPrintBufferBase(0, printBuffer);
+        assertNotEquals(0, gl.getBoundBuffer(2));
+        assertNotEquals(0, gl.getBoundBuffer(3));
+    }
+
+    @Test
+    public void countersAndStatisticsAreReadThroughTheBackend() {
+        linkSourceWithEveryBlock();
+        int printBuffer = gl.createPrintBuffer(1024);
+        ShaderPrintf.bindPrintBufferBase(0, printBuffer);
+        // the printf call site has id 0, the printstat one id 1
+        int[] counters = gl.getContents(gl.getBoundBuffer(2));
+        counters[0] = 9;
+        gl.upload(gl.getBoundBuffer(2), counters);
+        int[] stats = gl.getContents(gl.getBoundBuffer(3));
+        PrintStatTest.add(stats, 1, 2f);
+        PrintStatTest.add(stats, 1, 4f);
+        gl.upload(gl.getBoundBuffer(3), stats);
+
+        gl.clearCalls();
+        PrintfDropReport drops = ShaderPrintf.getDroppedRecords(printBuffer);
+        assertEquals(9, drops.getCounted(0));
+        assertEquals(5, drops.getDroppedAtLeast(0));
+        PrintStat stat = ShaderPrintf.getPrintStats(printBuffer).get("v");
+        assertEquals(2, stat.getCount());
+        assertEquals(3, stat.getMean(), 0);
+        assertEquals(Arrays.asList("read(" + gl.getBoundBuffer(2) + ", 2)", "read(" + gl.getBoundBuffer(3) + ", " + 2 * PrintStat.SLOT_SIZE + ")"),
+                gl.getCalls());
+    }
+}
@@ -0,0 +1,352 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class PrintBufferDecoderTest {
+
+    /**
+     * Values written for text printed without a format table: one character per uint
+     */
+    static int[] chars(String text) {
+        int[] values = new int[text.length()];
+        for (int i = 0; i < values.length; ++i)
+            values[i] = text.charAt(i);
+        return values;
+    }
+
+    static int[] concat(int[]... parts) {
+        int length = 0;
+        for (int[] part : parts)
+            length += part.length;
+        int[] values = new int[length];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, values, offset, part.length);
+            offset += part.length;
+        }
+        return values;
+    }
+
+    /**
+     * Values written for a call without a format table: the format, each specifier followed by its values
+     */
+    static int[] inline(String format, int... arguments) {
+        int[] values = new int[format.length() + arguments.length];
+        int size = 0, argument = 0;
+        for (int j = 0; j < format.length(); ++j) {
+            char c = format.charAt(j);
+            values[size++] = c;
+            if (c != '%')
+                continue;
+            if (format.charAt(j + 1) == '%') {
+                values[size++] = format.charAt(++j);
+                continue;
+            }
+            int vecSize = 1;
+            while (!PrintfChars.isConversion(format.charAt(j))) {
+                if (format.charAt(j) == '^')
+                    vecSize = format.charAt(j + 1) - '0';
+                values[size++] = format.charAt(++j);
+            }
+            for (int k = 0; k < vecSize; ++k)
+                values[size++] = arguments[argument++];
+        }
+        return values;
+    }
+
+    static String decode(int[] values, PrintfSiteTable table) {
+        return PrintBufferDecoder.decode(values, values.length, table);
+    }
+
+    @Test
+    public void valuesInCharacterSlotsStayCharactersWithoutFormatTable() {
+        // the tail of an overflowed buffer: values of other records landed where characters were
+        int[] values = concat(chars("x="), new int[]{Float.floatToIntBits(-1.5f), Float.floatToIntBits(2.5f), 0x20000003}, chars("\n"));
+        String text = decode(values, new PrintfSiteTable());
+        assertEquals("x=" + (char) Float.floatToIntBits(-1.5f) + (char) Float.floatToIntBits(2.5f) + (char) 0x20000003 + "\n", text);
+    }
+
+    @Test
+    public void unknownCallSiteEndsTheTextWithAMarker() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        int id = table.register(new PrintfCallSite(1, "v=%d\n"));
+        int[] values = {PreprocessedSource.SITE_TAG | id, 7, PreprocessedSource.SITE_TAG | 1000, 8, PreprocessedSource.SITE_TAG | id, 9};
+        assertEquals("v=7\n" + PrintBufferDecoder.CORRUPT_TAIL, decode(values, table));
+    }
+
+    @Test
+    public void unknownCallSiteStopsEveryDecodingPath() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        int id = table.register(new PrintfCallSite(1, "v=%d\n"));
+        int[] values = {PreprocessedSource.SITE_TAG | id, 7, PreprocessedSource.SITE_TAG | 1000, 8, PreprocessedSource.SITE_TAG | id, 9};
+        PrintBufferDecoder decoder = new PrintBufferDecoder(table);
+
+        StringBuilder chunked = new StringBuilder();
+        decoder.decode((from, target, offset, count) -> System.arraycopy(values, from, target, offset, count), values.length, 1,
+                (text, last) -> {
+                    chunked.append(text);
+                    text.setLength(0);
+                });
+        assertEquals("v=7\n" + PrintBufferDecoder.CORRUPT_TAIL, chunked.toString());
+
+        StringBuilder deduplicated = new StringBuilder();
+        decoder.decode(values, values.length, PrintDeduplication.GLOBAL, deduplicated);
+        assertEquals("v=7\n" + PrintBufferDecoder.CORRUPT_TAIL, deduplicated.toString());
+
+        List<PrintRecord> records = new ArrayList<>();
+        decoder.decodeRecords(values, values.length, 0, records::add);
+        assertEquals(1, records.size());
+        assertEquals(1, PrintRecordIndex.of(values, values.length, table).size());
+        assertEquals(1, PrintLog.of(values, values.length, table).size());
+        // a new buffer decodes again
+        assertEquals("v=7\n", decode(new int[]{PreprocessedSource.SITE_TAG | id, 7}, table));
+    }
+
+    @Test
+    public void tagsAreReadOnlyForTheDeclaredLayouts() {
+        int[] values = concat(new int[]{PreprocessedSource.LENGTH_TAG | 3}, chars("ab"));
+        PrintfSiteTable plain = new PrintfSiteTable();
+        assertEquals((char) (PreprocessedSource.LENGTH_TAG | 3) + "ab", decode(values, plain));
+        PrintfSiteTable prefixed = new PrintfSiteTable();
+        prefixed.addLayout(PrintfOptions.DEFAULT.withLengthPrefix(true));
+        assertEquals("ab", decode(values, prefixed));
+    }
+
+    static final String[] FORMATS = {
+            "hello from \"pixel\" %^2u! position %^3g\n",
+            "iteration %d, distance %g\n",
+            "%5.2f %% %x %-6d|%+.3e\n",
+            "color=%.3^4f\n"
+    };
+
+    static int[][] ARGUMENTS = {
+            {3, 4, Float.floatToIntBits(1.5f), Float.floatToIntBits(-2f), Float.floatToIntBits(0.25f)},
+            {12, Float.floatToIntBits(1e-3f)},
+            {Float.floatToIntBits(3.14159f), 255, -7, Float.floatToIntBits(-12345.678f)},
+            {Float.floatToIntBits(1f), Float.floatToIntBits(0.5f), Float.floatToIntBits(0f), Float.floatToIntBits(-0.125f)}
+    };
+
+    static final String TEXT = "hello from \"pixel\" (3, 4)! position (1.50000, -2.00000, 0.250000)\n"
+            + "iteration 12, distance 0.00100000\n"
+            + " 3.14 % ff -7    |-1.235e+04\n"
+            + "color=(1.000, 0.500, 0.000, -0.125)\n";
+
+    @Test
+    public void decodesSpecifiersWrittenInline() {
+        int[][] records = new int[FORMATS.length][];
+        for (int i = 0; i < FORMATS.length; ++i)
+            records[i] = inline(FORMATS[i], ARGUMENTS[i]);
+        assertEquals(TEXT, decode(concat(records), new PrintfSiteTable()));
+    }
+
+    @Test
+    public void decodesSpecifiersWrittenThroughAFormatTable() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        int[][] records = new int[FORMATS.length][];
+        for (int i = 0; i < FORMATS.length; ++i) {
+            int id = table.register(new PrintfCallSite(i + 1, FORMATS[i]));
+            records[i] = concat(new int[]{PreprocessedSource.SITE_TAG | id}, ARGUMENTS[i]);
+        }
+        assertEquals(TEXT, decode(concat(records), table));
+    }
+
+    @Test
+    public void chunkedAndParallelDecodingMatch() {
+        int[][] records = new int[FORMATS.length * 50][];
+        for (int i = 0; i < records.length; ++i)
+            records[i] = inline(FORMATS[i % FORMATS.length], ARGUMENTS[i % FORMATS.length]);
+        int[] values = concat(records);
+        String text = decode(values, new PrintfSiteTable());
+        StringBuilder chunked = new StringBuilder();
+        new PrintBufferDecoder(new PrintfSiteTable()).decode((from, target, offset, count) -> System.arraycopy(values, from, target, offset, count),
+                values.length, 7, (chunk, last) -> {
+                    chunked.append(chunk);
+                    chunk.setLength(0);
+                });
+        assertEquals(text, chunked.toString());
+        assertEquals(text, ShaderPrintf.decodePrintBuffer(values, values.length, new PrintfSiteTable()));
+    }
+
+    static List<PrintRecord> records(int[] values, PrintfSiteTable table) {
+        List<PrintRecord> records = new ArrayList<>();
+        new PrintBufferDecoder(table).decodeRecords(values, values.length, 0, records::add);
+        return records;
+    }
+
+    @Test
+    public void textWithoutFormatTableMakesARecordPerLine() {
+        int[] values = concat(chars("a=%d"), new int[]{1}, chars("\nb\na=%d"), new int[]{2}, chars("\ntail"));
+        List<PrintRecord> records = records(values, new PrintfSiteTable());
+        assertEquals(4, records.size());
+        assertEquals("a=1\n", records.get(0).getText());
+        assertEquals("b\n", records.get(1).getText());
+        assertEquals("a=2\n", records.get(2).getText());
+        assertEquals("tail", records.get(3).getText());
+        assertEquals(records.size(), PrintLog.of(values, values.length, new PrintfSiteTable()).size());
+    }
+
+    @Test
+    public void lengthPrefixedTextMakesARecordPerRecord() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withLengthPrefix(true));
+        int[] values = concat(new int[]{PreprocessedSource.LENGTH_TAG | 3}, chars("ab"), new int[]{PreprocessedSource.LENGTH_TAG | 2}, chars("c"));
+        List<PrintRecord> records = records(values, table);
+        assertEquals(2, records.size());
+        assertEquals("ab", records.get(0).getText());
+        assertEquals("c", records.get(1).getText());
+    }
+
+    @Test
+    public void linkingDeclaresTheLayout() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        PrintfOptions options = PrintfOptions.DEFAULT.withPackedText(true).withLengthPrefix(true);
+        ShaderPrintf.preprocess("#version 450\nvoid main() {\n    printf(\"x\\n\");\n}\n", options).link(table);
+        assertEquals(PreprocessedSource.LENGTH_TAG | PreprocessedSource.PACKED_TAG, table.getLayout());
+    }
+
+    /**
+     * Values written for literal text packed four characters per uint
+     */
+    static int[] packed(String text) {
+        int[] values = new int[1 + (text.length() + 3) / 4];
+        values[0] = PreprocessedSource.PACKED_TAG | text.length();
+        for (int i = 0; i < text.length(); ++i)
+            values[1 + i / 4] |= text.charAt(i) << ((i & 3) << 3);
+        return values;
+    }
+
+    static String deduplicate(int[] values, PrintfSiteTable table, PrintDeduplication deduplication) {
+        StringBuilder text = new StringBuilder();
+        new PrintBufferDecoder(table).decode(values, values.length, deduplication, text);
+        return text.toString();
+    }
+
+    /**
+     * Replaces each line ending with " (xN)" by N copies of the line
+     */
+    static List<String> expand(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("(?<=\n)")) {
+            Matcher repeats = Pattern.compile(" \\(x(\\d+)\\)(\n?)$").matcher(line);
+            int count = 1;
+            if (repeats.find()) {
+                count = Integer.parseInt(repeats.group(1));
+                line = line.substring(0, repeats.start()) + repeats.group(2);
+            }
+            for (int i = 0; i < count; ++i)
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * The lines of a text, each distinct line once with all its copies, in the order of their first copy
+     */
+    static List<String> groupLines(String text) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String line : text.split("(?<=\n)"))
+            groups.computeIfAbsent(line, l -> new ArrayList<>()).add(line);
+        List<String> lines = new ArrayList<>();
+        for (List<String> group : groups.values())
+            lines.addAll(group);
+        return lines;
+    }
+
+    /**
+     * A buffer of records drawn from a few kinds, in runs, so that records repeat both in a row and apart: records
+     * through the format table with and without invocation key, text written inline, packed text, and records prefixed by
+     * their length when <code>lengths</code> is set. No two different records format to the same text.
+     */
+    static int[] randomRecords(Random random, PrintfSiteTable table, boolean lengths, int count) {
+        int value = table.register(new PrintfCallSite(1, "v=%d\n"));
+        int pair = table.register(new PrintfCallSite(2, "p=%^2u\n"));
+        int empty = table.register(new PrintfCallSite(3, "t\n"));
+        int keyed = table.register(new PrintfCallSite(4, "s=%x\n").withStage(ShaderStage.COMPUTE));
+        List<int[]> records = new ArrayList<>();
+        int[] record = null;
+        for (int i = 0; i < count; ++i) {
+            // a run goes on, or a new record starts
+            if (record == null || random.nextInt(3) == 0) {
+                int a = random.nextInt(4), b = random.nextInt(3);
+                switch (random.nextInt(6)) {
+                    case 0: record = new int[]{PreprocessedSource.SITE_TAG | value, a}; break;
+                    case 1: record = new int[]{PreprocessedSource.SITE_TAG | pair, a, b}; break;
+                    case 2: record = new int[]{PreprocessedSource.SITE_TAG | empty}; break;
+                    case 3: record = new int[]{PreprocessedSource.SITE_TAG | keyed, 0, 0, 0, a}; break;
+                    case 4: record = inline("i:%d %u\n", a, b); break;
+                    default: record = packed("k:" + "ab".substring(0, b % 2 + 1) + "\n"); break;
+                }
+            }
+            int[] copy = record.clone();
+            // the invocation key is not compared
+            if (copy[0] == (PreprocessedSource.SITE_TAG | keyed))
+                copy[1 + random.nextInt(3)] = random.nextInt(100);
+            if (lengths)
+                copy = concat(new int[]{PreprocessedSource.LENGTH_TAG | (copy.length + 1)}, copy);
+            records.add(copy);
+        }
+        return concat(records.toArray(new int[0][]));
+    }
+
+    @Test
+    public void deduplicationExpandsToThePlainText() {
+        Random random = new Random(21);
+        for (int buffer = 0; buffer < 200; ++buffer) {
+            boolean lengths = buffer % 2 == 1;
+            PrintfSiteTable table = new PrintfSiteTable();
+            // packed text is only written without a format table
+            table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true).withLengthPrefix(lengths));
+            table.addLayout(PrintfOptions.DEFAULT.withPackedText(true));
+            // enough distinct records to grow the tables
+            int[] values = randomRecords(random, table, lengths, 1 + random.nextInt(buffer < 100 ? 20 : 400));
+            String text = decode(values, table);
+            List<String> lines = expand(text);
+            assertEquals(lines, expand(deduplicate(values, table, PrintDeduplication.CONSECUTIVE)));
+            assertEquals(groupLines(text), expand(deduplicate(values, table, PrintDeduplication.GLOBAL)));
+
+            // a record cut by the end is left out
+            int[] cut = Arrays.copyOf(values, values.length - 1);
+            String cutText = decode(cut, table);
+            assertEquals(expand(cutText), expand(deduplicate(cut, table, PrintDeduplication.CONSECUTIVE)));
+            assertEquals(groupLines(cutText), expand(deduplicate(cut, table, PrintDeduplication.GLOBAL)));
+        }
+    }
+
+    @Test
+    public void repeatCountGoesBeforeTheNewline() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        int line = table.register(new PrintfCallSite(1, "a=%d\n"));
+        int open = table.register(new PrintfCallSite(2, "b=%d"));
+        int[] a = {PreprocessedSource.SITE_TAG | line, 1}, b = {PreprocessedSource.SITE_TAG | open, 2};
+        int[] values = concat(a, a, a, b, b, a, b);
+        assertEquals("a=1 (x3)\nb=2 (x2)a=1\nb=2", deduplicate(values, table, PrintDeduplication.CONSECUTIVE));
+        assertEquals("a=1 (x4)\nb=2 (x3)", deduplicate(values, table, PrintDeduplication.GLOBAL));
+    }
+
+    @Test
+    public void recordsWithTheSameHashStayApart() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        int pair = table.register(new PrintfCallSite(1, "p=%^2d\n"));
+        // 31 * a + b is the same for both
+        int[] first = {PreprocessedSource.SITE_TAG | pair, 1, 31}, second = {PreprocessedSource.SITE_TAG | pair, 2, 0};
+        int[] values = concat(first, second, first, second, second);
+        assertEquals("p=(1, 31)\np=(2, 0)\np=(1, 31)\np=(2, 0) (x2)\n", deduplicate(values, table, PrintDeduplication.CONSECUTIVE));
+        assertEquals("p=(1, 31) (x2)\np=(2, 0) (x3)\n", deduplicate(values, table, PrintDeduplication.GLOBAL));
+    }
+}
@@ -0,0 +1,119 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrintBufferPoolTest {
+
+    static final int PROGRAM = 3;
+
+    private final InMemoryPrintBufferBackend backend = new InMemoryPrintBufferBackend();
+    private final PrintMetrics metrics = new PrintMetrics();
+
+    /**
+     * A frame printing <code>values</code> characters
+     *
+     * @return its text
+     */
+    private String frame(PrintBufferPool pool, int values) {
+        int buffer = pool.acquire();
+        pool.bind(PROGRAM, buffer);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < values; ++i)
+            text.append((char) ('a' + i % 26));
+        backend.print(PROGRAM, text.toString());
+        return pool.release(buffer);
+    }
+
+    @Test
+    public void buffersAreReused() {
+        try (PrintBufferPool pool = new PrintBufferPool(backend, new PrintfSiteTable(), 16, 1024, 10, metrics)) {
+            for (int frame = 0; frame < 20; ++frame)
+                assertEquals("abcdefgh", frame(pool, 8));
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(1, pool.getFreeCount());
+
+            // two frames in flight need two buffers, both kept
+            int first = pool.acquire(), second = pool.acquire();
+            assertNotEquals(first, second);
+            pool.release(first);
+            pool.release(second);
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(2, pool.getFreeCount());
+            assertEquals(0, backend.getFenceCount());
+        }
+        assertEquals(0, backend.getBufferCount());
+    }
+
+    @Test
+    public void growsOnOverflow() {
+        try (PrintBufferPool pool = new PrintBufferPool(backend, new PrintfSiteTable(), 16, 1024, 10, metrics)) {
+            // the buffer holds the counter and 15 values: the text is cut
+            assertEquals(15, frame(pool, 100).length());
+            assertEquals(128, pool.getBufferSize());
+            assertEquals(100, pool.getHighWaterMark());
+            // the buffer of the old size was deleted, the next frame fits
+            assertEquals(0, pool.getBufferCount());
+            assertEquals(100, frame(pool, 100).length());
+            assertEquals(128, pool.getBufferSize());
+            assertEquals(1, backend.getBufferCount());
+        }
+        assertEquals(2, metrics.getFrameCount());
+        assertEquals(1, metrics.getOverflowCount());
+        assertEquals(200, metrics.getRequestedValues());
+        assertEquals(115, metrics.getStoredValues());
+    }
+
+    @Test
+    public void growsUpToTheMaximumSize() {
+        try (PrintBufferPool pool = new PrintBufferPool(backend, new PrintfSiteTable(), 16, 100, 10, metrics)) {
+            frame(pool, 1000);
+            assertEquals(100, pool.getBufferSize());
+            assertEquals(99, frame(pool, 1000).length());
+            assertEquals(100, pool.getBufferSize());
+            assertEquals(1000, pool.getHighWaterMark());
+        }
+    }
+
+    @Test
+    public void shrinksAfterTheQuietPeriod() {
+        try (PrintBufferPool pool = new PrintBufferPool(backend, new PrintfSiteTable(), 16, 1024, 10, metrics)) {
+            frame(pool, 1000);
+            assertEquals(1024, pool.getBufferSize());
+            // a frame using more than a quarter of the buffer restarts the quiet period
+            for (int frame = 0; frame < 9; ++frame)
+                frame(pool, 20);
+            frame(pool, 300);
+            for (int frame = 0; frame < 9; ++frame)
+                frame(pool, 20);
+            assertEquals(1024, pool.getBufferSize());
+            // the peak of the quiet period, 20 values and the counter, within half of the buffer
+            frame(pool, 20);
+            assertEquals(64, pool.getBufferSize());
+            assertEquals(0, pool.getFreeCount());
+            assertEquals("abcdefghij", frame(pool, 10));
+            assertEquals(1, backend.getBufferCount());
+
+            // the frame above is part of the next quiet period, then never below the minimum size
+            for (int frame = 0; frame < 9; ++frame)
+                frame(pool, 0);
+            assertEquals(32, pool.getBufferSize());
+            for (int frame = 0; frame < 10; ++frame)
+                frame(pool, 0);
+            assertEquals(16, pool.getBufferSize());
+            for (int frame = 0; frame < 20; ++frame)
+                frame(pool, 0);
+            assertEquals(16, pool.getBufferSize());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releasingAFreeBufferFails() {
+        try (PrintBufferPool pool = new PrintBufferPool(backend, new PrintfSiteTable(), 16, 1024, 10, metrics)) {
+            int buffer = pool.acquire();
+            pool.release(buffer);
+            pool.release(buffer);
+        }
+    }
+}
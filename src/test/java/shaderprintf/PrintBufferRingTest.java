@@ -0,0 +1,127 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PrintBufferRingTest {
+
+    static final int PROGRAM = 7;
+
+    private final InMemoryPrintBufferBackend backend = new InMemoryPrintBufferBackend();
+    private final PrintMetrics metrics = new PrintMetrics();
+
+    /**
+     * Records frame <code>k</code>, printing "frame k" from the buffer it was given
+     *
+     * @return the buffer the frame printed to
+     */
+    private int frame(PrintBufferRing ring, int k) {
+        ring.beginFrame();
+        ring.bind(PROGRAM);
+        backend.print(PROGRAM, "frame " + k + "\n");
+        int buffer = backend.getBoundBuffer(PROGRAM);
+        ring.endFrame();
+        return buffer;
+    }
+
+    @Test
+    public void frameKPrintsToBufferKModN() {
+        try (PrintBufferRing ring = new PrintBufferRing(backend, 3, 64, new PrintfSiteTable(), metrics)) {
+            assertEquals(3, backend.getBufferCount());
+            int[] buffers = new int[9];
+            for (int k = 0; k < buffers.length; ++k) {
+                buffers[k] = frame(ring, k);
+                backend.completeAll();
+                assertEquals("frame " + k + "\n", ring.poll());
+            }
+            Set<Integer> distinct = new HashSet<>();
+            for (int k = 0; k < buffers.length; ++k) {
+                distinct.add(buffers[k]);
+                assertEquals(buffers[k % 3], buffers[k]);
+            }
+            assertEquals(3, distinct.size());
+        }
+        assertEquals(9, metrics.getFrameCount());
+        assertEquals(0, metrics.getOverflowCount());
+        assertEquals(0, backend.getBufferCount());
+    }
+
+    @Test
+    public void framesAreReadOnlyOnceTheirFenceSignalled() {
+        try (PrintBufferRing ring = new PrintBufferRing(backend, 3, 64, new PrintfSiteTable(), metrics)) {
+            frame(ring, 0);
+            frame(ring, 1);
+            assertNull(ring.poll());
+            assertEquals(2, ring.getPendingCount());
+
+            // fences are inserted in order, from 1
+            backend.complete(1);
+            assertEquals("frame 0\n", ring.poll());
+            assertNull(ring.poll());
+            assertEquals(1, ring.getPendingCount());
+
+            backend.completeAll();
+            assertEquals("frame 1\n", ring.poll());
+            assertNull(ring.poll());
+            assertEquals(0, ring.getPendingCount());
+            assertEquals(0, backend.getFenceCount());
+            assertEquals(0, backend.getStallCount());
+        }
+    }
+
+    @Test
+    public void reusedBufferIsCopiedBeforeItsFenceSignals() {
+        try (PrintBufferRing ring = new PrintBufferRing(backend, 2, 64, new PrintfSiteTable(), metrics)) {
+            int first = frame(ring, 0);
+            frame(ring, 1);
+            // frame 2 needs the buffer of frame 0, which was never polled: the ring waits for it and copies it
+            assertEquals(first, frame(ring, 2));
+            assertEquals(1, backend.getStallCount());
+            assertEquals(3, ring.getPendingCount());
+            // frame 0 comes from its copy although frame 2 overwrote its buffer
+            assertEquals("frame 0\n", ring.poll());
+            // waiting for the fence of frame 0 did not finish frame 1
+            assertNull(ring.poll());
+            backend.completeAll();
+            assertEquals("frame 1\n", ring.poll());
+            assertEquals("frame 2\n", ring.poll());
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    public void stallsOnlyWhenTheCpuGetsNFramesAhead() {
+        try (PrintBufferRing ring = new PrintBufferRing(backend, 3, 64, new PrintfSiteTable(), metrics)) {
+            // a GPU one frame behind: the ring never waits
+            for (int k = 0; k < 10; ++k) {
+                frame(ring, k);
+                if (k > 0)
+                    assertEquals("frame " + (k - 1) + "\n", ring.poll());
+                backend.completeAll();
+            }
+            assertEquals("frame 9\n", ring.poll());
+            assertEquals(0, backend.getStallCount());
+
+            // a GPU that does not finish anything: every frame after the third waits for the oldest one
+            for (int k = 10; k < 15; ++k)
+                frame(ring, k);
+            assertEquals(2, backend.getStallCount());
+            // finished frames polled late are copied, not waited for
+            backend.completeAll();
+            frame(ring, 15);
+            assertEquals(2, backend.getStallCount());
+            for (int k = 10; k < 16; ++k)
+                assertEquals("frame " + k + "\n", ring.waitNext());
+            assertNull(ring.waitNext());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeInBytesMustFitAnInt() {
+        new PrintBufferRing(backend, 1, Integer.MAX_VALUE / 4 + 1, new PrintfSiteTable(), metrics);
+    }
+}
@@ -0,0 +1,173 @@
+package shaderprintf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrintCaptureTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A table of two call sites with a format table
+     */
+    static PrintfSiteTable table() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true));
+        table.register(new PrintfCallSite(3, "a=%d\n"));
+        table.register(new PrintfCallSite(4, "b=%f\n").withSourceName("lighting").withRecordLimit(8));
+        return table;
+    }
+
+    static int[] record(int site, int... values) {
+        int[] record = new int[1 + values.length];
+        record[0] = PreprocessedSource.SITE_TAG | site;
+        System.arraycopy(values, 0, record, 1, values.length);
+        return record;
+    }
+
+    static final int[] FRAME_0 = PrintBufferDecoderTest.concat(record(0, 1), record(1, Float.floatToIntBits(2f)));
+    static final int[] FRAME_1 = record(0, 3);
+    static final int[] FRAME_2 = PrintBufferDecoderTest.concat(record(2, 7, 8, 9, 5), record(1, Float.floatToIntBits(4f)), record(1, Float.floatToIntBits(4f)));
+
+    /**
+     * Writes the three frames, registering the third call site, which writes invocation ids, before the last one
+     */
+    static void writeFrames(PrintCaptureWriter writer, PrintfSiteTable table) throws IOException {
+        // the values around the frame are not captured
+        int[] padded = PrintBufferDecoderTest.concat(new int[]{-1}, FRAME_0, new int[]{-1});
+        writer.writeFrame(padded, 1, FRAME_0.length);
+        writer.writeFrame(IntBuffer.wrap(FRAME_1));
+        table.register(new PrintfCallSite(5, "c %d\n").withStage(ShaderStage.COMPUTE));
+        writer.writeFrame(FRAME_2, 0, FRAME_2.length);
+    }
+
+    static String text(PrintCaptureReader reader, int frame) throws IOException {
+        StringBuilder text = new StringBuilder();
+        reader.decodeFrame(frame, text);
+        return text.toString();
+    }
+
+    Path capture() throws IOException {
+        Path file = folder.newFile("frames.spfc").toPath();
+        PrintfSiteTable table = table();
+        PrintCaptureWriter writer = new PrintCaptureWriter(file, table);
+        try {
+            writeFrames(writer, table);
+            assertEquals(3, writer.getFrameCount());
+        } finally {
+            writer.close();
+        }
+        // closing shrinks the file to its segments
+        assertEquals(writer.getSize(), Files.size(file));
+        return file;
+    }
+
+    @Test
+    public void framesRoundTrip() throws IOException {
+        Path file = capture();
+        try (PrintCaptureReader reader = new PrintCaptureReader(file)) {
+            assertEquals(3, reader.getFrameCount());
+            assertEquals(FRAME_0.length, reader.getFrameSize(0));
+            int[] values = new int[FRAME_0.length];
+            reader.getFrame(0).get(values);
+            assertArrayEquals(FRAME_0, values);
+
+            assertEquals("a=1\nb=2.000000\n", text(reader, 0));
+            assertEquals("a=3\n", text(reader, 1));
+            assertEquals("c 5\nb=4.000000\nb=4.000000\n", text(reader, 2));
+
+            // the call sites as they were registered
+            PrintfSiteTable expected = table();
+            expected.register(new PrintfCallSite(5, "c %d\n").withStage(ShaderStage.COMPUTE));
+            PrintfSiteTable table = reader.getSiteTable();
+            assertEquals(3, table.size());
+            for (int id = 0; id < 3; ++id)
+                assertEquals(expected.get(id), table.get(id));
+
+            StringBuilder deduplicated = new StringBuilder();
+            reader.decodeFrame(2, PrintDeduplication.CONSECUTIVE, deduplicated);
+            assertEquals("c 5\nb=4.000000 (x2)\n", deduplicated.toString());
+            List<Long> batches = new ArrayList<>();
+            reader.decodeFrame(2, record -> batches.add(record.getBatch()));
+            assertEquals(3, batches.size());
+            assertEquals(2, reader.getLog(2).get(0).getBatch());
+        }
+    }
+
+    @Test
+    public void fileCutInItsLastSegmentReadsUpToTheFrameBefore() throws IOException {
+        Path file = capture();
+        long size = Files.size(file);
+        // the frame cut anywhere, even in its header
+        for (long cut = size - 1; cut > size - 4 * FRAME_2.length - 16; --cut) {
+            Path copy = folder.getRoot().toPath().resolve("cut" + cut);
+            Files.write(copy, Arrays.copyOf(Files.readAllBytes(file), (int) cut));
+            try (PrintCaptureReader reader = new PrintCaptureReader(copy)) {
+                assertEquals("cut at " + cut, 2, reader.getFrameCount());
+                assertEquals("a=3\n", text(reader, 1));
+            }
+        }
+    }
+
+    @Test
+    public void unclosedWriterLeavesAReadableFile() throws IOException {
+        Path file = folder.newFile("unclosed.spfc").toPath();
+        PrintfSiteTable table = table();
+        PrintCaptureWriter writer = new PrintCaptureWriter(file, table);
+        try {
+            writeFrames(writer, table);
+            // a frame begun and not ended, as left by a crash
+            writer.beginFrame(2).putInt(PreprocessedSource.SITE_TAG).putInt(6);
+            writer.flush();
+            // the file still has the size of the mapped window, zeros after the segments
+            assertTrue(Files.size(file) >= 64 * 1024 * 1024);
+            try (PrintCaptureReader reader = new PrintCaptureReader(file)) {
+                assertEquals(3, reader.getFrameCount());
+                assertEquals("c 5\nb=4.000000\nb=4.000000\n", text(reader, 2));
+            }
+        } finally {
+            writer.close();
+        }
+        // closing drops the frame begun
+        assertEquals(writer.getSize(), Files.size(file));
+        try (PrintCaptureReader reader = new PrintCaptureReader(file)) {
+            assertEquals(3, reader.getFrameCount());
+        }
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        Path file = capture();
+        for (int offset : new int[]{0, 4}) {
+            Path copy = folder.getRoot().toPath().resolve("header" + offset);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[offset] ^= 1;
+            Files.write(copy, bytes);
+            try (PrintCaptureReader reader = new PrintCaptureReader(copy)) {
+                fail("read with a corrupt header at " + offset);
+            } catch (IOException expected) {
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(4);
+        }
+        try (PrintCaptureReader reader = new PrintCaptureReader(file)) {
+            fail("read without a header");
+        } catch (IOException expected) {
+        }
+    }
+}
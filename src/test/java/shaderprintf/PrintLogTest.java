@@ -0,0 +1,220 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrintLogTest {
+
+    /**
+     * Reads values of a buffer, counting the reads of each page
+     */
+    static final class CountingReader implements PrintBufferDecoder.ValueReader {
+        final int[] values;
+        final int pageSize;
+        final int[] reads;
+
+        CountingReader(int[] values, int pageSize) {
+            this.values = values;
+            this.pageSize = pageSize;
+            this.reads = new int[values.length / pageSize + 1];
+        }
+
+        @Override
+        public void read(int from, int[] values, int offset, int count) {
+            assertEquals("pages are read whole", 0, from % pageSize);
+            reads[from / pageSize]++;
+            System.arraycopy(this.values, from, values, offset, count);
+        }
+    }
+
+    static PrintfSiteTable table(boolean lengths) {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true).withLengthPrefix(lengths));
+        table.addLayout(PrintfOptions.DEFAULT.withPackedText(true));
+        return table;
+    }
+
+    static List<String> texts(List<PrintRecord> records) {
+        List<String> texts = new ArrayList<>();
+        for (PrintRecord record : records)
+            texts.add(record.getText());
+        return texts;
+    }
+
+    /**
+     * End of the last length-prefixed record not cut by <code>printedSize</code>
+     */
+    static int completeRecordsEnd(int[] values, int printedSize) {
+        int end = 0;
+        while (end < printedSize && end + (values[end] & PreprocessedSource.LENGTH_MASK) <= printedSize)
+            end += values[end] & PreprocessedSource.LENGTH_MASK;
+        return end;
+    }
+
+    /**
+     * Checks every access of views of different page sizes against the decoder, which also decodes the start of a
+     * length-prefixed record cut by the end of the buffer: the view leaves it out
+     */
+    static void assertMatchesTheDecoder(int[] values, int printedSize, PrintfSiteTable table, boolean lengths) {
+        int decoded = lengths ? completeRecordsEnd(values, printedSize) : printedSize;
+        List<PrintRecord> expected = new ArrayList<>();
+        new PrintBufferDecoder(table).decodeRecords(values, decoded, 7, expected::add);
+        List<String> texts = texts(expected);
+        String text = PrintBufferDecoder.decode(values, decoded, table);
+
+        for (int pageSize : new int[]{1, 2, 3, 5, 7, 64, PrintLog.DEFAULT_PAGE_SIZE}) {
+            for (int maxPages : new int[]{1, 3}) {
+                String view = "page size " + pageSize + ", " + maxPages + " pages";
+                PrintLog log = new PrintLog(new CountingReader(values, pageSize), printedSize, table, pageSize, maxPages, 7);
+                // records found before the size is known
+                if (!expected.isEmpty()) {
+                    int last = expected.size() - 1;
+                    assertEquals(view, texts.get(last), log.get(last).getText());
+                    assertEquals(view, expected.get(last).getSite(), log.get(last).getSite());
+                    assertEquals(view, 7, log.get(last).getBatch());
+                }
+                assertEquals(view, expected.size(), log.size());
+                assertEquals(view, texts, texts(log.range(0, log.size())));
+                assertEquals(view, text, log.getText(0, log.size() + 10));
+                // going back before the last record kept
+                for (int record = expected.size() - 1; record >= 0; record -= 13)
+                    assertEquals(view, texts.get(record), log.get(record).getText());
+                int from = expected.size() / 3, to = Math.min(expected.size(), from + 70);
+                assertEquals(view, texts.subList(from, to), texts(log.range(from, to)));
+                assertEquals(view, String.join("", texts.subList(from, to)), log.getText(from, to));
+                assertEquals(view, texts.subList(Math.max(0, texts.size() - 5), texts.size()), texts(log.tail(5)));
+                assertEquals(view, texts, texts(log.tail(texts.size() + 5)));
+                assertTrue(view, log.range(expected.size(), expected.size() + 3).isEmpty());
+
+                if (!texts.isEmpty()) {
+                    String wanted = texts.get(texts.size() / 2);
+                    assertEquals(view, texts.indexOf(wanted), log.find(0, record -> record.getText().equals(wanted)));
+                    assertEquals(view, texts.size() / 2, log.find(texts.size() / 2, record -> record.getText().equals(wanted)));
+                }
+                assertEquals(view, -1, log.find(0, record -> false));
+                try {
+                    log.get(expected.size());
+                    fail(view);
+                } catch (IndexOutOfBoundsException expectedException) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void recordsFromCallSitesAndText() {
+        Random random = new Random(23);
+        for (int buffer = 0; buffer < 20; ++buffer) {
+            boolean lengths = buffer % 2 == 1;
+            PrintfSiteTable table = table(lengths);
+            // more records than the stride between the records kept
+            int[] values = PrintBufferDecoderTest.randomRecords(random, table, lengths, 1 + random.nextInt(buffer < 10 ? 20 : 300));
+            assertMatchesTheDecoder(values, values.length, table, lengths);
+            // cut anywhere
+            assertMatchesTheDecoder(values, random.nextInt(values.length), table, lengths);
+            assertMatchesTheDecoder(values, values.length - 1, table, lengths);
+        }
+    }
+
+    @Test
+    public void recordsLongerThanPages() {
+        PrintfSiteTable table = table(false);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 300; ++i)
+            line.append((char) ('a' + i % 26));
+        int[] values = PrintBufferDecoderTest.concat(PrintBufferDecoderTest.chars(line + "\n"), PrintBufferDecoderTest.chars("short\n"),
+                PrintBufferDecoderTest.packed(line + "\n"), PrintBufferDecoderTest.chars(line.toString()));
+        assertMatchesTheDecoder(values, values.length, table, false);
+        assertEquals(4, PrintLog.of(values, values.length, table).size());
+    }
+
+    @Test
+    public void unknownCallSiteEndsTheRecords() {
+        PrintfSiteTable table = table(false);
+        int[] before = PrintBufferDecoderTest.randomRecords(new Random(1), table, false, 30);
+        int[] values = PrintBufferDecoderTest.concat(before, new int[]{PreprocessedSource.SITE_TAG | 1000, 1}, before);
+        PrintLog log = PrintLog.of(values, values.length, table);
+        PrintLog alone = PrintLog.of(before, before.length, table);
+        assertEquals(alone.size(), log.size());
+        assertEquals(alone.getText(0, alone.size()), log.getText(0, log.size() + 1));
+    }
+
+    /**
+     * Six length-prefixed records of a page each
+     */
+    static int[] pageRecords(PrintfSiteTable table) {
+        table.addLayout(PrintfOptions.DEFAULT.withLengthPrefix(true));
+        int[] values = new int[0];
+        for (char c = 'a'; c < 'g'; ++c)
+            values = PrintBufferDecoderTest.concat(values, new int[]{PreprocessedSource.LENGTH_TAG | 4, c, c, '\n'});
+        return values;
+    }
+
+    @Test
+    public void keepsTheMostRecentlyUsedPages() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        int[] values = pageRecords(table);
+
+        // every page kept: each read once
+        CountingReader reader = new CountingReader(values, 4);
+        PrintLog log = new PrintLog(reader, values.length, table, 4, 6, 0);
+        assertEquals("ff\n", log.get(5).getText());
+        assertEquals("aa\nbb\ncc\ndd\nee\nff\n", log.getText(0, 6));
+        assertEquals(2, log.find(0, record -> record.getText().startsWith("c")));
+        assertEquals(6, log.size());
+        assertArrayEquals(new int[]{1, 1, 1, 1, 1, 1, 0}, reader.reads);
+
+        // the two pages used last kept
+        reader = new CountingReader(values, 4);
+        log = new PrintLog(reader, values.length, table, 4, 2, 0);
+        assertEquals("aa\n", log.get(0).getText());
+        assertEquals("bb\n", log.get(1).getText());
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0, 0, 0}, reader.reads);
+        assertEquals("aa\n", log.get(0).getText());
+        assertEquals("bb\n", log.get(1).getText());
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0, 0, 0}, reader.reads);
+        // going back to the first record goes through pages dropped
+        assertEquals("ff\n", log.get(5).getText());
+        assertEquals("aa\n", log.get(0).getText());
+        assertTrue(Arrays.toString(reader.reads), reader.reads[0] > 1);
+
+        // a single page kept: the pages before a record are read again to come back to it
+        reader = new CountingReader(values, 4);
+        log = new PrintLog(reader, values.length, table, 4, 1, 0);
+        assertEquals("bb\n", log.get(1).getText());
+        int[] reads = reader.reads.clone();
+        assertEquals("bb\n", log.get(1).getText());
+        assertTrue(Arrays.toString(reader.reads), reader.reads[0] > reads[0]);
+    }
+
+    @Test
+    public void invalidArguments() {
+        for (int[] pages : new int[][]{{0, 1}, {1, 0}, {-1, 1}})
+            try {
+                new PrintLog(new CountingReader(new int[0], 1), 0, new PrintfSiteTable(), pages[0], pages[1], 0);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        PrintLog log = PrintLog.of(new int[0], 0, new PrintfSiteTable());
+        assertEquals(0, log.size());
+        assertEquals("", log.getText(0, 0));
+        for (Runnable access : Arrays.<Runnable>asList(() -> log.range(-1, 0), () -> log.range(2, 1), () -> log.get(0))) {
+            try {
+                access.run();
+                fail();
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        }
+        try {
+            log.tail(-1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrintMetricsTest {
+
+    @Test
+    public void percentilesAreUpperBoundsOfPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        assertEquals(0, histogram.getMeanNanos());
+        // 0 and negative durations go to bucket 0, 2 and 3 to bucket 1, 100 to bucket 6
+        for (long nanos : new long[]{0, -5, 1, 2, 3, 100})
+            histogram.record(nanos);
+        long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+        buckets[0] = 3;
+        buckets[1] = 2;
+        buckets[6] = 1;
+        assertArrayEquals(buckets, histogram.getBuckets());
+        assertEquals(6, histogram.getCount());
+        assertEquals(106, histogram.getTotalNanos());
+        assertEquals(17, histogram.getMeanNanos());
+        assertEquals(1, histogram.getPercentileNanos(0));
+        assertEquals(1, histogram.getPercentileNanos(0.5));
+        assertEquals(3, histogram.getPercentileNanos(0.6));
+        // bounded by the largest duration rather than the end of its bucket, 127
+        assertEquals(100, histogram.getPercentileNanos(0.99));
+        assertEquals(100, histogram.getPercentileNanos(1));
+        assertEquals(100, histogram.getMaxNanos());
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(1, histogram.getBuckets()[62]);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(1));
+    }
+
+    @Test
+    public void overflowListenersSeeTheFramesThatOverflowed() {
+        PrintMetrics metrics = new PrintMetrics();
+        List<String> overflows = new ArrayList<>();
+        PrintMetrics.OverflowListener listener = (requested, stored) -> overflows.add(requested + ">" + stored);
+        metrics.addOverflowListener(listener);
+        metrics.recordFrame(10, 10);
+        metrics.recordFrame(30, 15);
+        metrics.recordFrame(0, 0);
+        assertEquals(Arrays.asList("30>15"), overflows);
+        assertEquals(3, metrics.getFrameCount());
+        assertEquals(1, metrics.getOverflowCount());
+        assertEquals(40, metrics.getRequestedValues());
+        assertEquals(25, metrics.getStoredValues());
+        assertEquals(0, metrics.getLastRequestedValues());
+
+        metrics.removeOverflowListener(listener);
+        metrics.recordFrame(30, 15);
+        assertEquals(1, overflows.size());
+        assertEquals(2, metrics.getOverflowCount());
+    }
+
+    @Test
+    public void resetKeepsListeners() {
+        PrintMetrics metrics = new PrintMetrics();
+        int[] overflows = {0};
+        metrics.addOverflowListener((requested, stored) -> overflows[0]++);
+        metrics.recordFrame(30, 15);
+        metrics.recordReadback(60, 1000);
+        metrics.recordDecode(2000);
+        metrics.addSiteRecords(new int[]{1, 2});
+
+        metrics.reset();
+        for (Number value : metrics.snapshot().values())
+            assertEquals(0, value.longValue());
+        assertEquals(0, metrics.getSiteRecords(1));
+        assertEquals(0, metrics.getReadbackLatency().getCount());
+        assertEquals(0, metrics.getDecodeLatency().getMaxNanos());
+        metrics.recordFrame(30, 15);
+        assertEquals(2, overflows[0]);
+    }
+
+    @Test
+    public void snapshotNamesEveryMetric() {
+        PrintMetrics metrics = new PrintMetrics();
+        metrics.recordFrame(30, 15);
+        metrics.recordReadback(60, 1000);
+        metrics.recordDecode(2000);
+        // counts of call sites beyond the initial capacity, summed
+        int[] counts = new int[40];
+        counts[1] = 2;
+        counts[39] = 5;
+        metrics.addSiteRecords(counts);
+        metrics.addSiteRecords(new int[]{0, 1});
+
+        Map<String, Number> snapshot = metrics.snapshot();
+        assertEquals(Arrays.asList("frames", "overflows", "values.requested", "values.stored", "values.last.requested",
+                "values.last.stored", "readback.bytes",
+                "readback.latency.count", "readback.latency.mean", "readback.latency.p50", "readback.latency.p99", "readback.latency.max",
+                "decode.latency.count", "decode.latency.mean", "decode.latency.p50", "decode.latency.p99", "decode.latency.max",
+                "sites.1.records", "sites.39.records"), new ArrayList<>(snapshot.keySet()));
+        assertEquals(30L, snapshot.get("values.requested"));
+        assertEquals(60L, snapshot.get("readback.bytes"));
+        assertEquals(1000L, snapshot.get("readback.latency.max"));
+        assertEquals(2000L, snapshot.get("decode.latency.mean"));
+        assertEquals(3L, snapshot.get("sites.1.records"));
+        assertEquals(5L, snapshot.get("sites.39.records"));
+        assertEquals(0, metrics.getSiteRecords(40));
+        assertEquals(0, metrics.getSiteRecords(-1));
+    }
+}
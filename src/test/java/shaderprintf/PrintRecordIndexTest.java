@@ -0,0 +1,38 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PrintRecordIndexTest {
+
+    @Test
+    public void recordsEndAtThePrintedSize() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        table.addLayout(PrintfOptions.DEFAULT.withFormatTable(true).withInvocationMetadata(true));
+        int value = table.register(new PrintfCallSite(1, "v=%d\n"));
+        int pixel = table.register(new PrintfCallSite(2, "p=%^2f\n").withStage(ShaderStage.FRAGMENT));
+        int[] printed = {
+                PreprocessedSource.SITE_TAG | pixel, 4, 2, 0, Float.floatToIntBits(1f), Float.floatToIntBits(2f),
+                PreprocessedSource.SITE_TAG | value, 7,
+                PreprocessedSource.SITE_TAG | pixel, 1, 3, 0, Float.floatToIntBits(3f), Float.floatToIntBits(4f),
+                // cut by the end of the printed values
+                PreprocessedSource.SITE_TAG | pixel, 0, 0, 0, Float.floatToIntBits(5f)
+        };
+        // a copy of the whole buffer: the values of a previous frame follow the printed ones
+        int[] data = Arrays.copyOf(printed, printed.length + 4);
+        data[printed.length] = Float.floatToIntBits(6f);
+
+        PrintRecordIndex index = PrintRecordIndex.of(data, printed.length, table);
+        assertEquals(3, index.size());
+        assertEquals("p=(1.000000, 2.000000)\n", index.getRecord(0).getText());
+        assertEquals("v=7\n", index.getRecord(1).getText());
+        assertFalse(index.hasInvocation(1));
+        assertEquals(3, index.getInvocation(2, 1));
+        assertArrayEquals(new int[]{0, 2}, index.findSite(table.get(pixel)));
+        assertArrayEquals(new int[]{2}, index.findInvocation(1, 3, 0));
+        assertArrayEquals(new int[]{2, 0, 1}, index.sortByInvocation());
+    }
+}
@@ -0,0 +1,117 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PrintStatTest {
+
+    static final String SOURCE = "#version 450\nvoid main() {\n    printstat(\"eval\", f(x) * 2.0);\n}\n";
+
+    @Test
+    public void printstatUpdatesTheSlotOfItsCallSite() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        // the call site gets id 1, its slot starts at uint 4
+        table.register(new PrintfCallSite(1, "other"));
+        String glsl = ShaderPrintf.preprocess(SOURCE, PrintfOptions.DEFAULT).link(table);
+        assertEquals("#version 450\n\n"
+                + "buffer printBuffer{uint printData[];};buffer printStatBuffer{uint printStats[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}\n"
+                + "#line 2\n"
+                + "void main() {\n"
+                + "    if(printfWriter){float printValue=float(f(x) * 2.0);"
+                + "uint printKey=floatBitsToUint(printValue);printKey^=(printKey>>31)!=0u?0xFFFFFFFFu:0x80000000u;"
+                + "uint printSlot=4u*1u;"
+                + "atomicAdd(printStats[printSlot],1u);atomicMin(printStats[printSlot+1u],printKey);atomicMax(printStats[printSlot+2u],printKey);"
+                + "uint printSum=printStats[printSlot+3u],printSeen;do{printSeen=printSum;printSum=atomicCompSwap(printStats[printSlot+3u],printSeen,floatBitsToUint(uintBitsToFloat(printSeen)+printValue));}while(printSum!=printSeen);}\n"
+                + "}\n", glsl);
+        PrintfCallSite site = table.get(1);
+        assertTrue(site.isStat());
+        assertEquals("eval", site.getFormat());
+        assertEquals(3, site.getLine());
+    }
+
+    @Test
+    public void strippedPrintstatLeavesNoStatistics() {
+        String glsl = ShaderPrintf.preprocess(SOURCE, PrintfOptions.DEFAULT.withStrip(true)).link(new PrintfSiteTable());
+        assertFalse(glsl, glsl.contains("printStat"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void printstatTakesOneValue() {
+        ShaderPrintf.preprocess("#version 450\nvoid main() {\n    printstat(\"a\", 1.0, 2.0);\n}\n", PrintfOptions.DEFAULT);
+    }
+
+    @Test
+    public void orderedKeysRoundTripAndKeepTheOrder() {
+        float[] values = {Float.NEGATIVE_INFINITY, -Float.MAX_VALUE, -1f, -Float.MIN_VALUE, -0f, 0f, Float.MIN_VALUE, 1e-3f, 1f,
+                Float.MAX_VALUE, Float.POSITIVE_INFINITY};
+        for (int i = 0; i < values.length; ++i) {
+            int key = PrintStat.orderedKey(values[i]);
+            assertEquals(Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(PrintStat.fromOrderedKey(key)));
+            if (i > 0)
+                assertTrue(values[i - 1] + " < " + values[i], Integer.compareUnsigned(PrintStat.orderedKey(values[i - 1]), key) < 0);
+        }
+        // the empty slot is above and below every key
+        assertTrue(Integer.compareUnsigned(PrintStat.orderedKey(Float.POSITIVE_INFINITY), PrintStat.EMPTY_SLOT[1]) < 0);
+        assertTrue(Integer.compareUnsigned(PrintStat.orderedKey(Float.NEGATIVE_INFINITY), PrintStat.EMPTY_SLOT[2]) > 0);
+        // NaN keeps its bits, and sorts outside the numbers
+        float nan = Float.intBitsToFloat(0x7FC00001);
+        assertEquals(0x7FC00001, Float.floatToRawIntBits(PrintStat.fromOrderedKey(PrintStat.orderedKey(nan))));
+        assertTrue(Integer.compareUnsigned(PrintStat.orderedKey(nan), PrintStat.orderedKey(Float.POSITIVE_INFINITY)) > 0);
+    }
+
+    /**
+     * Adds a value to a slot the way the code generated for printstat does
+     */
+    static void add(int[] slots, int id, float value) {
+        int slot = id * PrintStat.SLOT_SIZE;
+        int key = PrintStat.orderedKey(value);
+        slots[slot]++;
+        if (Integer.compareUnsigned(key, slots[slot + 1]) < 0)
+            slots[slot + 1] = key;
+        if (Integer.compareUnsigned(key, slots[slot + 2]) > 0)
+            slots[slot + 2] = key;
+        slots[slot + 3] = Float.floatToIntBits(Float.intBitsToFloat(slots[slot + 3]) + value);
+    }
+
+    @Test
+    public void summaryListsTheCallSitesThatReceivedValues() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        int eval = table.register(new PrintfCallSite(3, "eval").withStat(true));
+        table.register(new PrintfCallSite(4, "x=%d\n"));
+        table.register(new PrintfCallSite(5, "never").withStat(true));
+        int iterations = table.register(new PrintfCallSite(6, "iterations").withStat(true));
+        // a call site registered after the buffer was sized has no slot
+        table.register(new PrintfCallSite(7, "late").withStat(true));
+
+        int[] slots = new int[4 * PrintStat.SLOT_SIZE];
+        for (int id = 0; id < 4; ++id)
+            System.arraycopy(PrintStat.EMPTY_SLOT, 0, slots, id * PrintStat.SLOT_SIZE, PrintStat.SLOT_SIZE);
+        for (float value : new float[]{-2.5f, 0f, 4f, 1.5f})
+            add(slots, eval, value);
+        add(slots, iterations, 7f);
+
+        PrintStatTable stats = PrintStatTable.of(slots, table);
+        assertEquals(2, stats.getStats().size());
+        PrintStat evalStat = stats.get("eval");
+        assertEquals(4, evalStat.getCount());
+        assertEquals(-2.5f, evalStat.getMin(), 0f);
+        assertEquals(4f, evalStat.getMax(), 0f);
+        assertEquals(0.75, evalStat.getMean(), 0);
+        PrintStat iterationsStat = stats.get("iterations");
+        assertEquals(1, iterationsStat.getCount());
+        assertEquals(7f, iterationsStat.getMin(), 0f);
+        assertEquals(7f, iterationsStat.getMax(), 0f);
+        assertNull(stats.get("never"));
+        assertNull(stats.get("late"));
+
+        // an empty slot read on its own has no range nor mean
+        PrintStat empty = PrintStat.of(table.get(2), Arrays.copyOf(PrintStat.EMPTY_SLOT, PrintStat.SLOT_SIZE), 0);
+        assertEquals(0, empty.getCount());
+        assertTrue(Float.isNaN(empty.getMin()));
+        assertTrue(Float.isNaN(empty.getMax()));
+        assertTrue(Double.isNaN(empty.getMean()));
+    }
+}
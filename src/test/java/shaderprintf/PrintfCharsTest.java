@@ -0,0 +1,24 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrintfCharsTest {
+
+    @Test
+    public void spacesOfC() {
+        for (char c : " \t\n\u240B\f\r\u00A0".toCharArray())
+            assertTrue("0x" + Integer.toHexString(c), PrintfChars.isspace(c));
+        for (char c : "a(_;0\u0000".toCharArray())
+            assertFalse("0x" + Integer.toHexString(c), PrintfChars.isspace(c));
+    }
+
+    @Test
+    public void conversionsEndSpecifiers() {
+        for (char c : "eEfFgGdiuoxXaA".toCharArray())
+            assertTrue(String.valueOf(c), PrintfChars.isConversion(c));
+        for (char c : "%^.-+ 0123456789scp".toCharArray())
+            assertFalse(String.valueOf(c), PrintfChars.isConversion(c));
+    }
+}
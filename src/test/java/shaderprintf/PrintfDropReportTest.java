@@ -0,0 +1,47 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrintfDropReportTest {
+
+    @Test
+    public void countersAreLowerBoundsPastTheLimit() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        PrintfCallSite below = new PrintfCallSite(1, "a\n").withRecordLimit(4);
+        PrintfCallSite atLimit = new PrintfCallSite(2, "b\n").withRecordLimit(4);
+        PrintfCallSite past = new PrintfCallSite(3, "c\n").withSourceName("main").withRecordLimit(4);
+        PrintfCallSite unlimited = new PrintfCallSite(4, "d\n");
+        for (PrintfCallSite site : Arrays.asList(below, atLimit, past, unlimited))
+            table.register(site);
+        PrintfDropReport report = new PrintfDropReport(table, new int[]{3, 4, -1, 100});
+
+        assertEquals(3, report.getCounted(0));
+        assertEquals(0xFFFFFFFFL, report.getCounted(2));
+        assertEquals(0, report.getCounted(4));
+        assertEquals(0, report.getCounted(-1));
+        assertFalse(report.isLimitReached(0));
+        // reached with no drop counted
+        assertTrue(report.isLimitReached(1));
+        assertEquals(0, report.getDroppedAtLeast(1));
+        assertTrue(report.isLimitReached(2));
+        assertEquals(0xFFFFFFFFL - 4, report.getDroppedAtLeast(2));
+        // without a limit, the counter is not one
+        assertFalse(report.isLimitReached(3));
+        assertEquals(0, report.getDroppedAtLeast(3));
+        assertFalse(report.isLimitReached(4));
+        assertEquals(0xFFFFFFFFL - 4, report.getTotalDroppedAtLeast());
+
+        Map<PrintfCallSite, Long> expected = new LinkedHashMap<>();
+        expected.put(atLimit, 0L);
+        expected.put(past, 0xFFFFFFFFL - 4);
+        assertEquals(expected, report.getSitesAtLimit());
+        assertEquals("limit of 4 records reached by line 2: \"b\n\"\n"
+                + "limit of 4 records reached by main line 3: \"c\n\", at least 4294967291 dropped\n", report.toString());
+    }
+}
@@ -0,0 +1,122 @@
+package shaderprintf;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sources in <code>preprocessor/</code> with the output of the preprocessor before it was rewritten as a single pass,
+ * in <code>&lt;name&gt;.expected.glsl</code>; the <code>strip-</code> sources with their output in strip mode, checked
+ * by hand
+ */
+public class PrintfPreprocessorTest {
+
+    static String read(String path) throws IOException {
+        try (InputStream stream = PrintfPreprocessorTest.class.getResourceAsStream("/" + path)) {
+            assertNotNull(path, stream);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = stream.read(buffer)) != -1; )
+                bytes.write(buffer, 0, read);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static String preprocess(String source) {
+        return ShaderPrintf.addPrintToSource(source, PrintfOptions.DEFAULT);
+    }
+
+    static void assertCorpus(String source, String expected) throws IOException {
+        assertEquals(read("preprocessor/" + expected + ".expected.glsl"), preprocess(read(source)));
+    }
+
+    static void assertStripCorpus(String name) throws IOException {
+        String stripped = ShaderPrintf.addPrintToSource(read("preprocessor/" + name + ".glsl"), PrintfOptions.DEFAULT.withStrip(true));
+        assertEquals(read("preprocessor/" + name + ".expected.glsl"), stripped);
+        assertFalse(stripped, stripped.contains("printData") || stripped.contains("printStats"));
+    }
+
+    @Test
+    public void exampleShaders() throws IOException {
+        assertCorpus("vertex.glsl", "vertex");
+        assertCorpus("fragment.glsl", "fragment");
+    }
+
+    @Test
+    public void comments() throws IOException {
+        assertCorpus("preprocessor/comments.glsl", "comments");
+    }
+
+    @Test
+    public void stringsWithEscapes() throws IOException {
+        assertCorpus("preprocessor/string-escapes.glsl", "string-escapes");
+    }
+
+    @Test
+    public void nestedParentheses() throws IOException {
+        assertCorpus("preprocessor/nested-parentheses.glsl", "nested-parentheses");
+    }
+
+    @Test
+    public void percentAndVectors() throws IOException {
+        assertCorpus("preprocessor/percent-and-vectors.glsl", "percent-and-vectors");
+    }
+
+    @Test
+    public void rejectedOccurrenceBeforeARealCall() throws IOException {
+        assertCorpus("preprocessor/rejected-occurrence.glsl", "rejected-occurrence");
+        String source = read("preprocessor/rejected-occurrence.glsl");
+        assertEquals(source.indexOf("printf(\"%d"), ShaderPrintf.findCall(source, "printf"));
+    }
+
+    @Test
+    public void printfAtTheEndOfTheSource() throws IOException {
+        assertCorpus("preprocessor/printf-at-end.glsl", "printf-at-end");
+    }
+
+    @Test
+    public void unterminatedCalls() throws IOException {
+        for (String name : new String[]{"unterminated-arguments", "unterminated-string"}) {
+            try {
+                preprocess(read("preprocessor/" + name + ".glsl"));
+                fail(name);
+            }
+            catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Unterminated printf call"));
+            }
+        }
+    }
+
+    @Test
+    public void recordLimitReadsTheCounterBeforeIncrementingIt() {
+        PrintfSiteTable table = new PrintfSiteTable();
+        String glsl = ShaderPrintf.preprocess("#version 450\nvoid main() {\n    printf(\"a\\n\");\n}\n", PrintfOptions.DEFAULT.withRecordLimit(16))
+                .link(table);
+        assertTrue(glsl, glsl.contains("if(printfWriter&&printCounts[0]<16u&&atomicAdd(printCounts[0],1u)<16u){"));
+    }
+
+    @Test
+    public void stripKeepsArgumentsWithSideEffects() throws IOException {
+        assertStripCorpus("strip-side-effects");
+    }
+
+    @Test
+    public void stripKeepsLineNumbersAndStubs() throws IOException {
+        assertStripCorpus("strip-lines");
+    }
+
+    @Test
+    public void sideEffects() {
+        for (String expression : new String[]{"i++", "--i", "a+=1", "a-=1", "a*=2", "a/=2", "a%=2", "a&=1", "a|=1", "a^=1",
+                "a<<=1", "a>>=1", "a=b", "f(a)", "sin(f(a))", "f (a)", "imageStore(image, p, v)", "atomicAdd(c, 1u)"})
+            assertTrue(expression, PrintfPreprocessor.hasSideEffects(expression));
+        for (String expression : new String[]{"a", "a+b", "a+ +b", "a- -b", "a==b", "a!=b", "a<=b", "a>=b", "a<<b", "a>>b",
+                "a<b", "sin(a)", "max(a, clamp(b, 0.0, 1.0))", "vec3(a)", "dmat2x3(1.0)", "uint(a)", "(a + b) * 2.0", "v.x"})
+            assertFalse(expression, PrintfPreprocessor.hasSideEffects(expression));
+    }
+}
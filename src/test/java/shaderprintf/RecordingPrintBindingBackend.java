@@ -0,0 +1,164 @@
+package shaderprintf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PrintBindingBackend} recording the calls it gets instead of issuing them, to count the calls binding print
+ * buffers makes without a GPU.<br/>
+ * Programs are declared with their blocks by {@link #declareBlock(int, String, int)}; buffers are kept in memory, so
+ * that clears can be checked.
+ */
+class RecordingPrintBindingBackend implements PrintBindingBackend {
+
+    private final List<String> calls = new ArrayList<>();
+    // names and binding points of the blocks of each program, by index
+    private final Map<Integer, List<String>> blockNames = new HashMap<>();
+    private final Map<Integer, List<Integer>> blockBindings = new HashMap<>();
+    private final Map<Integer, int[]> buffers = new HashMap<>();
+    private final Map<Integer, Integer> bindings = new HashMap<>();
+    private int nextBuffer = 1;
+
+    /**
+     * Adds a shader storage block to a program, as the linker would
+     *
+     * @param binding the binding point given by the shader, 0 if none
+     * @return the index of the block
+     */
+    public int declareBlock(int program, String block, int binding) {
+        blockNames.computeIfAbsent(program, p -> new ArrayList<>()).add(block);
+        blockBindings.computeIfAbsent(program, p -> new ArrayList<>()).add(binding);
+        return blockNames.get(program).size() - 1;
+    }
+
+    @Override
+    public int getBlockIndex(int program, String block) {
+        record("getBlockIndex", program, block);
+        return blockNames.getOrDefault(program, new ArrayList<>()).indexOf(block);
+    }
+
+    @Override
+    public int getBlockBinding(int program, int index) {
+        record("getBlockBinding", program, index);
+        return blockBindings.get(program).get(index);
+    }
+
+    @Override
+    public void setBlockBinding(int program, int index, int binding) {
+        record("setBlockBinding", program, index, binding);
+        blockBindings.get(program).set(index, binding);
+    }
+
+    @Override
+    public void bindBuffer(int binding, int buffer) {
+        record("bindBuffer", binding, buffer);
+        bindings.put(binding, buffer);
+    }
+
+    @Override
+    public int createBuffer() {
+        int buffer = nextBuffer++;
+        record("createBuffer", buffer);
+        buffers.put(buffer, new int[0]);
+        return buffer;
+    }
+
+    @Override
+    public void allocate(int buffer, long size) {
+        record("allocate", buffer, size);
+        buffer(buffer);
+        buffers.put(buffer, new int[(int) size]);
+    }
+
+    @Override
+    public void upload(int buffer, int[] values) {
+        record("upload", buffer, values.length);
+        buffer(buffer);
+        buffers.put(buffer, values.clone());
+    }
+
+    @Override
+    public void clear(int buffer, long count, int[] pattern) {
+        record("clear", buffer, count, Arrays.toString(pattern));
+        int[] contents = buffer(buffer);
+        if (count > contents.length || count % pattern.length != 0)
+            throw new IllegalArgumentException("Invalid clear of " + count + " uints of buffer " + buffer);
+        for (int i = 0; i < count; ++i)
+            contents[i] = pattern[i % pattern.length];
+    }
+
+    @Override
+    public void read(int buffer, int[] values) {
+        record("read", buffer, values.length);
+        int[] contents = buffer(buffer);
+        if (values.length > contents.length)
+            throw new IllegalArgumentException("Invalid read of " + values.length + " uints of buffer " + buffer);
+        System.arraycopy(contents, 0, values, 0, values.length);
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        record("deleteBuffer", buffer);
+        buffers.remove(buffer);
+        bindings.values().removeIf(bound -> bound == buffer);
+    }
+
+    /**
+     * Creates a buffer of <code>size</code> uints without recording it, to stand for a print buffer
+     */
+    public int createPrintBuffer(int size) {
+        int buffer = nextBuffer++;
+        buffers.put(buffer, new int[size]);
+        return buffer;
+    }
+
+    /**
+     * The calls recorded so far, as <code>name(arguments)</code>
+     */
+    public List<String> getCalls() {
+        return new ArrayList<>(calls);
+    }
+
+    public int getCallCount() {
+        return calls.size();
+    }
+
+    public void clearCalls() {
+        calls.clear();
+    }
+
+    /**
+     * The buffer bound to a binding point, 0 if none
+     */
+    public int getBoundBuffer(int binding) {
+        return bindings.getOrDefault(binding, 0);
+    }
+
+    /**
+     * A copy of the contents of a buffer
+     */
+    public int[] getContents(int buffer) {
+        return buffer(buffer).clone();
+    }
+
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    private void record(String name, Object... arguments) {
+        StringBuilder call = new StringBuilder(name).append('(');
+        for (int i = 0; i < arguments.length; ++i)
+            call.append(i > 0 ? ", " : "").append(arguments[i]);
+        calls.add(call.append(')').toString());
+    }
+
+    private int[] buffer(int buffer) {
+        int[] contents = buffers.get(buffer);
+        if (contents == null)
+            throw new IllegalStateException("Unknown buffer " + buffer);
+        return contents;
+    }
+}
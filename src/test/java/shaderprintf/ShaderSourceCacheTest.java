@@ -0,0 +1,141 @@
+package shaderprintf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+public class ShaderSourceCacheTest {
+
+    static final String SOURCE = "#version 450\nvoid main() {\n    printf(\"x=%d\\n\", 1);\n}\n";
+    static final PrintfOptions OPTIONS = PrintfOptions.DEFAULT.withFormatTable(true);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    static String source(int i) {
+        return SOURCE.replace("1);", i + ");");
+    }
+
+    @Test
+    public void keyDependsOnTheSourceOptionsAndVersion() {
+        String key = ShaderSourceCache.key(SOURCE, OPTIONS);
+        assertEquals(key, ShaderSourceCache.key(SOURCE, PrintfOptions.DEFAULT.withFormatTable(true)));
+        assertEquals(key, ShaderSourceCache.key(PrintfPreprocessor.VERSION, SOURCE, OPTIONS));
+        assertNotEquals(key, ShaderSourceCache.key(source(2), OPTIONS));
+        assertNotEquals(key, ShaderSourceCache.key(SOURCE, PrintfOptions.DEFAULT));
+        assertNotEquals(key, ShaderSourceCache.key(SOURCE, OPTIONS.withRecordLimit(4)));
+        assertNotEquals(key, ShaderSourceCache.key(PrintfPreprocessor.VERSION + "0", SOURCE, OPTIONS));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        ShaderSourceCache cache = new ShaderSourceCache(1 << 20);
+        PreprocessedSource processed = cache.preprocess(SOURCE, OPTIONS);
+        assertSame(processed, cache.preprocess(SOURCE, OPTIONS));
+        assertNotSame(processed, cache.preprocess(SOURCE, PrintfOptions.DEFAULT));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getDiskHitCount());
+        assertEquals(0, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.getSizeInBytes());
+        assertNotSame(processed, cache.preprocess(SOURCE, OPTIONS));
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntries() {
+        ShaderSourceCache sizing = new ShaderSourceCache(1 << 20);
+        sizing.preprocess(source(1), OPTIONS);
+        long entrySize = sizing.getSizeInBytes();
+
+        // room for two entries of the same size
+        ShaderSourceCache cache = new ShaderSourceCache(2 * entrySize + entrySize / 2);
+        PreprocessedSource first = cache.preprocess(source(1), OPTIONS);
+        cache.preprocess(source(2), OPTIONS);
+        assertSame(first, cache.preprocess(source(1), OPTIONS));
+        cache.preprocess(source(3), OPTIONS);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2 * entrySize, cache.getSizeInBytes());
+        // the second source was used least recently
+        assertSame(first, cache.preprocess(source(1), OPTIONS));
+        assertEquals(3, cache.getMissCount());
+        cache.preprocess(source(2), OPTIONS);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2, cache.getEvictionCount());
+
+        // an entry larger than the cache is not kept
+        ShaderSourceCache small = new ShaderSourceCache(entrySize - 1);
+        small.preprocess(source(1), OPTIONS);
+        assertEquals(0, small.getSizeInBytes());
+        assertEquals(0, small.getEvictionCount());
+    }
+
+    @Test
+    public void entriesSurviveOnDisk() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        PreprocessedSource processed = new ShaderSourceCache(1 << 20, directory).preprocess(SOURCE, OPTIONS);
+        Path file = directory.resolve(ShaderSourceCache.key(SOURCE, OPTIONS) + ".spp");
+        assertTrue(Files.isRegularFile(file));
+
+        ShaderSourceCache cache = new ShaderSourceCache(1 << 20, directory);
+        PreprocessedSource read = cache.preprocess(SOURCE, OPTIONS);
+        assertEquals(1, cache.getDiskHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(processed.getSites(), read.getSites());
+        assertEquals(processed.link(new PrintfSiteTable()), read.link(new PrintfSiteTable()));
+        // then from memory
+        assertSame(read, cache.preprocess(SOURCE, OPTIONS));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * Writes the entry of SOURCE, then lets <code>corrupt</code> change its bytes: the cache must preprocess SOURCE
+     * again and replace the entry
+     */
+    void assertCorruptEntryIsAMiss(UnaryOperator<byte[]> corrupt) throws IOException {
+        Path directory = folder.newFolder().toPath();
+        PreprocessedSource processed = new ShaderSourceCache(1 << 20, directory).preprocess(SOURCE, OPTIONS);
+        Path file = directory.resolve(ShaderSourceCache.key(SOURCE, OPTIONS) + ".spp");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, corrupt.apply(bytes));
+
+        ShaderSourceCache cache = new ShaderSourceCache(1 << 20, directory);
+        PreprocessedSource read = cache.preprocess(SOURCE, OPTIONS);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getDiskHitCount());
+        assertEquals(processed.link(new PrintfSiteTable()), read.link(new PrintfSiteTable()));
+        // written anew
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    @Test
+    public void corruptEntriesAreMisses() throws IOException {
+        // the layout, the number of call sites, then the line, the length of the format and its characters
+        int formatLength = 12, stageOffset = 16 + 2 * "x=%d\n".length();
+        assertCorruptEntryIsAMiss(bytes -> Arrays.copyOf(bytes, bytes.length / 2));
+        assertCorruptEntryIsAMiss(bytes -> new byte[0]);
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, 4, -1));
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, 4, Integer.MAX_VALUE));
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, formatLength, Integer.MAX_VALUE));
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, formatLength, Integer.MIN_VALUE));
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, stageOffset, ShaderStage.values().length));
+        assertCorruptEntryIsAMiss(bytes -> withInt(bytes, stageOffset, -2));
+    }
+}
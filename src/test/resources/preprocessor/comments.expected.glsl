@@ -0,0 +1,9 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+
+
+void main() {
+	 if(printfWriter){uint printIndex=min(atomicAdd(printData[0],42u),printData.length()-42u);printData[printIndex++]=97;printData[printIndex++]=102;printData[printIndex++]=116;printData[printIndex++]=101;printData[printIndex++]=114;printData[printIndex++]=32;printData[printIndex++]=97;printData[printIndex++]=32;printData[printIndex++]=99;printData[printIndex++]=111;printData[printIndex++]=109;printData[printIndex++]=109;printData[printIndex++]=101;printData[printIndex++]=110;printData[printIndex++]=116;printData[printIndex++]=32;printData[printIndex++]=47;printData[printIndex++]=42;printData[printIndex++]=32;printData[printIndex++]=110;printData[printIndex++]=111;printData[printIndex++]=116;printData[printIndex++]=32;printData[printIndex++]=111;printData[printIndex++]=110;printData[printIndex++]=101;printData[printIndex++]=32;printData[printIndex++]=42;printData[printIndex++]=47;printData[printIndex++]=32;printData[printIndex++]=47;printData[printIndex++]=47;printData[printIndex++]=32;printData[printIndex++]=110;printData[printIndex++]=111;printData[printIndex++]=114;printData[printIndex++]=32;printData[printIndex++]=116;printData[printIndex++]=104;printData[printIndex++]=105;printData[printIndex++]=115;printData[printIndex++]=10;} 
+}
@@ -0,0 +1,7 @@
+#version 450
+// printf("in a row comment %d\n", 1);
+/* printf("in a block comment");
+   still printf(in the comment) */
+void main() {
+	/* before */ printf("after a comment /* not one */ // nor this\n"); // printf("no")
+}
@@ -0,0 +1,37 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+
+uniform ivec2 mouse;
+
+float sdf(vec3 p) {
+	return length(mod(p, vec3(2.0))-vec3(1.0))-.2;
+}
+
+out vec4 color;
+void main() {
+	if(ivec2(gl_FragCoord.xy)==mouse)
+		enablePrintf();
+
+	vec3 position = vec3(.0, .0, -10.0);
+	vec3 direction = normalize(vec3(gl_FragCoord.xy/vec2(1280.0)-vec2(.5, .5*720.0/1280.0), .6));
+
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],92u),printData.length()-92u);printData[printIndex++]=104;printData[printIndex++]=101;printData[printIndex++]=108;printData[printIndex++]=108;printData[printIndex++]=111;printData[printIndex++]=32;printData[printIndex++]=102;printData[printIndex++]=114;printData[printIndex++]=111;printData[printIndex++]=109;printData[printIndex++]=32;printData[printIndex++]=34;printData[printIndex++]=112;printData[printIndex++]=105;printData[printIndex++]=120;printData[printIndex++]=101;printData[printIndex++]=108;printData[printIndex++]=34;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=50;printData[printIndex++]=117;printData[printIndex++]=(mouse).x;printData[printIndex++]=(mouse).y;printData[printIndex++]=33;printData[printIndex++]=32;printData[printIndex++]=115;printData[printIndex++]=116;printData[printIndex++]=97;printData[printIndex++]=114;printData[printIndex++]=116;printData[printIndex++]=105;printData[printIndex++]=110;printData[printIndex++]=103;printData[printIndex++]=32;printData[printIndex++]=114;printData[printIndex++]=97;printData[printIndex++]=121;printData[printIndex++]=109;printData[printIndex++]=97;printData[printIndex++]=114;printData[printIndex++]=99;printData[printIndex++]=104;printData[printIndex++]=32;printData[printIndex++]=119;printData[printIndex++]=105;printData[printIndex++]=116;printData[printIndex++]=104;printData[printIndex++]=32;printData[printIndex++]=112;printData[printIndex++]=111;printData[printIndex++]=115;printData[printIndex++]=105;printData[printIndex++]=116;printData[printIndex++]=105;printData[printIndex++]=111;printData[printIndex++]=110;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=51;printData[printIndex++]=103;printData[printIndex++]=floatBitsToUint((position).x);printData[printIndex++]=floatBitsToUint((position).y);printData[printIndex++]=floatBitsToUint((position).z);printData[printIndex++]=32;printData[printIndex++]=97;printData[printIndex++]=110;printData[printIndex++]=100;printData[printIndex++]=32;printData[printIndex++]=100;printData[printIndex++]=105;printData[printIndex++]=114;printData[printIndex++]=101;printData[printIndex++]=99;printData[printIndex++]=116;printData[printIndex++]=105;printData[printIndex++]=111;printData[printIndex++]=110;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=51;printData[printIndex++]=103;printData[printIndex++]=floatBitsToUint((direction).x);printData[printIndex++]=floatBitsToUint((direction).y);printData[printIndex++]=floatBitsToUint((direction).z);printData[printIndex++]=46;printData[printIndex++]=46;printData[printIndex++]=46;printData[printIndex++]=10;}
+
+	float eval = sdf(position);
+	float dist = eval;
+	int k = 0;
+
+	while(eval > .01*dist && k<80) {
+		if(printfWriter){uint printIndex=min(atomicAdd(printData[0],24u),printData.length()-24u);printData[printIndex++]=105;printData[printIndex++]=116;printData[printIndex++]=101;printData[printIndex++]=114;printData[printIndex++]=97;printData[printIndex++]=116;printData[printIndex++]=105;printData[printIndex++]=111;printData[printIndex++]=110;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=k;printData[printIndex++]=44;printData[printIndex++]=32;printData[printIndex++]=101;printData[printIndex++]=118;printData[printIndex++]=97;printData[printIndex++]=108;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=103;printData[printIndex++]=floatBitsToUint(eval);printData[printIndex++]=10;}
+		position += direction * eval;
+		dist += eval;
+		eval = sdf(position);
+		++k;
+	}
+
+	color = vec4(exp(-dist*.01), .5, .5, .0);
+	if(printfWriter)
+		color = vec4(1.0,.0,.0,1.0);
+}
\ No newline at end of file
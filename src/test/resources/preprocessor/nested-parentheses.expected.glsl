@@ -0,0 +1,9 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+float f(float a, float b) { return a + b; }
+void main() {
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],15u),printData.length()-15u);printData[printIndex++]=37;printData[printIndex++]=102;printData[printIndex++]=floatBitsToUint(f(f(1.0,2.0),(3.0)));printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=int((4));printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=50;printData[printIndex++]=102;printData[printIndex++]=floatBitsToUint((vec2(f(5.0,6.0),7.0)).x);printData[printIndex++]=floatBitsToUint((vec2(f(5.0,6.0),7.0)).y);printData[printIndex++]=10;}
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],4u),printData.length()-4u);printData[printIndex++]=37;printData[printIndex++]=103;printData[printIndex++]=floatBitsToUint(max(1.0,min(2.0,3.0)));printData[printIndex++]=10;}
+}
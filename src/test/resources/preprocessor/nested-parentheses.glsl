@@ -0,0 +1,6 @@
+#version 450
+float f(float a, float b) { return a + b; }
+void main() {
+	printf("%f %d %^2f\n", f(f(1.0, 2.0), (3.0)), int((4)), vec2(f(5.0, 6.0), 7.0));
+	printf ( "%g\n" , max(1.0, min(2.0, 3.0)) );
+}
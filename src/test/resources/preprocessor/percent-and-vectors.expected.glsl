@@ -0,0 +1,8 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+void main() {
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],15u),printData.length()-15u);printData[printIndex++]=49;printData[printIndex++]=48;printData[printIndex++]=48;printData[printIndex++]=37;printData[printIndex++]=37;printData[printIndex++]=32;printData[printIndex++]=111;printData[printIndex++]=102;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=n;printData[printIndex++]=37;printData[printIndex++]=37;printData[printIndex++]=10;}
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],34u),printData.length()-34u);printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=51;printData[printIndex++]=102;printData[printIndex++]=floatBitsToUint((p).x);printData[printIndex++]=floatBitsToUint((p).y);printData[printIndex++]=floatBitsToUint((p).z);printData[printIndex++]=32;printData[printIndex++]=97;printData[printIndex++]=110;printData[printIndex++]=100;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=46;printData[printIndex++]=50;printData[printIndex++]=94;printData[printIndex++]=52;printData[printIndex++]=103;printData[printIndex++]=floatBitsToUint((c).x);printData[printIndex++]=floatBitsToUint((c).y);printData[printIndex++]=floatBitsToUint((c).z);printData[printIndex++]=floatBitsToUint((c).w);printData[printIndex++]=32;printData[printIndex++]=97;printData[printIndex++]=110;printData[printIndex++]=100;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=94;printData[printIndex++]=50;printData[printIndex++]=100;printData[printIndex++]=(ivec2(1,2)).x;printData[printIndex++]=(ivec2(1,2)).y;printData[printIndex++]=10;}
+}
@@ -0,0 +1,5 @@
+#version 450
+void main() {
+	printf("100%% of %d%%\n", n);
+	printf("%^3f and %.2^4g and %^2d\n", p, c, ivec2(1, 2));
+}
@@ -0,0 +1,6 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+void main() {
+	printf
\ No newline at end of file
@@ -0,0 +1,12 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+void myprintf(int i) {}
+void main() {
+	myprintf(1);
+	printf_(2);
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],4u),printData.length()-4u);printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=3;printData[printIndex++]=10;}
+	if (printfWriter)
+		if(printfWriter){uint printIndex=min(atomicAdd(printData[0],8u),printData.length()-8u);printData[printIndex++]=101;printData[printIndex++]=110;printData[printIndex++]=97;printData[printIndex++]=98;printData[printIndex++]=108;printData[printIndex++]=101;printData[printIndex++]=100;printData[printIndex++]=10;}
+}
@@ -0,0 +1,9 @@
+#version 450
+void myprintf(int i) {}
+void main() {
+	myprintf(1);
+	printf_(2);
+	printf("%d\n", 3);
+	if (printfWriter)
+		printf("enabled\n");
+}
@@ -0,0 +1,8 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+void main() {
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],58u),printData.length()-58u);printData[printIndex++]=113;printData[printIndex++]=117;printData[printIndex++]=111;printData[printIndex++]=116;printData[printIndex++]=101;printData[printIndex++]=115;printData[printIndex++]=32;printData[printIndex++]=34;printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=i;printData[printIndex++]=34;printData[printIndex++]=32;printData[printIndex++]=98;printData[printIndex++]=97;printData[printIndex++]=99;printData[printIndex++]=107;printData[printIndex++]=115;printData[printIndex++]=108;printData[printIndex++]=97;printData[printIndex++]=115;printData[printIndex++]=104;printData[printIndex++]=32;printData[printIndex++]=92;printData[printIndex++]=32;printData[printIndex++]=116;printData[printIndex++]=97;printData[printIndex++]=98;printData[printIndex++]=9;printData[printIndex++]=32;printData[printIndex++]=112;printData[printIndex++]=97;printData[printIndex++]=114;printData[printIndex++]=101;printData[printIndex++]=110;printData[printIndex++]=32;printData[printIndex++]=40;printData[printIndex++]=32;printData[printIndex++]=99;printData[printIndex++]=111;printData[printIndex++]=109;printData[printIndex++]=109;printData[printIndex++]=97;printData[printIndex++]=32;printData[printIndex++]=44;printData[printIndex++]=32;printData[printIndex++]=115;printData[printIndex++]=101;printData[printIndex++]=109;printData[printIndex++]=105;printData[printIndex++]=99;printData[printIndex++]=111;printData[printIndex++]=108;printData[printIndex++]=111;printData[printIndex++]=110;printData[printIndex++]=32;printData[printIndex++]=59;printData[printIndex++]=10;}
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],1u),printData.length()-1u);printData[printIndex++]=34;}
+}
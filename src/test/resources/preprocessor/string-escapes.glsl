@@ -0,0 +1,5 @@
+#version 450
+void main() {
+	printf("quotes \"%d\" backslash \\ tab\t paren ( comma , semicolon ;\n", i);
+	printf("\"");
+}
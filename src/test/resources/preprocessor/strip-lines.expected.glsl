@@ -0,0 +1,15 @@
+#version 450
+
+void enablePrintf(){}void disablePrintf(){}
+#line 2
+
+void main() {
+    enablePrintf();
+    int i = 0;
+    {i++;}
+
+
+    {}
+    disablePrintf();
+    i = undeclared;
+}
@@ -0,0 +1,12 @@
+#version 450
+// the lines after a call spanning several lines keep their numbers
+void main() {
+    enablePrintf();
+    int i = 0;
+    printf("multi-line %d %d\n",
+           i,
+           i++);
+    printf("format only\n");
+    disablePrintf();
+    i = undeclared;
+}
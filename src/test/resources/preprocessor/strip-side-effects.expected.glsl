@@ -0,0 +1,18 @@
+#version 450
+
+void enablePrintf(){}void disablePrintf(){}
+#line 2
+layout(std430) buffer Counters { uint counters[]; };
+float f(float x) { counters[0]++; return x; }
+void main() {
+    int i = 0, j = 4, k = 8;
+    float a = 1.0, b = 2.0;
+    uint m = 16u;
+    {i++;--j;}
+    {a += 1.0;b = a;k *= 2;m >>= 1u;m <<= 2u;}
+    {}
+    {}
+    {f(a);sin(f(b));f (a) * 2.0;}
+    {f(a);}
+    {}
+}
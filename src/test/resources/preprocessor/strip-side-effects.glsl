@@ -0,0 +1,15 @@
+#version 450
+layout(std430) buffer Counters { uint counters[]; };
+float f(float x) { counters[0]++; return x; }
+void main() {
+    int i = 0, j = 4, k = 8;
+    float a = 1.0, b = 2.0;
+    uint m = 16u;
+    printf("increments %d %d %d %d\n", i++, --j, i + +j, k - -1);
+    printf("assignments %f %f %d %u %u\n", a += 1.0, b = a, k *= 2, m >>= 1u, m <<= 2u);
+    printf("comparisons %d %d %d %d %d %u\n", a == b, a <= b, a >= b, a != b, i < j, m >> 1u);
+    printf("pure %f %f %f %^3f\n", sin(a), max(a, clamp(b, 0.0, 1.0)), float(i), vec3(a, b, 1.0));
+    printf("calls %f %f %f\n", f(a), sin(f(b)), f (a) * 2.0);
+    printstat("stat", f(a));
+    printstat("pure stat", a * b);
+}
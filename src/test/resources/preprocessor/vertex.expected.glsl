@@ -0,0 +1,11 @@
+#version 450
+
+buffer printBuffer{uint printData[];};bool printfWriter = false;void enablePrintf(){printfWriter=true;}void disablePrintf(){printfWriter=false;}
+#line 2
+
+out vec4 color;
+void main() {
+	enablePrintf();
+	if(printfWriter){uint printIndex=min(atomicAdd(printData[0],23u),printData.length()-23u);printData[printIndex++]=104;printData[printIndex++]=101;printData[printIndex++]=108;printData[printIndex++]=108;printData[printIndex++]=111;printData[printIndex++]=32;printData[printIndex++]=102;printData[printIndex++]=114;printData[printIndex++]=111;printData[printIndex++]=109;printData[printIndex++]=32;printData[printIndex++]=118;printData[printIndex++]=101;printData[printIndex++]=114;printData[printIndex++]=116;printData[printIndex++]=101;printData[printIndex++]=120;printData[printIndex++]=32;printData[printIndex++]=37;printData[printIndex++]=100;printData[printIndex++]=gl_VertexID;printData[printIndex++]=33;printData[printIndex++]=10;}
+	gl_Position = vec4(-1.0 + (gl_VertexID == 1 ? 4.0 : .0), -1.0 + (gl_VertexID == 2 ? 4.0 : .0), .0, 1.0 );
+}
\ No newline at end of file